@@ -20,22 +20,35 @@ javac -cp "lib/*;classes" -d classes src/main/java/com/gps/particlefilter/util/*
 if errorlevel 1 goto :error
 
 echo Step 4: Compiling LOS classes...
-javac -cp "lib/*;classes" -d classes src/main/java/com/gps/particlefilter/los/*.java
+REM The Vector API wall kernel needs the incubator module; it is loaded only when present at run time
+javac --add-modules jdk.incubator.vector -cp "lib/*;classes" -d classes src/main/java/com/gps/particlefilter/los/*.java
 if errorlevel 1 goto :error
 
-echo Step 5: Compiling IO classes...
+echo Step 5: Compiling History classes...
+javac -cp "lib/*;classes" -d classes src/main/java/com/gps/particlefilter/history/*.java
+if errorlevel 1 goto :error
+
+echo Step 6: Compiling IO classes...
 javac -cp "lib/*;classes" -d classes src/main/java/com/gps/particlefilter/io/*.java
 if errorlevel 1 goto :error
 
-echo Step 6: Compiling Main application classes...
+echo Step 7: Compiling Main application classes...
 javac -cp "lib/*;classes" -d classes src/main/java/com/gps/particlefilter/*.java
 if errorlevel 1 goto :error
 
-echo Step 7: Compiling Test classes...
+echo Step 8: Compiling Test classes...
 javac -cp "lib/*;classes" -d classes src/test/java/com/gps/particlefilter/*.java
 if errorlevel 1 goto :error
 
-echo Step 8: Compiling demo files (if they exist)...
+echo Step 9: Compiling History test classes...
+javac -cp "lib/*;classes" -d classes src/test/java/com/gps/particlefilter/history/*.java
+if errorlevel 1 goto :error
+
+echo Step 10: Compiling Benchmark classes...
+javac -cp "lib/*;classes" -d classes src/test/java/com/gps/particlefilter/benchmark/*.java
+if errorlevel 1 goto :error
+
+echo Step 11: Compiling demo files (if they exist)...
 if exist CoordinateTestDemo.java (
     javac -cp "lib/*;classes" -d classes CoordinateTestDemo.java
     if errorlevel 1 echo Warning: Could not compile CoordinateTestDemo.java
@@ -55,8 +68,9 @@ echo.
 echo 1. Main GPS Particle Filter Application:
 echo    java -cp "lib/*;classes" com.gps.particlefilter.Main
 echo.
-echo 2. LOS/NLOS Test:
+echo 2. LOS/NLOS and particle history tests:
 echo    java -cp "lib/*;classes" com.gps.particlefilter.LosNlosTest
+echo    java -cp "lib/*;classes" com.gps.particlefilter.history.ParticleHistoryTest
 echo.
 echo 3. Coordinate Test Demo (if available):
 echo    java -cp "lib/*;classes" CoordinateTestDemo
@@ -70,6 +84,15 @@ echo    - convergence: Generate Fig 14 data
 echo    - naive-bayesian: Generate Fig 15 data  
 echo    - los-nlos: Generate Fig 19 data
 echo.
+echo 6. Benchmarks (options: -Dbench.particles=100,1000 -Dbench.satellites=10,30 -Dbench.time=1000):
+echo    java -cp "lib/*;classes" com.gps.particlefilter.benchmark.LosBenchmark
+echo    java -cp "lib/*;classes" com.gps.particlefilter.benchmark.ParticleFilterBenchmark
+echo    java -cp "lib/*;classes" com.gps.particlefilter.benchmark.ProjectionBenchmark
+echo.
+echo 7. Vector API (SIMD) wall kernel, selected by los.wall.kernel=AUTO^|SCALAR^|VECTOR:
+echo    add --add-modules jdk.incubator.vector to any java command above, e.g.
+echo    java --add-modules jdk.incubator.vector -cp "lib/*;classes" com.gps.particlefilter.benchmark.LosBenchmark
+echo.
 echo Note: If you encounter errors with newer Java versions, add:
 echo    --add-opens java.base/java.lang=ALL-UNNAMED
 echo.
@@ -101,7 +101,7 @@ public class Main {
             // Set to hybrid mode (signal + geometric) as per article
             losCalculator.setClassificationMode(LosCalculator.ClassificationMode.HYBRID);
             
-            // Enable Ray-Shooting optimization for O(N × k × log(B)) complexity
+            // Enable Ray-Shooting optimization (exact, on the configured spatial index)
             System.out.println("=== Enabling Ray-Shooting Optimization ===");
             losCalculator.setRayShootingOptimization(true);
             
@@ -218,8 +218,7 @@ public class Main {
             particleFilter.initializeParticles(startPoint, particleCount);
             
             // Add initial state to history with first timestamp
-            particleFilter.getParticleHistory().add(new ArrayList<>(particleFilter.getParticles()));
-            particleFilter.getTimestamps().add(timestamps.get(0));
+            particleFilter.recordHistory(timestamps.get(0));
             
             // Add initial estimate
             List<Point3D> estimatedRoute = new ArrayList<>();
@@ -237,9 +236,8 @@ public class Main {
                 // Update particle filter with current point
                 particleFilter.update(currentPoint, timestamp);
                 
-                // Calculate estimated position using particles from history (with preserved weights)
-                List<Particle> particlesWithWeights = particleFilter.getParticleHistory().get(particleFilter.getParticleHistory().size() - 1);
-                Point3D estimatedPosition = calculateEstimatedPosition(particlesWithWeights);
+                // Estimated position from the weights before resampling
+                Point3D estimatedPosition = particleFilter.getEstimatedPosition();
                 estimatedRoute.add(estimatedPosition);
                 
                 // Calculate error for this point
@@ -288,6 +286,16 @@ public class Main {
             System.out.println("Total points: " + route.size());
             System.out.println("Avg error: " + String.format("%.2f m", avgError));
             System.out.println("Max error: " + String.format("%.2f m", maxError));
+            System.out.println("LOS evaluations: " + particleFilter.getLosEvaluationCount() +
+                " (saved by lazy evaluation: " + particleFilter.getLosEvaluationsSaved() + ")");
+            System.out.println("Satellite tests skipped by region pruning: " + particleFilter.getRegionPrunedTestCount());
+            System.out.println("LOS evaluations skipped by shadow clearance: " + particleFilter.getGeometricReuseCount());
+            if (particleFilter.getLosCalculator().isLosCacheEnabled()) {
+                System.out.println(particleFilter.getLosCalculator().getLosCacheSummary());
+            }
+            if (particleFilter.getLosCalculator().getGeometricMode() == LosCalculator.GeometricMode.DIAGNOSTIC) {
+                System.out.println(particleFilter.getLosCalculator().getDiagnosticSummary());
+            }
             
             // Write results to KML
             System.out.println("\nWriting results to KML files...");
@@ -297,7 +305,8 @@ public class Main {
             System.out.println("Particle history size: " + particleFilter.getParticleHistory().size());
             System.out.println("Timestamps size: " + particleFilter.getTimestamps().size());
             
-            kmlWriter.writeParticleHistoryToKML(particleFilter.getParticleHistory(), particleFilter.getTimestamps(), config.getOutputParticlesKml());
+            kmlWriter.writeParticleHistoryToKML(particleFilter.getParticleHistory(), config.getOutputParticlesKml());
+            particleFilter.close();
             
             // Write estimated route with timestamps (yellow tacks only, no line)
             System.out.println("Writing estimated route to KML...");
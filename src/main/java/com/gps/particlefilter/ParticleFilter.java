@@ -1,41 +1,58 @@
 package com.gps.particlefilter;
 
+import com.gps.particlefilter.config.Configuration;
 import com.gps.particlefilter.model.*;
 import com.gps.particlefilter.util.CoordinateSystemManager;
+import com.gps.particlefilter.util.ParallelExecutor;
 import com.gps.particlefilter.los.LosCalculator;
+import com.gps.particlefilter.los.RegionClassification;
+import com.gps.particlefilter.history.ParticleHistorySink;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ParticleFilter {
-    private List<Particle> particles;
+    private ParticleStore particles; // Structure-of-arrays; getParticles() is a List view for reporting
     private List<Point3D> originalRoute;
     private LosCalculator losCalculator;
     private RandomDataGenerator random;
     private double gridSize;
     private double movementNoise;
-    private List<List<Particle>> particleHistory;
+    private ParticleHistorySink particleHistory; // Encoded per-epoch snapshots, see history.sink
     private List<Long> timestamps;
+    private Point3D estimatedPosition; // Weighted mean before the last resampling
     private Point3D previousPoint;
     private CoordinateSystemManager coordManager;
+    private ParallelExecutor executor; // Per-particle LOS and weight stage
     private double velocity = 0.0; // Current velocity magnitude
     private double c = 1.0; // Error model coefficient (from article)
     private boolean useBayesianWeight = true; // Enable Bayesian weight function
     private double bayesianC = 0.5; // Ratio between history and current measurement - reduced for better tracking
+    private double[] sigmoidWeights = new double[0]; // Modified Sigmoid weight per matching count n, for N = length - 1
+    private double[] cumulativeWeights = new double[0]; // Resampling scratch, reused every epoch
+    private int[] resampleSource = new int[0];
+    
+    // LOS is evaluated lazily: once per particle position and epoch, when the weights need it
+    private long losRequests = 0; // Evaluations an eager scheme (init, every move, every weighting) would make
+    private final AtomicLong losEvaluations = new AtomicLong();
+    private final AtomicLong regionPrunedTests = new AtomicLong(); // Satellite tests answered for the whole cloud
+    private final AtomicLong geometricReuses = new AtomicLong(); // Evaluations replaced by a mask kept within its clearance
 
     public ParticleFilter(LosCalculator losCalculator, double gridSize, double movementNoise) {
         this.losCalculator = losCalculator;
         this.gridSize = gridSize;
         this.movementNoise = movementNoise;
-        this.particles = new ArrayList<>();
+        this.particles = new ParticleStore(losCalculator.getSatelliteRegistry(), losCalculator.getGeometricWordCount());
         this.random = new RandomDataGenerator();
-        this.particleHistory = new ArrayList<>();
+        this.particleHistory = ParticleHistorySink.fromConfiguration(losCalculator.getSatelliteRegistry());
         this.timestamps = new ArrayList<>();
         this.previousPoint = null;
         this.coordManager = CoordinateSystemManager.getInstance();
+        this.executor = ParallelExecutor.getInstance();
     }
 
     public void initializeParticles(Point3D center, int particleCount) {
-        particles.clear();
+        particles.reset(particleCount);
         
         // DEBUG: Check coordinate system and values
         System.out.println("=== PARTICLE INITIALIZATION DEBUG ===");
@@ -75,18 +92,17 @@ public class ParticleFilter {
                 double x = minX + (col * xStep);
                 double y = minY + (row * yStep);
                 
-                Point3D position = new Point3D(x, y, alt);
-                Particle particle = new Particle(position);
-                
-                particle.setLosStatus(losCalculator.calculateLOS(position));
-                particles.add(particle);
+                particles.add(x, y, alt);
             }
         }
+        // LOS is calculated by the first weighting
+        losRequests += particles.size();
         
         // DEBUG: Validate particle distribution
         if (particles.size() > 0) {
-            Point3D firstPos = particles.get(0).getPosition();
-            Point3D lastPos = particles.get(particles.size() - 1).getPosition();
+            int last = particles.size() - 1;
+            Point3D firstPos = new Point3D(particles.x[0], particles.y[0], particles.z[0]);
+            Point3D lastPos = new Point3D(particles.x[last], particles.y[last], particles.z[last]);
             System.out.println("First particle: X=" + firstPos.getX() + ", Y=" + firstPos.getY());
             System.out.println("Last particle: X=" + lastPos.getX() + ", Y=" + lastPos.getY());
             
@@ -98,9 +114,9 @@ public class ParticleFilter {
             
             // Calculate center of particle cloud
             double avgX = 0, avgY = 0;
-            for (Particle p : particles) {
-                avgX += p.getPosition().getX();
-                avgY += p.getPosition().getY();
+            for (int i = 0; i < particles.size(); i++) {
+                avgX += particles.x[i];
+                avgY += particles.y[i];
             }
             avgX /= particles.size();
             avgY /= particles.size();
@@ -110,20 +126,23 @@ public class ParticleFilter {
             System.out.println("Particle cloud center: X=" + avgX + ", Y=" + avgY);
             System.out.println("Offset from GPS point: " + centerOffset + " meters");
             
-            // Check for duplicates
-            int duplicates = 0;
-            for (int i = 0; i < particles.size(); i++) {
-                for (int j = i + 1; j < particles.size(); j++) {
-                    Point3D pos1 = particles.get(i).getPosition();
-                    Point3D pos2 = particles.get(j).getPosition();
-                    double dist = pos1.distanceTo(pos2);
-                    if (dist < 0.1) { // Less than 10cm apart
-                        duplicates++;
+            // Check for duplicates (quadratic in the particle count, debug only)
+            if (Configuration.getInstance().isDebugParticleInfoEnabled()) {
+                int duplicates = 0;
+                for (int i = 0; i < particles.size(); i++) {
+                    for (int j = i + 1; j < particles.size(); j++) {
+                        double ddx = particles.x[i] - particles.x[j];
+                        double ddy = particles.y[i] - particles.y[j];
+                        double ddz = particles.z[i] - particles.z[j];
+                        double dist = Math.sqrt(ddx * ddx + ddy * ddy + ddz * ddz);
+                        if (dist < 0.1) { // Less than 10cm apart
+                            duplicates++;
+                        }
                     }
                 }
-            }
-            if (duplicates > 0) {
-                System.out.println("WARNING: Found " + duplicates + " duplicate/overlapping particle pairs!");
+                if (duplicates > 0) {
+                    System.out.println("WARNING: Found " + duplicates + " duplicate/overlapping particle pairs!");
+                }
             }
         }
         System.out.println("Total particles created: " + particles.size());
@@ -132,57 +151,143 @@ public class ParticleFilter {
 
     public void updateWeights(Point3D originalPoint) {
         // Calculate LOS/NLOS status for the reference point
-        Map<String, Boolean> referenceStatus = losCalculator.calculateLOS(originalPoint);
+        LosVector referenceStatus = losCalculator.calculateLosVector(originalPoint);
         
         int N = referenceStatus.size(); // Total number of satellites
-        double totalWeight = 0;
+        int losWords = particles.getLosWords();
+        long[] referenceMask = new long[losWords];
+        referenceStatus.copyTo(referenceMask, 0);
+        
+        double[] weightByMatches = getSigmoidWeights(N);
+        long epoch = losCalculator.getEpoch();
+        losRequests += particles.size();
+        
+        // Satellites LOS or NLOS for the whole cloud need no per-particle test,
+        // the others are tested only against the walls whose shadow reaches it
+        RegionClassification region = classifyCloud();
+        int pruned = region.getPrunedCount();
+        
+        // Geometric masks kept from earlier epochs are only reusable while the calculator's answers are exact
+        boolean reuse = losCalculator.isShadowClearanceAvailable();
         
         // First pass - calculate weights using Modified Sigmoid function from the article
-        for (Particle particle : particles) {
-            // Calculate LOS/NLOS status for the particle
-            Map<String, Boolean> particleLosStatus = losCalculator.calculateLOS(particle.getPosition());
-            particle.setLosStatus(particleLosStatus);
-            
-            // Count matching LOS states between particle and reference
-            int n = particle.matchingLosCount(referenceStatus);
-
-            // Modified Sigmoid weight function from article (Equation 2)
-            // Weight(x) = N × 1/(1 + e^(N/4-n/2))
-            // This formula works correctly for N ≤ 20 satellites (article tested with 17)
-            double exponent = (N / 4.0) - (n / 2.0);
-            double sigmoidWeight = N * (1.0 / (1.0 + Math.exp(exponent)));
+        double totalWeight = executor.sum(particles.size(), (from, to) -> {
+            double[] x = particles.x, y = particles.y, z = particles.z;
+            double[] weight = particles.weight, prevWeight = particles.prevWeight;
+            long[] los = particles.los, losEpoch = particles.losEpoch;
+            boolean[] losValid = particles.losValid;
+            long[] geometric = particles.geometric;
+            double[] clearance = particles.clearance;
+            int geometricWords = particles.getGeometricWords();
             
-            // Apply Bayesian weight if enabled (Equation 3 from article)
-            double finalWeight;
-            if (useBayesianWeight && particle.getPreviousWeight() > 0) {
-                // Weight(x_t) = c × sigmoid + (1-c) × Weight(x_t-1)
-                finalWeight = bayesianC * sigmoidWeight + (1 - bayesianC) * particle.getPreviousWeight();
-            } else {
-                finalWeight = sigmoidWeight;
+            // Calculate LOS/NLOS status for particles unless known for their position and epoch:
+            // from the kept geometric mask while the particle is within its clearance, else
+            // satellite by satellite over the whole chunk
+            int[] stale = new int[to - from];
+            int evaluated = 0;
+            int reused = 0;
+            for (int i = from; i < to; i++) {
+                if (!losValid[i] || losEpoch[i] != epoch) {
+                    if (reuse && clearance[i] > 0) {
+                        losCalculator.classifyGeometricMask(x[i], y[i], z[i], geometric, i * geometricWords,
+                            los, i * losWords);
+                        reused++;
+                    } else {
+                        stale[evaluated++] = i;
+                        clearance[i] = 0.0;
+                    }
+                    losEpoch[i] = epoch;
+                    losValid[i] = true;
+                    if (reuse) {
+                        // The mask describes this position, so its own clearance applies too
+                        clearance[i] = Math.max(clearance[i], losCalculator.getShadowClearance(x[i], y[i], z[i]));
+                    }
+                }
             }
+            losCalculator.calculateLosMasks(x, y, z, stale, evaluated, los, region, reuse ? geometric : null);
             
-            // Store previous weight for next iteration
-            particle.setPreviousWeight(finalWeight);
-            particle.setWeight(finalWeight);
-            totalWeight += finalWeight;
-        }
+            double chunkWeight = 0;
+            for (int i = from; i < to; i++) {
+                // Count matching LOS states between particle and reference
+                int n = LosVector.matchingCount(los, i * losWords, referenceMask, 0, losWords, N);
+                double sigmoidWeight = weightByMatches[n];
+                
+                // Apply Bayesian weight if enabled (Equation 3 from article)
+                double finalWeight;
+                if (useBayesianWeight && prevWeight[i] > 0) {
+                    // Weight(x_t) = c × sigmoid + (1-c) × Weight(x_t-1)
+                    finalWeight = bayesianC * sigmoidWeight + (1 - bayesianC) * prevWeight[i];
+                } else {
+                    finalWeight = sigmoidWeight;
+                }
+                
+                // Store previous weight for next iteration
+                prevWeight[i] = finalWeight;
+                weight[i] = finalWeight;
+                chunkWeight += finalWeight;
+            }
+            losEvaluations.addAndGet(evaluated);
+            geometricReuses.addAndGet(reused);
+            regionPrunedTests.addAndGet((long) evaluated * pruned);
+            return chunkWeight;
+        });
 
         // Second pass - normalize weights
-        for (Particle particle : particles) {
-            double normalizedWeight = totalWeight > 0 ? particle.getWeight() / totalWeight : 1.0 / particles.size();
-            particle.setWeight(normalizedWeight);
+        double[] weight = particles.weight;
+        int count = particles.size();
+        for (int i = 0; i < count; i++) {
+            weight[i] = totalWeight > 0 ? weight[i] / totalWeight : 1.0 / count;
+        }
+    }
+
+    /**
+     * Region classification of every satellite over the bounding box of all particles,
+     * which holds every particle weighted this epoch
+     */
+    private RegionClassification classifyCloud() {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        double[] x = particles.x, y = particles.y, z = particles.z;
+        for (int i = 0; i < particles.size(); i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxZ = Math.max(maxZ, z[i]);
         }
+        return losCalculator.classifySatellites(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+    
+    /**
+     * Modified Sigmoid weight function from article (Equation 2), tabulated for n = 0..N
+     * Weight(x) = N × 1/(1 + e^(N/4-n/2))
+     * This formula works correctly for N ≤ 20 satellites (article tested with 17)
+     */
+    private double[] getSigmoidWeights(int N) {
+        if (sigmoidWeights.length != N + 1) {
+            double[] table = new double[N + 1];
+            for (int n = 0; n <= N; n++) {
+                double exponent = (N / 4.0) - (n / 2.0);
+                table[n] = N * (1.0 / (1.0 + Math.exp(exponent)));
+            }
+            sigmoidWeights = table;
+        }
+        return sigmoidWeights;
     }
 
     public void resample() {
-        List<Particle> newParticles = new ArrayList<>();
         int n = particles.size();
+        if (cumulativeWeights.length < n) {
+            cumulativeWeights = new double[n];
+            resampleSource = new int[n];
+        }
         
         // Create cumulative weights array
-        double[] cumulativeWeights = new double[n];
-        cumulativeWeights[0] = particles.get(0).getWeight();
+        double[] weight = particles.weight;
+        cumulativeWeights[0] = weight[0];
         for (int i = 1; i < n; i++) {
-            cumulativeWeights[i] = cumulativeWeights[i-1] + particles.get(i).getWeight();
+            cumulativeWeights[i] = cumulativeWeights[i-1] + weight[i];
         }
 
         // Resample using systematic resampling
@@ -194,15 +299,12 @@ public class ParticleFilter {
             while (j < n-1 && u > cumulativeWeights[j]) {
                 j++;
             }
-            Particle newParticle = new Particle(particles.get(j).getPosition());
-            newParticle.setLosStatus(new HashMap<>(particles.get(j).getLosStatus()));
-            newParticle.setWeight(particles.get(j).getWeight());
-            
-            newParticles.add(newParticle);
+            resampleSource[i] = j;
             u += step;
         }
 
-        particles = newParticles;
+        // Same position: the LOS mask stays valid and is copied along
+        particles.resample(resampleSource, n);
     }
 
     public void move(Point3D from, Point3D to) {
@@ -212,10 +314,8 @@ public class ParticleFilter {
 
         // Handle case where points are identical (distance = 0)
         if (distance < 0.001) {
-            // No movement needed, just update LOS status
-            for (Particle particle : particles) {
-                particle.setLosStatus(losCalculator.calculateLOS(particle.getPosition()));
-            }
+            // No movement needed; LOS is recalculated by the weighting if the epoch changed
+            losRequests += particles.size();
             return;
         }
 
@@ -241,7 +341,11 @@ public class ParticleFilter {
         System.out.println("Velocity: " + velocity + " m/s, Error coefficient c: " + c);
 
         // Move each particle using improved noise model
-        for (Particle particle : particles) {
+        // Noise is drawn sequentially so the random stream does not depend on thread count
+        double[] x = particles.x, y = particles.y;
+        boolean[] losValid = particles.losValid;
+        double[] clearance = particles.clearance;
+        for (int i = 0; i < particles.size(); i++) {
             // Apply Gaussian noise to distance (2-5% based on velocity)
             double distanceNoiseStd = Math.max(0.02, Math.min(0.05, 1.0 / velocity)) * distance;
             double noisyDistance = distance + random.nextGaussian(0, distanceNoiseStd);
@@ -255,31 +359,34 @@ public class ParticleFilter {
             double dx = noisyDistance * Math.sin(azimuthRad); // Easting component
             double dy = noisyDistance * Math.cos(azimuthRad); // Northing component
 
-            // Update particle position
-            Point3D currentPos = particle.getPosition();
-            Point3D newPos = new Point3D(
-                currentPos.getX() + dx,
-                currentPos.getY() + dy,
-                currentPos.getZ()
-            );
-
-            particle.setPosition(newPos);
-            particle.setLosStatus(losCalculator.calculateLOS(particle.getPosition()));
+            // Update particle position (height unchanged)
+            x[i] += dx;
+            y[i] += dy;
+            losValid[i] = false;
+            // The geometric mask stays valid while the particle is within the clearance of where it was computed
+            clearance[i] -= Math.abs(noisyDistance);
         }
+        losRequests += particles.size();
     }
 
     public void update(Point3D currentPoint, long timestamp) {
+        // One signal strength snapshot per measurement epoch
+        losCalculator.beginEpoch(timestamp);
+        
         if (previousPoint != null) {
             move(previousPoint, currentPoint);
         }
         updateWeights(currentPoint);
         
-        // Save current state to history BEFORE resampling (preserves weights for estimation)
-        particleHistory.add(new ArrayList<>(particles));
-        timestamps.add(timestamp);
+        // Estimate BEFORE resampling (preserves weights)
+        estimatedPosition = computeWeightedMean();
         
         resample();
         
+        // Save the resampled cloud: copies keep their source's weight, and the history
+        // stores consecutive copies of one source as a single run
+        recordHistory(timestamp);
+        
         // Store the current point for next update (in current coordinate system)
         previousPoint = currentPoint;
         
@@ -292,18 +399,108 @@ public class ParticleFilter {
         }
     }
 
+    /**
+     * Append the current particle state to the history
+     * Called by update(); call it directly to record the initial state
+     */
+    public void recordHistory(long timestamp) {
+        particleHistory.append(timestamp, particles.size(), particles.x, particles.y, particles.z,
+            particles.weight, particles.los, particles.losValid);
+        timestamps.add(timestamp);
+    }
+
+    /**
+     * Weighted mean particle position (simple mean if all weights are zero)
+     */
+    private Point3D computeWeightedMean() {
+        int count = particles.size();
+        double weightedX = 0, weightedY = 0, weightedZ = 0, totalWeight = 0;
+        for (int i = 0; i < count; i++) {
+            double weight = particles.weight[i];
+            weightedX += particles.x[i] * weight;
+            weightedY += particles.y[i] * weight;
+            weightedZ += particles.z[i] * weight;
+            totalWeight += weight;
+        }
+        
+        if (totalWeight == 0) {
+            double sumX = 0, sumY = 0, sumZ = 0;
+            for (int i = 0; i < count; i++) {
+                sumX += particles.x[i];
+                sumY += particles.y[i];
+                sumZ += particles.z[i];
+            }
+            return new Point3D(sumX / count, sumY / count, sumZ / count);
+        }
+        return new Point3D(weightedX / totalWeight, weightedY / totalWeight, weightedZ / totalWeight);
+    }
+
+    /**
+     * Position estimate of the last update, from the weights before resampling
+     */
+    public Point3D getEstimatedPosition() {
+        return estimatedPosition;
+    }
+
+    /**
+     * Current particles as a read-only list of detached Particle copies
+     */
     public List<Particle> getParticles() {
-        return particles;
+        return particles.asList();
     }
 
-    public List<List<Particle>> getParticleHistory() {
+    public ParticleHistorySink getParticleHistory() {
         return particleHistory;
     }
     
+    /**
+     * Release the particle history (its file, for the MAPPED sink) and the LOS calculator's files;
+     * call once the history has been written out
+     */
+    public void close() {
+        particleHistory.close();
+        losCalculator.close();
+    }
+    
     public List<Long> getTimestamps() {
         return timestamps;
     }
     
+    /**
+     * Number of LOS vector evaluations actually performed
+     */
+    public long getLosEvaluationCount() {
+        return losEvaluations.get();
+    }
+    
+    /**
+     * Number of LOS vector evaluations saved by lazy evaluation,
+     * compared to evaluating after initialization, after every move and in every weighting
+     */
+    public long getLosEvaluationsSaved() {
+        return losRequests - losEvaluations.get();
+    }
+    
+    /**
+     * Number of per-particle satellite tests skipped because the satellite was LOS or NLOS
+     * for the whole particle cloud
+     */
+    public long getRegionPrunedTestCount() {
+        return regionPrunedTests.get();
+    }
+    
+    /**
+     * Number of LOS evaluations skipped because the particle moved less than its shadow clearance
+     * (its geometric mask was kept and only classified again for the epoch)
+     */
+    public long getGeometricReuseCount() {
+        return geometricReuses.get();
+    }
+    
+    public LosCalculator getLosCalculator() {
+        return losCalculator;
+    }
+    
     // Configuration methods for article-based features
     public void setUseBayesianWeight(boolean useBayesianWeight) {
         this.useBayesianWeight = useBayesianWeight;
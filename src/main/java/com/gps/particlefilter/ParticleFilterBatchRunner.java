@@ -126,6 +126,10 @@ public class ParticleFilterBatchRunner {
                 // Print summary statistics
                 System.out.printf("Completed %d particles: Avg Error = %.2f m, Max Error = %.2f m%n",
                     particleCount, dataCollector.getAverageError(), dataCollector.getMaxError());
+                if (particleFilter.getLosCalculator().isLosCacheEnabled()) {
+                    System.out.println(particleFilter.getLosCalculator().getLosCacheSummary());
+                }
+                particleFilter.close(); // Releases the history sink before the next run opens its own
             }
             
             System.out.println("\n=== Convergence Analysis Complete ===");
@@ -247,6 +251,10 @@ public class ParticleFilterBatchRunner {
                     // Print summary statistics
                     System.out.printf("Completed %d particles (%s): Avg Error = %.2f m, Max Error = %.2f m%n",
                         particleCount, weightType, dataCollector.getAverageError(), dataCollector.getMaxError());
+                    if (particleFilter.getLosCalculator().isLosCacheEnabled()) {
+                        System.out.println(particleFilter.getLosCalculator().getLosCacheSummary());
+                    }
+                    particleFilter.close(); // Releases the history sink before the next run opens its own
                 }
             }
             
@@ -362,6 +370,10 @@ public class ParticleFilterBatchRunner {
                 // Print summary statistics
                 System.out.printf("Completed p=%.1f%%: Avg Error = %.2f m, Max Error = %.2f m%n",
                     misclassificationPercentage, dataCollector.getAverageError(), dataCollector.getMaxError());
+                if (particleFilter.getLosCalculator().isLosCacheEnabled()) {
+                    System.out.println(particleFilter.getLosCalculator().getLosCacheSummary());
+                }
+                particleFilter.close(); // Releases the history sink before the next run opens its own
             }
             
             System.out.println("\n=== LOS/NLOS Misclassification Analysis Complete ===");
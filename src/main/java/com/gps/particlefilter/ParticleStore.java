@@ -0,0 +1,195 @@
+package com.gps.particlefilter;
+
+import com.gps.particlefilter.model.LosVector;
+import com.gps.particlefilter.model.Particle;
+import com.gps.particlefilter.model.Point3D;
+import com.gps.particlefilter.model.SatelliteRegistry;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Structure-of-arrays particle storage for the particle filter.
+ * Particle i lives at index i of the coordinate and weight arrays; its LOS mask occupies
+ * los[i * losWords .. (i + 1) * losWords). Resampling writes into a second set of arrays
+ * which is then swapped in, so a filter step allocates nothing once the store is sized.
+ * Its geometric LOS mask (satellite-indexed, see LosCalculator.calculateLosMasks) occupies
+ * geometric[i * geometricWords ..] and stays usable while clearance[i] > 0.
+ */
+class ParticleStore {
+    private final SatelliteRegistry registry;
+    private final int losWords;
+    private final int geometricWords;
+    private int size;
+
+    // Front buffers, read and written in place by move and weighting
+    double[] x = new double[0];
+    double[] y = new double[0];
+    double[] z = new double[0];
+    double[] weight = new double[0];
+    double[] prevWeight = new double[0];
+    long[] los = new long[0];
+    long[] losEpoch = new long[0];
+    boolean[] losValid = new boolean[0]; // False after the position changed
+    long[] geometric = new long[0];
+    double[] clearance = new double[0];  // Distance left before the geometric mask may change
+
+    // Back buffers, filled by resampling
+    private double[] backX = new double[0];
+    private double[] backY = new double[0];
+    private double[] backZ = new double[0];
+    private double[] backWeight = new double[0];
+    private long[] backLos = new long[0];
+    private long[] backLosEpoch = new long[0];
+    private boolean[] backLosValid = new boolean[0];
+    private long[] backGeometric = new long[0];
+    private double[] backClearance = new double[0];
+
+    ParticleStore(SatelliteRegistry registry, int geometricWords) {
+        this.registry = registry;
+        this.losWords = registry.wordCount();
+        this.geometricWords = geometricWords;
+    }
+
+    /**
+     * Remove all particles and make room for the given count
+     */
+    void reset(int capacity) {
+        size = 0;
+        if (x.length < capacity) {
+            x = new double[capacity];
+            y = new double[capacity];
+            z = new double[capacity];
+            weight = new double[capacity];
+            prevWeight = new double[capacity];
+            los = new long[capacity * losWords];
+            losEpoch = new long[capacity];
+            losValid = new boolean[capacity];
+            geometric = new long[capacity * geometricWords];
+            clearance = new double[capacity];
+
+            backX = new double[capacity];
+            backY = new double[capacity];
+            backZ = new double[capacity];
+            backWeight = new double[capacity];
+            backLos = new long[capacity * losWords];
+            backLosEpoch = new long[capacity];
+            backLosValid = new boolean[capacity];
+            backGeometric = new long[capacity * geometricWords];
+            backClearance = new double[capacity];
+        }
+    }
+
+    /**
+     * Append a particle with weight 1 and no LOS status yet
+     */
+    void add(double px, double py, double pz) {
+        int i = size++;
+        x[i] = px;
+        y[i] = py;
+        z[i] = pz;
+        weight[i] = 1.0;
+        prevWeight[i] = 0.0;
+        losValid[i] = false;
+        clearance[i] = 0.0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getLosWords() {
+        return losWords;
+    }
+
+    int getGeometricWords() {
+        return geometricWords;
+    }
+
+    SatelliteRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replace the particles by copies of the given source particles.
+     * Position, weight, LOS and geometric masks and clearance are copied; the previous weight starts at 0 as for a new particle.
+     * @param source source[i] is the index of the particle copied into slot i
+     * @param count Number of slots
+     */
+    void resample(int[] source, int count) {
+        for (int i = 0; i < count; i++) {
+            int j = source[i];
+            backX[i] = x[j];
+            backY[i] = y[j];
+            backZ[i] = z[j];
+            backWeight[i] = weight[j];
+            backLosEpoch[i] = losEpoch[j];
+            backLosValid[i] = losValid[j];
+            System.arraycopy(los, j * losWords, backLos, i * losWords, losWords);
+            System.arraycopy(geometric, j * geometricWords, backGeometric, i * geometricWords, geometricWords);
+            backClearance[i] = clearance[j];
+        }
+
+        double[] swap = x; x = backX; backX = swap;
+        swap = y; y = backY; backY = swap;
+        swap = z; z = backZ; backZ = swap;
+        swap = weight; weight = backWeight; backWeight = swap;
+        long[] swapLong = los; los = backLos; backLos = swapLong;
+        swapLong = losEpoch; losEpoch = backLosEpoch; backLosEpoch = swapLong;
+        boolean[] swapValid = losValid; losValid = backLosValid; backLosValid = swapValid;
+        swapLong = geometric; geometric = backGeometric; backGeometric = swapLong;
+        swap = clearance; clearance = backClearance; backClearance = swap;
+        Arrays.fill(prevWeight, 0, count, 0.0);
+        size = count;
+    }
+
+    /**
+     * Detached Particle object for slot i
+     */
+    Particle toParticle(int i) {
+        Particle particle = new Particle(new Point3D(x[i], y[i], z[i]));
+        particle.setWeight(weight[i]);
+        particle.setPreviousWeight(prevWeight[i]);
+        if (losValid[i]) { // A mask from before the last move does not describe this position
+            long[] words = new long[losWords];
+            System.arraycopy(los, i * losWords, words, 0, losWords);
+            particle.setLosVector(new LosVector(registry, words));
+        }
+        return particle;
+    }
+
+    /**
+     * Copy of the current particles as Particle objects
+     */
+    List<Particle> snapshot() {
+        List<Particle> particles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            particles.add(toParticle(i));
+        }
+        return particles;
+    }
+
+    /**
+     * Read-only List view; every get() returns a detached Particle for the current state
+     */
+    List<Particle> asList() {
+        return new ParticleListView();
+    }
+
+    private class ParticleListView extends AbstractList<Particle> implements RandomAccess {
+        @Override
+        public Particle get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return toParticle(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
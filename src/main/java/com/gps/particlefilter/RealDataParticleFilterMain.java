@@ -149,8 +149,7 @@ public class RealDataParticleFilterMain {
             particleFilter.initializeParticles(startPoint, particleCount);
 
             // Add initial state to history
-            particleFilter.getParticleHistory().add(new ArrayList<>(particleFilter.getParticles()));
-            particleFilter.getTimestamps().add(timestamps.get(0));
+            particleFilter.recordHistory(timestamps.get(0));
 
             // Add initial estimate
             List<Point3D> estimatedRoute = new ArrayList<>();
@@ -170,10 +169,8 @@ public class RealDataParticleFilterMain {
                 // Update particle filter with current point
                 particleFilter.update(currentPoint, timestamp);
 
-                // Calculate estimated position using particles from history
-                List<Particle> particlesWithWeights = particleFilter.getParticleHistory()
-                    .get(particleFilter.getParticleHistory().size() - 1);
-                Point3D estimatedPosition = calculateEstimatedPosition(particlesWithWeights);
+                // Estimated position from the weights before resampling
+                Point3D estimatedPosition = particleFilter.getEstimatedPosition();
                 estimatedRoute.add(estimatedPosition);
 
                 // Calculate error for this point
@@ -303,9 +300,9 @@ public class RealDataParticleFilterMain {
             System.out.println("Writing particle history to: " + OUTPUT_PARTICLES_KML);
             kmlWriter.writeParticleHistoryToKML(
                 particleFilter.getParticleHistory(),
-                particleFilter.getTimestamps(),
                 OUTPUT_PARTICLES_KML
             );
+            particleFilter.close();
 
             System.out.println("Writing estimated route to: " + OUTPUT_ESTIMATED_ROUTE_KML);
             kmlWriter.writeRouteToKML(estimatedRoute, timestamps, OUTPUT_ESTIMATED_ROUTE_KML, false);
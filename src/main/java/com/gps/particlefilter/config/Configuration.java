@@ -163,6 +163,176 @@ public class Configuration {
         return getDouble("los.tolerance", 0.0);
     }
 
+    /**
+     * Geometric LOS mode: BRUTE_FORCE, RAY_SHOOTING_HEURISTIC, EXACT_ACCELERATED, DIAGNOSTIC, SHADOW_RASTER or SKYLINE.
+     * Empty means derive it from los.ray.shooting.enabled.
+     */
+    public String getLosGeometricMode() {
+        return getString("los.geometric.mode", "");
+    }
+
+    /**
+     * Seed for LOS misclassification and signal degradation draws (0 = new seed every run)
+     */
+    public int getLosRandomSeed() {
+        return getInt("los.random.seed", 0);
+    }
+
+    public double getLosGridCellSize() {
+        return getDouble("los.grid.cell.size", 0.0);
+    }
+
+    /**
+     * Spatial index over building walls for EXACT_ACCELERATED: GRID, BVH or PROJECTED
+     */
+    public String getLosSpatialIndex() {
+        return getString("los.spatial.index", "PROJECTED");
+    }
+
+    /**
+     * SHADOW_RASTER mode: raster cell size in meters
+     */
+    public double getLosRasterCellSize() {
+        return getDouble("los.raster.cell.size", 0.5);
+    }
+
+    /**
+     * SHADOW_RASTER and SKYLINE modes: receiver height the rasters and skylines are built for
+     * (queries at other heights use the exact test)
+     */
+    public double getLosRasterHeight() {
+        return getDouble("los.raster.height", 1.8);
+    }
+
+    /**
+     * SHADOW_RASTER and SKYLINE modes: covered area is the building extent grown by this many meters
+     */
+    public double getLosRasterMargin() {
+        return getDouble("los.raster.margin", 100.0);
+    }
+
+    /**
+     * SKYLINE mode: cell size in meters (one 720-bin skyline per cell)
+     */
+    public double getLosSkylineCellSize() {
+        return getDouble("los.skyline.cell.size", 1.0);
+    }
+
+    /**
+     * SKYLINE mode: memory budget of the built cells in megabytes (cells not used recently are replaced)
+     */
+    public long getLosSkylineMemoryMb() {
+        return getInt("los.skyline.memory.mb", 64);
+    }
+
+    /**
+     * LOS cache: positions are quantized to cells of this size in meters (0 = cache off)
+     */
+    public double getLosCacheCellSize() {
+        return getDouble("los.cache.cell.size", 0.0);
+    }
+
+    /**
+     * LOS cache: memory budget in megabytes
+     */
+    public long getLosCacheMemoryMb() {
+        return getInt("los.cache.memory.mb", 64);
+    }
+
+    /**
+     * LOS cache: also keep the masks in a memory-mapped file reused by later runs
+     */
+    public boolean isLosCachePersistent() {
+        return getBoolean("los.cache.persistent", false);
+    }
+
+    /**
+     * LOS cache: directory of the persistent cache files
+     */
+    public String getLosCacheDirectory() {
+        return getString("los.cache.directory", "cache");
+    }
+
+    /**
+     * LOS cache: size of a new persistent cache file in megabytes
+     */
+    public long getLosCacheDiskMb() {
+        return getInt("los.cache.disk.mb", 256);
+    }
+
+    /**
+     * SKYLINE mode: satellites within this many degrees of the skyline use the exact test
+     */
+    public double getLosSkylineMargin() {
+        return getDouble("los.skyline.margin", 1.0);
+    }
+
+    /**
+     * Skip buildings too low or too far away to reach the satellite ray (same answers, fewer wall tests)
+     */
+    public boolean isLosHorizonCullingEnabled() {
+        return getBoolean("los.horizon.culling", true);
+    }
+
+    /**
+     * Skip buildings whose bounding box the satellite ray misses before testing their walls
+     */
+    public boolean isLosBoxRejectionEnabled() {
+        return getBoolean("los.box.rejection", true);
+    }
+
+    /**
+     * Classify satellites once for the particle cloud's bounding box and test per particle
+     * only those neither LOS nor NLOS for the whole box (same answers, fewer wall tests)
+     */
+    public boolean isLosRegionPruningEnabled() {
+        return getBoolean("los.region.pruning", true);
+    }
+
+    /**
+     * Test the particles of an epoch only against the walls whose shadow reaches the particle
+     * cloud's bounding box, per satellite (same answers, no spatial index search)
+     */
+    public boolean isLosRegionWallCullingEnabled() {
+        return getBoolean("los.region.wall.culling", true);
+    }
+
+    /**
+     * Longest active wall list used instead of the spatial index (BRUTE_FORCE uses any list)
+     */
+    public int getLosRegionMaxWalls() {
+        return getInt("los.region.max.walls", 256);
+    }
+
+    /**
+     * Keep a particle's geometric LOS mask while it moves less than its distance to the nearest
+     * shadow boundary (same answers, fewer LOS evaluations)
+     */
+    public boolean isLosShadowClearanceEnabled() {
+        return getBoolean("los.shadow.clearance", true);
+    }
+
+    /**
+     * Cell size of the shadow distance field in meters
+     */
+    public double getLosShadowClearanceCellSize() {
+        return getDouble("los.shadow.clearance.cell.size", 0.5);
+    }
+
+    /**
+     * Shadow distances are capped at this many meters
+     */
+    public double getLosShadowClearanceMax() {
+        return getDouble("los.shadow.clearance.max", 10.0);
+    }
+
+    /**
+     * Wall test implementation: AUTO, SCALAR or VECTOR (needs --add-modules jdk.incubator.vector)
+     */
+    public String getLosWallKernel() {
+        return getString("los.wall.kernel", "AUTO");
+    }
+
     // Simulation Settings
     public double getSimulationObserverHeight() {
         return getDouble("simulation.observer.height", 85.5);
@@ -230,6 +400,27 @@ public class Configuration {
         return getBoolean("debug.los.calculation", false);
     }
 
+    // Particle History Settings
+    public String getHistorySink() {
+        return getString("history.sink", "MEMORY");
+    }
+
+    public int getHistoryRingCapacity() {
+        return getInt("history.ring.capacity", 200);
+    }
+
+    public int getHistoryTopK() {
+        return getInt("history.topk", 0);
+    }
+
+    public String getHistoryMappedFile() {
+        return getString("history.mapped.file", "");
+    }
+
+    public double getHistoryPositionResolution() {
+        return getDouble("history.position.resolution", 0.01);
+    }
+
     // Performance Settings
     public int getMaxBuildingsCheck() {
         return getInt("performance.max.buildings.check", 100);
@@ -315,6 +506,10 @@ public class Configuration {
         return getBoolean("coordinates.auto.detect.utm", false);
     }
 
+    public String getCoordinatesProjectionEngine() {
+        return getString("coordinates.projection.engine", "GEOTOOLS");
+    }
+
     // Helper methods for type conversion
     private String getString(String key, String defaultValue) {
         return properties.getProperty(key, defaultValue);
@@ -356,6 +551,18 @@ public class Configuration {
         System.out.println("LOS classification mode: " + getLosClassificationMode());
         System.out.println("LOS signal threshold: " + getLosSignalThreshold() + " dB-Hz");
         System.out.println("Ray shooting enabled: " + isLosRayShootingEnabled());
+        System.out.println("Geometric LOS mode: " + (getLosGeometricMode().isEmpty() ? "(from ray shooting flag)" : getLosGeometricMode()));
+        System.out.println("LOS spatial index: " + getLosSpatialIndex());
+        System.out.println("LOS wall kernel: " + getLosWallKernel());
+        System.out.println("LOS horizon culling: " + isLosHorizonCullingEnabled());
+        System.out.println("LOS bounding box rejection: " + isLosBoxRejectionEnabled());
+        System.out.println("LOS region pruning: " + isLosRegionPruningEnabled());
+        System.out.println("LOS region wall culling: " + isLosRegionWallCullingEnabled() +
+            " (up to " + getLosRegionMaxWalls() + " walls)");
+        System.out.println("LOS shadow clearance reuse: " + isLosShadowClearanceEnabled() +
+            " (" + getLosShadowClearanceCellSize() + " m cells, capped at " + getLosShadowClearanceMax() + " m)");
+        System.out.println("LOS cache cell size: " + getLosCacheCellSize() + " m (0 = off), budget " + getLosCacheMemoryMb() + " MB" +
+            (isLosCachePersistent() ? ", persistent in " + getLosCacheDirectory() : ""));
         System.out.println("Observer height: " + getSimulationObserverHeight() + " m");
         System.out.println("Wall height: " + getSimulationWallHeight() + " m");
         System.out.println("Debug enabled: " + isDebugEnabled());
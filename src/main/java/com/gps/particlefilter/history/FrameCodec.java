@@ -0,0 +1,214 @@
+package com.gps.particlefilter.history;
+
+import com.gps.particlefilter.model.LosVector;
+import com.gps.particlefilter.model.Particle;
+import com.gps.particlefilter.model.Point3D;
+import com.gps.particlefilter.model.SatelliteRegistry;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary encoding of one history epoch.
+ *
+ * Layout: timestamp (long), particle count (int), run count (int), origin x/y/z (double),
+ * horizontal and height resolution (double), then one record per run: repeat count (int), quantized x/y/z
+ * (int, multiples of the resolutions from the origin), weight (float), LOS flag (byte)
+ * and, if the flag is set, the LOS mask words (long each).
+ * Consecutive particles with identical records (e.g. resampled copies) form one run.
+ */
+class FrameCodec {
+    private static final int HEADER_BYTES = 8 + 4 + 4 + 8 * 5;
+
+    private final SatelliteRegistry registry;
+    private final int losWords;
+    private final double resolution;
+    private final double heightResolution;
+    private final int topK;
+
+    // Scratch reused between epochs (appends are sequential)
+    private ByteBuffer scratch = ByteBuffer.allocate(0);
+    private int[] selected = new int[0];
+    private double[] sortedWeights = new double[0];
+
+    /**
+     * @param registry Satellite registry of the LOS masks
+     * @param resolution Horizontal quantization step in coordinate units (meters in UTM, degrees otherwise)
+     * @param heightResolution Height quantization step in meters
+     * @param topK Keep only the K highest-weight particles per epoch (0 or less = all)
+     */
+    FrameCodec(SatelliteRegistry registry, double resolution, double heightResolution, int topK) {
+        this.registry = registry;
+        this.losWords = registry.wordCount();
+        this.resolution = resolution > 0 ? resolution : 0.01;
+        this.heightResolution = heightResolution > 0 ? heightResolution : 0.01;
+        this.topK = topK;
+    }
+
+    /**
+     * Encode one epoch into a new exactly-sized heap buffer (position 0, limit = size)
+     */
+    ByteBuffer encode(long timestamp, int count, double[] x, double[] y, double[] z, double[] weight,
+                      long[] los, boolean[] losValid) {
+        int kept = select(count, weight);
+
+        double originX = Double.POSITIVE_INFINITY, originY = Double.POSITIVE_INFINITY, originZ = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < kept; k++) {
+            int i = selected[k];
+            originX = Math.min(originX, x[i]);
+            originY = Math.min(originY, y[i]);
+            originZ = Math.min(originZ, z[i]);
+        }
+        if (kept == 0) {
+            originX = originY = originZ = 0;
+        }
+
+        int maxRecord = 4 + 3 * 4 + 4 + 1 + 8 * losWords;
+        int capacity = HEADER_BYTES + kept * maxRecord;
+        if (scratch.capacity() < capacity) {
+            scratch = ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer out = scratch;
+        out.clear();
+        out.putLong(timestamp).putInt(kept).putInt(0);
+        out.putDouble(originX).putDouble(originY).putDouble(originZ).putDouble(resolution).putDouble(heightResolution);
+
+        int runs = 0;
+        int runStart = -1; // Buffer position of the current run record
+        int prev = -1;
+        int prevQx = 0, prevQy = 0, prevQz = 0;
+        for (int k = 0; k < kept; k++) {
+            int i = selected[k];
+            int qx = (int) Math.round((x[i] - originX) / resolution);
+            int qy = (int) Math.round((y[i] - originY) / resolution);
+            int qz = (int) Math.round((z[i] - originZ) / heightResolution);
+            float w = (float) weight[i];
+
+            if (prev >= 0 && qx == prevQx && qy == prevQy && qz == prevQz
+                && Float.floatToIntBits(w) == Float.floatToIntBits((float) weight[prev])
+                && sameLos(los, losValid, prev, i)) {
+                out.putInt(runStart, out.getInt(runStart) + 1);
+                continue;
+            }
+
+            runStart = out.position();
+            out.putInt(1).putInt(qx).putInt(qy).putInt(qz).putFloat(w);
+            out.put((byte) (losValid[i] ? 1 : 0));
+            if (losValid[i]) {
+                for (int word = 0; word < losWords; word++) {
+                    out.putLong(los[i * losWords + word]);
+                }
+            }
+            runs++;
+            prev = i;
+            prevQx = qx;
+            prevQy = qy;
+            prevQz = qz;
+        }
+        out.putInt(12, runs);
+
+        out.flip();
+        ByteBuffer frame = ByteBuffer.allocate(out.remaining());
+        frame.put(out);
+        frame.flip();
+        return frame;
+    }
+
+    private boolean sameLos(long[] los, boolean[] losValid, int a, int b) {
+        if (losValid[a] != losValid[b]) return false;
+        if (!losValid[a]) return true;
+        for (int word = 0; word < losWords; word++) {
+            if (los[a * losWords + word] != los[b * losWords + word]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fill selected[0 .. kept) with the indices to store, in particle order
+     * @return Number of particles kept
+     */
+    private int select(int count, double[] weight) {
+        if (selected.length < count) {
+            selected = new int[count];
+        }
+        if (topK <= 0 || count <= topK) {
+            for (int i = 0; i < count; i++) {
+                selected[i] = i;
+            }
+            return count;
+        }
+
+        // K-th largest weight, then keep everything above it and enough ties to reach K
+        if (sortedWeights.length < count) {
+            sortedWeights = new double[count];
+        }
+        System.arraycopy(weight, 0, sortedWeights, 0, count);
+        Arrays.sort(sortedWeights, 0, count);
+        double threshold = sortedWeights[count - topK];
+        int above = 0;
+        for (int i = 0; i < count; i++) {
+            if (weight[i] > threshold) above++;
+        }
+        int tiesAllowed = topK - above;
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (weight[i] > threshold) {
+                selected[kept++] = i;
+            } else if (weight[i] == threshold && tiesAllowed > 0) {
+                selected[kept++] = i;
+                tiesAllowed--;
+            }
+        }
+        return kept;
+    }
+
+    static long timestampOf(ByteBuffer frame) {
+        return frame.getLong(0);
+    }
+
+    /**
+     * Rebuild the particles of an encoded epoch; runs are expanded to separate particles
+     */
+    List<Particle> decode(ByteBuffer frame) {
+        ByteBuffer in = frame.duplicate();
+        in.position(0);
+        in.getLong(); // Timestamp, see timestampOf
+        int count = in.getInt();
+        int runs = in.getInt();
+        double originX = in.getDouble();
+        double originY = in.getDouble();
+        double originZ = in.getDouble();
+        double step = in.getDouble();
+        double heightStep = in.getDouble();
+
+        List<Particle> particles = new ArrayList<>(count);
+        for (int r = 0; r < runs; r++) {
+            int repeat = in.getInt();
+            double px = originX + in.getInt() * step;
+            double py = originY + in.getInt() * step;
+            double pz = originZ + in.getInt() * heightStep;
+            double w = in.getFloat();
+            LosVector losVector = null;
+            if (in.get() != 0) {
+                long[] words = new long[losWords];
+                for (int word = 0; word < losWords; word++) {
+                    words[word] = in.getLong();
+                }
+                losVector = new LosVector(registry, words);
+            }
+
+            Point3D position = new Point3D(px, py, pz);
+            for (int k = 0; k < repeat; k++) {
+                Particle particle = new Particle(position);
+                particle.setWeight(w);
+                if (losVector != null) {
+                    particle.setLosVector(losVector);
+                }
+                particles.add(particle);
+            }
+        }
+        return particles;
+    }
+}
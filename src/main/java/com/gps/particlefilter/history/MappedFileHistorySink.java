@@ -0,0 +1,146 @@
+package com.gps.particlefilter.history;
+
+import com.gps.particlefilter.model.Particle;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Appends encoded epochs to a binary file (the MAPPED sink of history.sink).
+ * Epochs are written and read back with positional channel I/O into heap buffers, so nothing
+ * stays mapped: close() releases the file, and a temporary file can be deleted on every platform.
+ * Only the epoch offsets stay in memory.
+ */
+public class MappedFileHistorySink implements ParticleHistorySink {
+    private final FrameCodec codec;
+    private final Path file;
+    private final boolean temporary;
+    private FileChannel channel;
+    private long[] offsets = new long[64];
+    private int[] lengths = new int[64];
+    private long[] timestamps = new long[64];
+    private int appended = 0;
+    private long fileSize = 0;
+
+    /**
+     * @param codec Epoch encoder
+     * @param filename History file, truncated on open (empty = temporary file deleted on exit)
+     */
+    MappedFileHistorySink(FrameCodec codec, String filename) {
+        this.codec = codec;
+        try {
+            if (filename == null || filename.trim().isEmpty()) {
+                this.file = Files.createTempFile("particle-history", ".bin");
+                this.temporary = true;
+                this.file.toFile().deleteOnExit();
+            } else {
+                this.file = Paths.get(filename.trim());
+                this.temporary = false;
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open particle history file", e);
+        }
+        System.out.println("Particle history file: " + file.toAbsolutePath());
+    }
+
+    @Override
+    public void append(long timestamp, int count, double[] x, double[] y, double[] z, double[] weight,
+                       long[] los, boolean[] losValid) {
+        ByteBuffer frame = codec.encode(timestamp, count, x, y, z, weight, los, losValid);
+        int length = frame.remaining();
+
+        try {
+            long position = fileSize;
+            while (frame.hasRemaining()) {
+                position += channel.write(frame, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append particle history epoch " + appended, e);
+        }
+
+        if (appended == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+            timestamps = Arrays.copyOf(timestamps, timestamps.length * 2);
+        }
+        offsets[appended] = fileSize;
+        lengths[appended] = length;
+        timestamps[appended] = timestamp;
+        fileSize += length;
+        appended++;
+    }
+
+    @Override
+    public int size() {
+        return appended;
+    }
+
+    @Override
+    public boolean isAvailable(int epoch) {
+        return epoch >= 0 && epoch < appended && channel != null;
+    }
+
+    @Override
+    public long getTimestamp(int epoch) {
+        checkAvailable(epoch);
+        return timestamps[epoch];
+    }
+
+    @Override
+    public List<Particle> getParticles(int epoch) {
+        checkAvailable(epoch);
+        ByteBuffer frame = ByteBuffer.allocate(lengths[epoch]);
+        try {
+            long position = offsets[epoch];
+            while (frame.hasRemaining()) {
+                int read = channel.read(frame, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read particle history epoch " + epoch, e);
+        }
+        frame.flip();
+        return codec.decode(frame);
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return fileSize;
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+            if (temporary) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not close particle history file: " + e.getMessage());
+        }
+        channel = null;
+        appended = 0;
+    }
+
+    private void checkAvailable(int epoch) {
+        if (!isAvailable(epoch)) {
+            throw new IndexOutOfBoundsException("History epoch " + epoch + " is not available (size " + appended + ")");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.gps.particlefilter.history;
+
+import com.gps.particlefilter.model.Particle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps encoded epochs in memory: all of them, or only the most recent ones (ring buffer).
+ */
+public class MemoryHistorySink implements ParticleHistorySink {
+    private final FrameCodec codec;
+    private final int capacity; // 0 or less = unbounded
+    private ByteBuffer[] frames;
+    private long[] timestamps;
+    private int appended = 0;
+    private long storedBytes = 0;
+
+    /**
+     * @param codec Epoch encoder
+     * @param capacity Number of most recent epochs to keep (0 or less = keep all)
+     */
+    MemoryHistorySink(FrameCodec codec, int capacity) {
+        this.codec = codec;
+        this.capacity = capacity;
+        int initial = capacity > 0 ? capacity : 64;
+        this.frames = new ByteBuffer[initial];
+        this.timestamps = new long[initial];
+    }
+
+    @Override
+    public void append(long timestamp, int count, double[] x, double[] y, double[] z, double[] weight,
+                       long[] los, boolean[] losValid) {
+        ByteBuffer frame = codec.encode(timestamp, count, x, y, z, weight, los, losValid);
+
+        int slot;
+        if (capacity > 0) {
+            slot = appended % capacity;
+            if (frames[slot] != null) {
+                storedBytes -= frames[slot].capacity(); // Overwrite the oldest epoch
+            }
+        } else {
+            if (appended == frames.length) {
+                frames = Arrays.copyOf(frames, frames.length * 2);
+                timestamps = Arrays.copyOf(timestamps, timestamps.length * 2);
+            }
+            slot = appended;
+        }
+        frames[slot] = frame;
+        timestamps[slot] = timestamp;
+        storedBytes += frame.capacity();
+        appended++;
+    }
+
+    @Override
+    public int size() {
+        return appended;
+    }
+
+    @Override
+    public boolean isAvailable(int epoch) {
+        if (epoch < 0 || epoch >= appended) return false;
+        return capacity <= 0 || epoch >= appended - capacity;
+    }
+
+    @Override
+    public long getTimestamp(int epoch) {
+        checkAvailable(epoch);
+        return timestamps[slotOf(epoch)];
+    }
+
+    @Override
+    public List<Particle> getParticles(int epoch) {
+        checkAvailable(epoch);
+        return codec.decode(frames[slotOf(epoch)]);
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    @Override
+    public void close() {
+        frames = new ByteBuffer[0];
+        timestamps = new long[0];
+        appended = 0;
+        storedBytes = 0;
+    }
+
+    private int slotOf(int epoch) {
+        return capacity > 0 ? epoch % capacity : epoch;
+    }
+
+    private void checkAvailable(int epoch) {
+        if (!isAvailable(epoch)) {
+            throw new IndexOutOfBoundsException("History epoch " + epoch + " is not available (size " + appended + ")");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.gps.particlefilter.history;
+
+import com.gps.particlefilter.config.Configuration;
+import com.gps.particlefilter.model.Particle;
+import com.gps.particlefilter.model.SatelliteRegistry;
+import com.gps.particlefilter.util.CoordinateSystemManager;
+import java.util.List;
+
+/**
+ * Destination for the per-epoch particle snapshots of a filter run.
+ * Epochs are numbered 0, 1, 2, ... in append order. Implementations keep the
+ * snapshots in a compact quantized form and rebuild Particle objects only when read,
+ * so a bounded sink can drop old epochs (see {@link #isAvailable(int)}).
+ */
+public interface ParticleHistorySink {
+
+    /**
+     * Record one epoch. Arrays are read during the call only.
+     * @param timestamp Epoch timestamp
+     * @param count Number of particles (first count entries of the arrays)
+     * @param x Easting per particle
+     * @param y Northing per particle
+     * @param z Height per particle
+     * @param weight Weight per particle
+     * @param los Packed LOS masks, registry.wordCount() words per particle
+     * @param losValid Whether the LOS mask of a particle is set
+     */
+    void append(long timestamp, int count, double[] x, double[] y, double[] z, double[] weight,
+                long[] los, boolean[] losValid);
+
+    /**
+     * Number of epochs appended so far (including ones no longer available)
+     */
+    int size();
+
+    /**
+     * Whether the epoch can still be read
+     */
+    boolean isAvailable(int epoch);
+
+    long getTimestamp(int epoch);
+
+    /**
+     * Decode the particles of an epoch (positions and weights are quantized)
+     */
+    List<Particle> getParticles(int epoch);
+
+    /**
+     * Bytes used by the encoded epochs
+     */
+    long getStoredBytes();
+
+    /**
+     * Release files and buffers
+     */
+    void close();
+
+    /**
+     * Create the sink selected by history.sink in the configuration, quantizing positions
+     * to history.position.resolution meters in the current coordinate system
+     * @param registry Satellite registry of the LOS masks that will be recorded
+     */
+    static ParticleHistorySink fromConfiguration(SatelliteRegistry registry) {
+        Configuration config = Configuration.getInstance();
+        // The resolution is in meters; horizontal positions are in degrees while geographic coordinates are active
+        double heightResolution = config.getHistoryPositionResolution();
+        double resolution = heightResolution;
+        if (!CoordinateSystemManager.getInstance().isUsingUtm()) {
+            resolution /= config.getMetersPerDegree();
+        }
+        FrameCodec codec = new FrameCodec(registry, resolution, heightResolution, config.getHistoryTopK());
+
+        String type = config.getHistorySink().toUpperCase();
+        switch (type) {
+            case "RING":
+                return new MemoryHistorySink(codec, config.getHistoryRingCapacity());
+            case "MAPPED":
+                return new MappedFileHistorySink(codec, config.getHistoryMappedFile());
+            case "MEMORY":
+            default:
+                return new MemoryHistorySink(codec, 0);
+        }
+    }
+}
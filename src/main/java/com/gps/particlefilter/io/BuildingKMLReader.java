@@ -2,68 +2,38 @@ package com.gps.particlefilter.io;
 
 import com.gps.particlefilter.model.*;
 import com.gps.particlefilter.util.CoordinateSystemManager;
-import de.micromata.opengis.kml.v_2_2_0.*;
 
-import java.io.File;
+import javax.xml.stream.XMLStreamConstants;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Reads building footprints from KML with a streaming StAX parser.
+ * Every Polygon inside a MultiGeometry of a top-level Placemark becomes one building;
+ * its outer boundary gives the vertices and the first altitude gives the height.
+ */
 public class BuildingKMLReader {
+    private static final String PLACEMARK = "/kml/Document/Placemark";
+    private static final String POLYGON = PLACEMARK + "/MultiGeometry/Polygon";
+    private static final String OUTER_COORDINATES = POLYGON + "/outerBoundaryIs/LinearRing/coordinates";
+
     public List<Building> readBuildings(String filename) {
         List<Building> buildings = new ArrayList<>();
         CoordinateSystemManager coordManager = CoordinateSystemManager.getInstance();
+        CoordinateBuffer coordinates = new CoordinateBuffer();
+        List<Point3D> converted = new ArrayList<>();
         
-        try {
-            Kml kml = Kml.unmarshal(new File(filename));
-            Document document = (Document) kml.getFeature();
-            
-            for (Feature feature : document.getFeature()) {
-                if (feature instanceof Placemark) {
-                    Placemark placemark = (Placemark) feature;
-                    if (placemark.getGeometry() instanceof MultiGeometry) {
-                        MultiGeometry multiGeometry = (MultiGeometry) placemark.getGeometry();
-                        for (Geometry geometry : multiGeometry.getGeometry()) {
-                            if (geometry instanceof Polygon) {
-                                Polygon polygon = (Polygon) geometry;
-                                List<Point3D> vertices = new ArrayList<>();
-                                
-                                // Get the outer boundary
-                                Boundary outerBoundary = polygon.getOuterBoundaryIs();
-                                LinearRing ring = outerBoundary.getLinearRing();
-                                List<Coordinate> coordinates = ring.getCoordinates();
-                                
-                                for (Coordinate coord : coordinates) {
-                                    // Create geographic point first (longitude=x, latitude=y)
-                                    Point3D geoPoint = new Point3D(coord.getLongitude(), 
-                                                                   coord.getLatitude(), 
-                                                                   coord.getAltitude());
-                                    
-                                    // Convert to UTM coordinates for proper meter-based calculations
-                                    Point3D convertedPoint = coordManager.convertFromGeographic(geoPoint);
-                                    
-                                    // Check if the point is not identical to the previous one
-                                    if (vertices.isEmpty() || !isPointEqual(vertices.get(vertices.size()-1), convertedPoint)) {
-                                        vertices.add(convertedPoint);
-                                    }
-                                }
-                                
-                                // Ensure the polygon is closed
-                                if (!vertices.isEmpty() && !isPointEqual(vertices.get(0), vertices.get(vertices.size()-1))) {
-                                    vertices.add(vertices.get(0));
-                                }
-                                
-                                // Get height from the first point's altitude
-                                double height = coordinates.get(0).getAltitude();
-                                
-                                // Only if there are at least 3 unique points
-                                if (vertices.size() >= 3) {
-                                    buildings.add(new Building(vertices, height));
-                                } else {
-                                    System.out.println("Warning: Skipping building with less than 3 unique vertices");
-                                }
-                            }
-                        }
+        try (KmlStreamReader kml = new KmlStreamReader(filename)) {
+            int event;
+            while ((event = kml.next()) != XMLStreamConstants.END_DOCUMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (kml.at(POLYGON)) {
+                        coordinates.clear();
+                    } else if (kml.at(OUTER_COORDINATES)) {
+                        coordinates.parse(kml.text(), Integer.MAX_VALUE);
                     }
+                } else if (kml.at(POLYGON)) {
+                    addBuilding(buildings, coordinates, converted, coordManager);
                 }
             }
         } catch (Exception e) {
@@ -72,6 +42,35 @@ public class BuildingKMLReader {
         return buildings;
     }
 
+    private void addBuilding(List<Building> buildings, CoordinateBuffer coordinates, List<Point3D> converted,
+                             CoordinateSystemManager coordManager) {
+        // Convert the whole ring to UTM coordinates for proper meter-based calculations
+        converted.clear();
+        coordinates.convertTo(converted, coordManager, 0.0);
+
+        List<Point3D> vertices = new ArrayList<>();
+        for (Point3D convertedPoint : converted) {
+            // Check if the point is not identical to the previous one
+            if (vertices.isEmpty() || !isPointEqual(vertices.get(vertices.size()-1), convertedPoint)) {
+                vertices.add(convertedPoint);
+            }
+        }
+        
+        // Ensure the polygon is closed
+        if (!vertices.isEmpty() && !isPointEqual(vertices.get(0), vertices.get(vertices.size()-1))) {
+            vertices.add(vertices.get(0));
+        }
+        
+        // Only if there are at least 3 unique points
+        if (vertices.size() >= 3) {
+            // Get height from the first point's altitude
+            double height = coordinates.getAltitude(0);
+            buildings.add(new Building(vertices, height));
+        } else {
+            System.out.println("Warning: Skipping building with less than 3 unique vertices");
+        }
+    }
+
     public String generateValidationReport(String filename) {
         StringBuilder report = new StringBuilder();
         report.append("Building KML Validation Report\n");
@@ -0,0 +1,105 @@
+package com.gps.particlefilter.io;
+
+import com.gps.particlefilter.model.Point3D;
+import com.gps.particlefilter.util.CoordinateSystemManager;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable block of KML coordinates: interleaved lon, lat pairs plus a separate altitude array.
+ * Filled straight from <coordinates> text and converted to the working coordinate system
+ * with one batch transform per block.
+ */
+final class CoordinateBuffer {
+    private double[] lonLat = new double[2 * 64];
+    private double[] altitude = new double[64];
+    private double[] converted = new double[0]; // Conversion scratch
+    private int size; // Number of coordinates
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    double getLongitude(int i) {
+        return lonLat[2 * i];
+    }
+
+    double getLatitude(int i) {
+        return lonLat[2 * i + 1];
+    }
+
+    double getAltitude(int i) {
+        return altitude[i];
+    }
+
+    void add(double lon, double lat, double alt) {
+        if (size == altitude.length) {
+            lonLat = Arrays.copyOf(lonLat, 4 * size);
+            altitude = Arrays.copyOf(altitude, 2 * size);
+        }
+        lonLat[2 * size] = lon;
+        lonLat[2 * size + 1] = lat;
+        altitude[size] = alt;
+        size++;
+    }
+
+    /**
+     * Parse KML coordinate tuples ("lon,lat[,alt]" separated by whitespace) and append them.
+     * A missing altitude is 0.
+     * @param limit Maximum number of tuples to read (e.g. 1 for a Point)
+     * @return Number of tuples appended
+     */
+    int parse(String text, int limit) {
+        int added = 0;
+        int length = text.length();
+        int pos = 0;
+        while (added < limit) {
+            while (pos < length && Character.isWhitespace(text.charAt(pos))) pos++;
+            if (pos == length) break;
+            int end = pos;
+            while (end < length && !Character.isWhitespace(text.charAt(end))) end++;
+
+            double lon = 0, lat = 0, alt = 0;
+            int component = 0;
+            int start = pos;
+            for (int i = pos; i <= end; i++) {
+                if (i == end || text.charAt(i) == ',') {
+                    double value = Double.parseDouble(text.substring(start, i));
+                    if (component == 0) lon = value;
+                    else if (component == 1) lat = value;
+                    else if (component == 2) alt = value;
+                    component++;
+                    start = i + 1;
+                }
+            }
+            if (component < 2) {
+                throw new NumberFormatException("Invalid KML coordinate: " + text.substring(pos, end));
+            }
+            add(lon, lat, alt);
+            added++;
+            pos = end;
+        }
+        return added;
+    }
+
+    /**
+     * Convert all coordinates from geographic to the current coordinate system in one
+     * batch transform and append them as points.
+     * The KML lon, lat tuples are passed in that order, so the converter reads the longitude as its
+     * latitude value, exactly as the single-point conversions of Point3D(lon, lat) always have.
+     * @param altitudeOffset Added to every altitude (e.g. user height above ground)
+     */
+    void convertTo(List<Point3D> out, CoordinateSystemManager coordManager, double altitudeOffset) {
+        if (converted.length < 2 * size) {
+            converted = new double[lonLat.length];
+        }
+        coordManager.convertFromGeographic(lonLat, converted, size);
+        for (int i = 0; i < size; i++) {
+            out.add(new Point3D(converted[2 * i], converted[2 * i + 1], altitude[i] + altitudeOffset));
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package com.gps.particlefilter.io;
 
 import com.gps.particlefilter.model.*;
+import com.gps.particlefilter.history.ParticleHistorySink;
 import com.gps.particlefilter.util.CoordinateSystemManager;
 import de.micromata.opengis.kml.v_2_2_0.*;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class KMLWriter {
     
@@ -22,19 +23,18 @@ public class KMLWriter {
         iconStyle.setScale(0.5);
         iconStyle.createAndSetIcon().setHref("http://maps.google.com/mapfiles/kml/shapes/placemark_circle.png");
         
+        // Convert all positions to geographic coordinates for KML (KML uses WGS84 lon/lat/alt)
+        double[] geoPositions = particlesToGeographic(particles);
+        
         // Add each particle as a placemark
         for (int i = 0; i < particles.size(); i++) {
             Particle particle = particles.get(i);
-            Point3D position = particle.getPosition();
-            
-            // Convert to geographic coordinates for KML (KML uses WGS84 lon/lat/alt)
-            Point3D geoPosition = CoordinateSystemManager.getInstance().convertToGeographic(position);
             
             Placemark placemark = document.createAndAddPlacemark();
             placemark.setStyleUrl("#particleStyle");
             
             Point point = placemark.createAndSetPoint();
-            point.addToCoordinates(geoPosition.getX(), geoPosition.getY(), geoPosition.getZ());
+            point.addToCoordinates(geoPositions[2 * i], geoPositions[2 * i + 1], particle.getPosition().getZ());
             
             // Add weight information
             ExtendedData extendedData = placemark.createAndSetExtendedData();
@@ -49,11 +49,14 @@ public class KMLWriter {
         }
     }
     
-    public void writeParticleHistoryToKML(List<List<Particle>> particleHistory, List<Long> timestamps, String filename) {
+    /**
+     * Write selected epochs of the particle history; only those epochs are decoded
+     */
+    public void writeParticleHistoryToKML(ParticleHistorySink particleHistory, String filename) {
         try {
             // Debug info
-            System.out.println("In KMLWriter - Particle history size: " + particleHistory.size());
-            System.out.println("In KMLWriter - Timestamps size: " + timestamps.size());
+            System.out.println("In KMLWriter - Particle history size: " + particleHistory.size() +
+                " (" + particleHistory.getStoredBytes() / 1024 + " KB stored)");
             
             Kml kml = KmlFactory.createKml();
             Document document = kml.createAndSetDocument();
@@ -100,17 +103,21 @@ public class KMLWriter {
             
             for (int timeIndex : timePointsToShow) {
                 // Skip if the timeIndex is out of bounds
-                if (timeIndex >= particleHistory.size() || timeIndex >= timestamps.size()) {
+                if (timeIndex >= particleHistory.size()) {
                     System.out.println("Warning: Time index " + timeIndex + " is out of bounds. Skipping.");
                     continue;
                 }
+                if (!particleHistory.isAvailable(timeIndex)) {
+                    System.out.println("Warning: Time index " + timeIndex + " is no longer in the history. Skipping.");
+                    continue;
+                }
                 
-                List<Particle> particles = particleHistory.get(timeIndex);
-                long timestamp = timestamps.get(timeIndex);
+                List<Particle> particles = particleHistory.getParticles(timeIndex);
+                long timestamp = particleHistory.getTimestamp(timeIndex);
                 
                 // Find the reference LOS/NLOS statuses to compare against
                 // Use a central particle as reference point
-                Map<String, Boolean> referenceStatus = null;
+                LosVector referenceStatus = null;
                 int totalSatellites = 0;
                 
                 // Find particle with highest weight to use as reference
@@ -125,13 +132,13 @@ public class KMLWriter {
                 }
                 
                 if (refIndex >= 0) {
-                    referenceStatus = particles.get(refIndex).getLosStatus();
-                    totalSatellites = referenceStatus.size();
+                    referenceStatus = particles.get(refIndex).getLosVector();
+                    totalSatellites = referenceStatus != null ? referenceStatus.size() : 0;
                     System.out.println("Using particle " + refIndex + " with weight " + maxWeight + " as reference");
                 } else if (!particles.isEmpty()) {
                     // Fallback to first particle
-                    referenceStatus = particles.get(0).getLosStatus();
-                    totalSatellites = referenceStatus.size();
+                    referenceStatus = particles.get(0).getLosVector();
+                    totalSatellites = referenceStatus != null ? referenceStatus.size() : 0;
                     System.out.println("Using first particle as reference");
                 }
                 
@@ -143,8 +150,12 @@ public class KMLWriter {
                 TimeStamp folderTime = timeFolder.createAndSetTimeStamp();
                 folderTime.setWhen(String.valueOf(timestamp / 1000));
                 
+                // Convert all particle positions of this timestep in one batch
+                double[] geoPositions = particlesToGeographic(particles);
+                
                 // Add all particles for this timestep to the folder
-                for (Particle p : particles) {
+                for (int i = 0; i < particles.size(); i++) {
+                    Particle p = particles.get(i);
                     Placemark placemark = timeFolder.createAndAddPlacemark();
                     
                     // Get the matches for this particle against the reference particle
@@ -152,16 +163,7 @@ public class KMLWriter {
                     
                     if (referenceStatus != null) {
                         // Compare each satellite's LOS/NLOS status with the reference
-                        for (Map.Entry<String, Boolean> entry : referenceStatus.entrySet()) {
-                            String satelliteId = entry.getKey();
-                            Boolean refStatus = entry.getValue();
-                            
-                            // Check if this particle has the same LOS/NLOS status for this satellite
-                            if (p.getLosStatus().containsKey(satelliteId) && 
-                                p.getLosStatus().get(satelliteId).equals(refStatus)) {
-                                matches++;
-                            }
-                        }
+                        matches = p.matchingLosCount(referenceStatus);
                     }
                     
                     // Set style based on match count compared to total possible matches
@@ -203,9 +205,7 @@ public class KMLWriter {
                     // Add coordinates (convert to geographic for KML)
                     Point point = placemark.createAndSetPoint();
                     point.setAltitudeMode(AltitudeMode.RELATIVE_TO_GROUND);
-                    Point3D pos = p.getPosition();
-                    Point3D geoPos = CoordinateSystemManager.getInstance().convertToGeographic(pos);
-                    point.addToCoordinates(geoPos.getX(), geoPos.getY(), geoPos.getZ());
+                    point.addToCoordinates(geoPositions[2 * i], geoPositions[2 * i + 1], p.getPosition().getZ());
                 }
             }
 
@@ -253,6 +253,9 @@ public class KMLWriter {
                 }
             }
 
+            // Convert the whole route to geographic coordinates for KML in one batch
+            double[] geoPoints = toGeographic(route);
+            
             // Add ALL points with timestamps (ensure no limiting conditions)
             for (int i = 0; i < route.size(); i++) {
                 Placemark placemark = document.createAndAddPlacemark();
@@ -274,9 +277,7 @@ public class KMLWriter {
                 
                 Point kmlPoint = placemark.createAndSetPoint();
                 kmlPoint.setAltitudeMode(AltitudeMode.RELATIVE_TO_GROUND);
-                Point3D point = route.get(i);
-                Point3D geoPoint = CoordinateSystemManager.getInstance().convertToGeographic(point);
-                kmlPoint.addToCoordinates(geoPoint.getX(), geoPoint.getY(), geoPoint.getZ());
+                kmlPoint.addToCoordinates(geoPoints[2 * i], geoPoints[2 * i + 1], route.get(i).getZ());
             }
 
             // Add line if requested
@@ -288,10 +289,9 @@ public class KMLWriter {
                 ls.setAltitudeMode(AltitudeMode.RELATIVE_TO_GROUND);
                 ls.setExtrude(true);
                 
-                // Convert route points to geographic coordinates for KML
-                for (Point3D point : route) {
-                    Point3D geoPoint = CoordinateSystemManager.getInstance().convertToGeographic(point);
-                    ls.addToCoordinates(geoPoint.getX(), geoPoint.getY(), geoPoint.getZ());
+                // Route points already converted to geographic coordinates above
+                for (int i = 0; i < route.size(); i++) {
+                    ls.addToCoordinates(geoPoints[2 * i], geoPoints[2 * i + 1], route.get(i).getZ());
                 }
             }
 
@@ -302,6 +302,31 @@ public class KMLWriter {
         }
     }
 
+    /**
+     * Geographic longitude/latitude pairs of the points, converted with one batch transform
+     */
+    private double[] toGeographic(List<Point3D> points) {
+        double[] coordinates = new double[2 * points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            Point3D point = points.get(i);
+            coordinates[2 * i] = point.getX();
+            coordinates[2 * i + 1] = point.getY();
+        }
+        CoordinateSystemManager.getInstance().convertToGeographic(coordinates, coordinates, points.size());
+        return coordinates;
+    }
+    
+    /**
+     * Geographic longitude/latitude pairs of the particle positions, converted with one batch transform
+     */
+    private double[] particlesToGeographic(List<Particle> particles) {
+        List<Point3D> positions = new ArrayList<>(particles.size());
+        for (Particle particle : particles) {
+            positions.add(particle.getPosition());
+        }
+        return toGeographic(positions);
+    }
+
     // Overload for backward compatibility
     public void writeRouteToKML(List<Point3D> route, String filename, boolean drawLine) {
         writeRouteToKML(route, null, filename, drawLine);
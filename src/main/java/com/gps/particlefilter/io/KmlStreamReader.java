@@ -0,0 +1,100 @@
+package com.gps.particlefilter.io;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Forward-only StAX reader over a KML file.
+ * Tracks the path of local element names from the root (e.g. "/kml/Document/Placemark/name")
+ * so the readers can pick out the elements they need without building the KML object tree.
+ * Memory use is independent of the file size.
+ */
+final class KmlStreamReader implements AutoCloseable {
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private final InputStream in;
+    private final XMLStreamReader xml;
+    private final StringBuilder path = new StringBuilder();
+    private int[] parentLengths = new int[16];
+    private int depth;
+    private boolean popPending; // The last event was an end element
+
+    KmlStreamReader(String filename) throws IOException, XMLStreamException {
+        this.in = new BufferedInputStream(new FileInputStream(filename), 1 << 16);
+        try {
+            this.xml = FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Advance to the next start element, end element or the end of the document
+     * @return XMLStreamConstants.START_ELEMENT, END_ELEMENT or END_DOCUMENT
+     */
+    int next() throws XMLStreamException {
+        if (popPending) {
+            path.setLength(parentLengths[--depth]);
+            popPending = false;
+        }
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (depth == parentLengths.length) {
+                    parentLengths = Arrays.copyOf(parentLengths, depth * 2);
+                }
+                parentLengths[depth++] = path.length();
+                path.append('/').append(xml.getLocalName());
+                return event;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                popPending = true;
+                return event;
+            }
+        }
+        return XMLStreamConstants.END_DOCUMENT;
+    }
+
+    /**
+     * Whether the current element has exactly the given path
+     */
+    boolean at(String elementPath) {
+        return elementPath.contentEquals(path);
+    }
+
+    /**
+     * Text content of the current start element; consumes the element up to its end tag
+     */
+    String text() throws XMLStreamException {
+        String text = xml.getElementText();
+        popPending = true;
+        return text;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.close();
+        } catch (XMLStreamException e) {
+            // Nothing to release beyond the input stream
+        }
+        in.close();
+    }
+}
@@ -2,59 +2,44 @@ package com.gps.particlefilter.io;
 
 import com.gps.particlefilter.model.*;
 import com.gps.particlefilter.util.CoordinateSystemManager;
-import de.micromata.opengis.kml.v_2_2_0.*;
 
-import java.io.File;
+import javax.xml.stream.XMLStreamConstants;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Reads the route (LineString or Point placemarks) and its timestamps from KML
+ * with a streaming StAX parser.
+ */
 public class RouteKMLReader {
+    private static final String PLACEMARK = "/kml/Document/Placemark";
+    private static final String LINE_COORDINATES = PLACEMARK + "/LineString/coordinates";
+    private static final String POINT_COORDINATES = PLACEMARK + "/Point/coordinates";
+    private static final String WHEN = PLACEMARK + "/TimeStamp/when";
+
+    // User height above the ground in meters
+    private static final double USER_HEIGHT = 1.8;
+
     public List<Point3D> readRoute(String filename) {
         List<Point3D> route = new ArrayList<>();
         CoordinateSystemManager coordManager = CoordinateSystemManager.getInstance();
+        CoordinateBuffer coordinates = new CoordinateBuffer();
         
-        try {
-            Kml kml = Kml.unmarshal(new File(filename));
-            Document document = (Document) kml.getFeature();
-            
-            for (Feature feature : document.getFeature()) {
-                if (feature instanceof Placemark) {
-                    Placemark placemark = (Placemark) feature;
-                    
-                    // Handle LineString geometry
-                    if (placemark.getGeometry() instanceof LineString) {
-                        LineString lineString = (LineString) placemark.getGeometry();
-                        List<Coordinate> coordinates = lineString.getCoordinates();
-                        
-                        for (Coordinate coord : coordinates) {
-                            // Create geographic point (lon, lat, alt) with 1.8 meters added for user height
-                            Point3D geoPoint = new Point3D(coord.getLongitude(), 
-                                                     coord.getLatitude(), 
-                                                     coord.getAltitude() + 1.8);
-                            
-                            // Convert to current coordinate system (UTM if enabled)
-                            Point3D convertedPoint = coordManager.convertFromGeographic(geoPoint);
-                            route.add(convertedPoint);
-                        }
-                    }
-                    // Handle Point geometry
-                    else if (placemark.getGeometry() instanceof Point) {
-                        Point point = (Point) placemark.getGeometry();
-                        Coordinate coord = point.getCoordinates().get(0);
-                        
-                        // Create geographic point (lon, lat, alt) with 1.8 meters added for user height
-                        Point3D geoPoint = new Point3D(coord.getLongitude(), 
-                                                 coord.getLatitude(), 
-                                                 coord.getAltitude() + 1.8);
-                        
-                        // Convert to current coordinate system (UTM if enabled)
-                        Point3D convertedPoint = coordManager.convertFromGeographic(geoPoint);
-                        route.add(convertedPoint);
-                    }
+        try (KmlStreamReader kml = new KmlStreamReader(filename)) {
+            while (kml.next() != XMLStreamConstants.END_DOCUMENT) {
+                if (kml.at(LINE_COORDINATES)) {
+                    // Handle LineString geometry: every coordinate is a route point
+                    coordinates.parse(kml.text(), Integer.MAX_VALUE);
+                } else if (kml.at(POINT_COORDINATES)) {
+                    // Handle Point geometry: first coordinate only
+                    coordinates.parse(kml.text(), 1);
                 }
             }
             
+            // Convert to current coordinate system (UTM if enabled), with the user height added
+            coordinates.convertTo(route, coordManager, USER_HEIGHT);
+            
             System.out.println("Read " + route.size() + " route points from " + filename);
         } catch (Exception e) {
             e.printStackTrace();
@@ -142,16 +127,12 @@ public class RouteKMLReader {
 
     public List<Long> readTimestamps(String filename) throws Exception {
         List<Long> timestamps = new ArrayList<>();
-        Kml kml = Kml.unmarshal(new File(filename));
-        Document document = (Document) kml.getFeature();
         
         // Find all timestamps from Placemarks
-        for (Feature feature : document.getFeature()) {
-            if (feature instanceof Placemark) {
-                Placemark placemark = (Placemark) feature;
-                if (placemark.getTimePrimitive() instanceof TimeStamp) {
-                    TimeStamp timeStamp = (TimeStamp) placemark.getTimePrimitive();
-                    String whenStr = timeStamp.getWhen();
+        try (KmlStreamReader kml = new KmlStreamReader(filename)) {
+            while (kml.next() != XMLStreamConstants.END_DOCUMENT) {
+                if (kml.at(WHEN)) {
+                    String whenStr = kml.text().trim();
                     try {
                         long timestamp = Long.parseLong(whenStr);
                         timestamps.add(timestamp * 1000L); // Convert to milliseconds
@@ -2,64 +2,79 @@ package com.gps.particlefilter.io;
 
 import com.gps.particlefilter.model.*;
 import com.gps.particlefilter.util.CoordinateSystemManager;
-import de.micromata.opengis.kml.v_2_2_0.*;
 
-import java.io.File;
+import javax.xml.stream.XMLStreamConstants;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Reads satellites (Point placemarks with azimuth and elevation in the description)
+ * from KML with a streaming StAX parser.
+ */
 public class SatelliteKMLReader {
+    private static final String PLACEMARK = "/kml/Document/Placemark";
+    private static final String NAME = PLACEMARK + "/name";
+    private static final String DESCRIPTION = PLACEMARK + "/description";
+    private static final String POINT_COORDINATES = PLACEMARK + "/Point/coordinates";
+
+    private static final Pattern DESCRIPTION_PATTERN =
+        Pattern.compile("Azimuth: ([-\\d.]+)°, Elevation: ([-\\d.]+)°, Height: ([-\\d.]+) km");
+
     public List<Satellite> readSatellites(String filename) {
         List<Satellite> satellites = new ArrayList<>();
         CoordinateSystemManager coordManager = CoordinateSystemManager.getInstance();
+        CoordinateBuffer coordinates = new CoordinateBuffer();
+        List<String> names = new ArrayList<>();
+        List<double[]> angles = new ArrayList<>(); // Azimuth and elevation
         
-        try {
-            Kml kml = Kml.unmarshal(new File(filename));
-            Document document = (Document) kml.getFeature();
-            
-            Pattern pattern = Pattern.compile("Azimuth: ([-\\d.]+)°, Elevation: ([-\\d.]+)°, Height: ([-\\d.]+) km");
-            
-            for (Feature feature : document.getFeature()) {
-                if (feature instanceof Placemark) {
-                    Placemark placemark = (Placemark) feature;
-                    if (placemark.getGeometry() instanceof Point) {
-                        Point point = (Point) placemark.getGeometry();
-                        List<Coordinate> coordinates = point.getCoordinates();
-                        if (!coordinates.isEmpty()) {
-                            Coordinate coord = coordinates.get(0);
-                            
-                            // Extract azimuth and elevation from description
-                            double azimuth = 0;
-                            double elevation = 0;
-                            String description = placemark.getDescription();
-                            if (description != null) {
-                                Matcher matcher = pattern.matcher(description);
-                                if (matcher.find()) {
-                                    azimuth = Double.parseDouble(matcher.group(1));
-                                    elevation = Double.parseDouble(matcher.group(2));
-                                }
-                            }
-                            
-                            // Create geographic point first (longitude=x, latitude=y)
-                            Point3D geoPoint = new Point3D(coord.getLongitude(), 
-                                                          coord.getLatitude(), 
-                                                          coord.getAltitude());
-                            
-                            // Convert to UTM coordinates for consistent meter-based calculations
-                            Point3D convertedPoint = coordManager.convertFromGeographic(geoPoint);
-                            
-                            satellites.add(new Satellite(
-                                placemark.getName(),
-                                convertedPoint,
-                                azimuth,
-                                elevation
-                            ));
+        try (KmlStreamReader kml = new KmlStreamReader(filename)) {
+            String name = null;
+            String description = null;
+            boolean hasPoint = false;
+            int event;
+            while ((event = kml.next()) != XMLStreamConstants.END_DOCUMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (kml.at(PLACEMARK)) {
+                        name = null;
+                        description = null;
+                        hasPoint = false;
+                    } else if (kml.at(NAME)) {
+                        name = kml.text();
+                    } else if (kml.at(DESCRIPTION)) {
+                        description = kml.text();
+                    } else if (kml.at(POINT_COORDINATES) && !hasPoint) {
+                        hasPoint = coordinates.parse(kml.text(), 1) == 1;
+                    }
+                } else if (kml.at(PLACEMARK) && hasPoint) {
+                    // Extract azimuth and elevation from description
+                    double azimuth = 0;
+                    double elevation = 0;
+                    if (description != null) {
+                        Matcher matcher = DESCRIPTION_PATTERN.matcher(description);
+                        if (matcher.find()) {
+                            azimuth = Double.parseDouble(matcher.group(1));
+                            elevation = Double.parseDouble(matcher.group(2));
                         }
                     }
+                    names.add(name);
+                    angles.add(new double[] {azimuth, elevation});
                 }
             }
+            
+            // Convert all positions to UTM coordinates for consistent meter-based calculations
+            List<Point3D> positions = new ArrayList<>(coordinates.size());
+            coordinates.convertTo(positions, coordManager, 0.0);
+            
+            for (int i = 0; i < positions.size(); i++) {
+                satellites.add(new Satellite(
+                    names.get(i),
+                    positions.get(i),
+                    angles.get(i)[0],
+                    angles.get(i)[1]
+                ));
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
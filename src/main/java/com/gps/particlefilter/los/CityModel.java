@@ -0,0 +1,373 @@
+package com.gps.particlefilter.los;
+
+import com.gps.particlefilter.model.Building;
+import com.gps.particlefilter.model.Point3D;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Building walls compiled once into flat arrays for the LOS kernels.
+ * Wall w runs from (x1[w], y1[w]) along (wallDx[w], wallDy[w]) and is height[w] tall;
+ * normal and inverse squared length are precomputed. The walls of building b are
+ * wallStart[b] .. wallStart[b + 1]; buildings with fewer than 3 vertices have no walls.
+ * Per building the footprint box (from Building's bounding box) and height are kept to reject
+ * whole buildings before any of their walls is tested.
+ */
+final class CityModel {
+    final int wallCount;
+    final double[] x1;
+    final double[] y1;
+    final double[] wallDx;
+    final double[] wallDy;
+    final double[] normalX;       // -wallDy
+    final double[] normalY;       // wallDx
+    final double[] invLengthSq;   // 1 / (wallDx^2 + wallDy^2)
+    final double[] height;
+    final int[] wallBuilding;     // Index of the building in the source list
+    final int[] wallVertex;       // Index of the wall's start vertex in the building
+    final int[] wallStart;        // Per building, plus one end entry
+
+    // Per building footprint box and height (height -Infinity for buildings without walls)
+    final double[] buildingMinX;
+    final double[] buildingMinY;
+    final double[] buildingMaxX;
+    final double[] buildingMaxY;
+    final double[] buildingHeight;
+    final double maxHeight;       // Tallest building, -Infinity if there is none
+
+    // Footprint boxes are grown by this much (meters) so rounding never rejects a blocking wall
+    private static final double BOX_MARGIN = 1e-6;
+
+    // Region classification margin (meters): shadows are grown by it for LOS, shrunk by it for NLOS
+    private static final double REGION_MARGIN = 1e-6;
+
+    private final Map<Building, Integer> buildingIndex = new IdentityHashMap<>();
+
+    CityModel(List<Building> buildings) {
+        int count = 0;
+        for (Building building : buildings) {
+            if (isUsable(building)) {
+                count += building.getVertices().size() - 1;
+            }
+        }
+
+        wallCount = count;
+        x1 = new double[count];
+        y1 = new double[count];
+        wallDx = new double[count];
+        wallDy = new double[count];
+        normalX = new double[count];
+        normalY = new double[count];
+        invLengthSq = new double[count];
+        height = new double[count];
+        wallBuilding = new int[count];
+        wallVertex = new int[count];
+        wallStart = new int[buildings.size() + 1];
+        buildingMinX = new double[buildings.size()];
+        buildingMinY = new double[buildings.size()];
+        buildingMaxX = new double[buildings.size()];
+        buildingMaxY = new double[buildings.size()];
+        buildingHeight = new double[buildings.size()];
+
+        double tallest = Double.NEGATIVE_INFINITY;
+        int w = 0;
+        for (int b = 0; b < buildings.size(); b++) {
+            Building building = buildings.get(b);
+            wallStart[b] = w;
+            buildingMinX[b] = buildingMinY[b] = Double.POSITIVE_INFINITY;
+            buildingMaxX[b] = buildingMaxY[b] = Double.NEGATIVE_INFINITY;
+            buildingHeight[b] = Double.NEGATIVE_INFINITY;
+            if (!isUsable(building)) {
+                continue;
+            }
+            buildingIndex.put(building, b);
+            buildingMinX[b] = building.getMinX();
+            buildingMinY[b] = building.getMinY();
+            buildingMaxX[b] = building.getMaxX();
+            buildingMaxY[b] = building.getMaxY();
+            buildingHeight[b] = building.getHeight();
+            tallest = Math.max(tallest, building.getHeight());
+            List<Point3D> vertices = building.getVertices();
+            for (int i = 0; i < vertices.size() - 1; i++) {
+                Point3D p1 = vertices.get(i);
+                Point3D p2 = vertices.get(i + 1);
+                x1[w] = p1.getX();
+                y1[w] = p1.getY();
+                wallDx[w] = p2.getX() - p1.getX();
+                wallDy[w] = p2.getY() - p1.getY();
+                normalX[w] = -wallDy[w];
+                normalY[w] = wallDx[w];
+                invLengthSq[w] = 1.0 / (wallDx[w] * wallDx[w] + wallDy[w] * wallDy[w]);
+                height[w] = building.getHeight();
+                wallBuilding[w] = b;
+                wallVertex[w] = i;
+                w++;
+            }
+        }
+        wallStart[buildings.size()] = w;
+        maxHeight = tallest;
+    }
+
+    static boolean isUsable(Building building) {
+        return building != null && building.getVertices() != null && building.getVertices().size() >= 3;
+    }
+
+    int getBuildingCount() {
+        return wallStart.length - 1;
+    }
+
+    /**
+     * Index of the building in the source list, or -1 if it is not part of this model
+     */
+    int indexOf(Building building) {
+        Integer index = buildingIndex.get(building);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * False if no building is tall enough to block the ray from height uz (nothing to test at all)
+     */
+    boolean mayBlock(double uz, SatelliteRay ray) {
+        return ray.reach(maxHeight - uz) >= 0;
+    }
+
+    /**
+     * False if building b cannot block the ray from (ux, uy, uz); true means its walls must be tested.
+     * @param horizon Reject buildings too low or too far away: a wall of height h blocks only within
+     *                (h - uz) / tan(elevation) meters of the receiver
+     * @param box Reject buildings whose footprint box the horizontal ray misses (slab test),
+     *            within that reach when horizon is set
+     */
+    boolean isCandidate(int b, double ux, double uy, double uz, SatelliteRay ray, boolean horizon, boolean box) {
+        double maxT = Double.POSITIVE_INFINITY;
+        if (horizon) {
+            maxT = ray.reach(buildingHeight[b] - uz);
+            if (maxT < 0) {
+                return false;
+            }
+        }
+        if (box) {
+            return rayHitsFootprint(b, ux, uy, ray, maxT);
+        }
+        if (horizon) {
+            double horizontalReach = maxT * ray.horizontalLength;
+            double gapX = Math.max(0, Math.max(buildingMinX[b] - ux, ux - buildingMaxX[b]));
+            double gapY = Math.max(0, Math.max(buildingMinY[b] - uy, uy - buildingMaxY[b]));
+            return gapX * gapX + gapY * gapY <= horizontalReach * horizontalReach;
+        }
+        return true;
+    }
+
+    /**
+     * Slab test of the horizontal ray (ux, uy) + t * (dx, dy), 0 < t <= maxT, against the
+     * footprint box of building b, grown by BOX_MARGIN against rounding
+     */
+    private boolean rayHitsFootprint(int b, double ux, double uy, SatelliteRay ray, double maxT) {
+        double tEnter = 0;
+        double tExit = maxT;
+        double lo = buildingMinX[b] - BOX_MARGIN;
+        double hi = buildingMaxX[b] + BOX_MARGIN;
+        if (ray.dx == 0) {
+            if (ux < lo || ux > hi) return false;
+        } else {
+            double ta = (lo - ux) * ray.inverseDx;
+            double tb = (hi - ux) * ray.inverseDx;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        }
+        lo = buildingMinY[b] - BOX_MARGIN;
+        hi = buildingMaxY[b] + BOX_MARGIN;
+        if (ray.dy == 0) {
+            if (uy < lo || uy > hi) return false;
+        } else {
+            double ta = (lo - uy) * ray.inverseDy;
+            double tb = (hi - uy) * ray.inverseDy;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        }
+        return tEnter <= tExit;
+    }
+
+    /**
+     * First blocking wall of the candidate buildings (see isCandidate), or -1.
+     * Consecutive candidates are scanned as one wall range.
+     */
+    int firstBlockingWallOfCandidates(WallKernel kernel, double ux, double uy, double uz, SatelliteRay ray,
+                                      boolean horizon, boolean box) {
+        int runStart = -1;
+        for (int b = 0; b < buildingHeight.length; b++) {
+            if (isCandidate(b, ux, uy, uz, ray, horizon, box)) {
+                if (runStart < 0) {
+                    runStart = wallStart[b];
+                }
+            } else if (runStart >= 0) {
+                int wall = kernel.firstBlockingWall(this, runStart, wallStart[b], ux, uy, uz, ray);
+                if (wall >= 0) {
+                    return wall;
+                }
+                runStart = -1;
+            }
+        }
+        return runStart >= 0 ? kernel.firstBlockingWall(this, runStart, wallCount, ux, uy, uz, ray) : -1;
+    }
+
+    /**
+     * Walls that can block the ray from some receiver in the box [minX, maxX] x [minY, maxY] at heights
+     * minZ and up. Wall w blocks the ray from (x, y, z) exactly when (x, y) lies in its shadow, the
+     * parallelogram swept from the wall by -(dx, dy) * t for 0 < t < (h - z) / slope, which is largest
+     * at minZ; these are the walls whose shadow at minZ, grown by a margin, reaches the box.
+     * @param dst Receives the wall indices (at least wallCount long)
+     * @return Number of walls, or -1 for a level or descending ray (shadows are unbounded)
+     */
+    int collectRegionWalls(double minX, double minY, double minZ, double maxX, double maxY,
+                           SatelliteRay ray, int[] dst) {
+        if (!(ray.slope > 0)) {
+            return -1;
+        }
+        double centerX = 0.5 * (minX + maxX), centerY = 0.5 * (minY + maxY);
+        double halfX = 0.5 * (maxX - minX), halfY = 0.5 * (maxY - minY);
+        int count = 0;
+        for (int w = 0; w < wallCount; w++) {
+            if (height[w] <= minZ) {
+                continue;
+            }
+            double reach = (height[w] - minZ) / ray.slope;
+            if (shadowOverlapsBox(w, ray.dx * reach, ray.dy * reach, centerX, centerY, halfX, halfY)) {
+                dst[count++] = w;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * LOS of the ray for every receiver in the box [minX, maxX] x [minY, maxY] at heights minZ .. maxZ
+     * @param walls The box's walls from collectRegionWalls (count of them, -1 = unbounded shadows)
+     * @return ShadowRaster.LOS if no wall's shadow reaches the box,
+     *         ShadowRaster.NLOS if the box lies inside one wall's shadow at maxZ (shrunk by a margin),
+     *         else ShadowRaster.UNKNOWN (receivers in the box need their own test)
+     */
+    int classifyRegion(double minX, double minY, double maxX, double maxY, double maxZ,
+                       SatelliteRay ray, int[] walls, int count) {
+        if (count < 0) {
+            return ShadowRaster.UNKNOWN;
+        }
+        for (int k = 0; k < count; k++) {
+            int w = walls[k];
+            // A ray almost parallel to the wall is never blocked by it (see blockingDistance)
+            double dot = ray.dx * normalX[w] + ray.dy * normalY[w];
+            double innerReach = (height[w] - maxZ - REGION_MARGIN) / ray.slope;
+            if (Math.abs(dot) > 1e-10 && innerReach > 0
+                    && shadowContainsBox(w, ray.dx * innerReach, ray.dy * innerReach, minX, minY, maxX, maxY)) {
+                return ShadowRaster.NLOS;
+            }
+        }
+        return count == 0 ? ShadowRaster.LOS : ShadowRaster.UNKNOWN;
+    }
+
+    /**
+     * Separating axis test of wall w's shadow (A, B, B - v, A - v) against the box, grown by REGION_MARGIN
+     */
+    private boolean shadowOverlapsBox(int w, double vx, double vy, double centerX, double centerY,
+                                      double halfX, double halfY) {
+        double ax = x1[w], ay = y1[w];
+        double bx = ax + wallDx[w], by = ay + wallDy[w];
+        // Box axes, then the shadow's edge normals (wall normal and the normal of v)
+        return overlapsOnAxis(1, 0, ax, ay, bx, by, vx, vy, centerX, centerY, halfX, halfY)
+            && overlapsOnAxis(0, 1, ax, ay, bx, by, vx, vy, centerX, centerY, halfX, halfY)
+            && overlapsOnAxis(normalX[w], normalY[w], ax, ay, bx, by, vx, vy, centerX, centerY, halfX, halfY)
+            && overlapsOnAxis(-vy, vx, ax, ay, bx, by, vx, vy, centerX, centerY, halfX, halfY);
+    }
+
+    private static boolean overlapsOnAxis(double nx, double ny, double ax, double ay, double bx, double by,
+                                          double vx, double vy, double centerX, double centerY,
+                                          double halfX, double halfY) {
+        double pa = nx * ax + ny * ay;
+        double pb = nx * bx + ny * by;
+        double pv = nx * vx + ny * vy;
+        double shadowMin = Math.min(Math.min(pa, pb), Math.min(pa - pv, pb - pv));
+        double shadowMax = Math.max(Math.max(pa, pb), Math.max(pa - pv, pb - pv));
+        double center = nx * centerX + ny * centerY;
+        double radius = halfX * Math.abs(nx) + halfY * Math.abs(ny) + REGION_MARGIN * Math.hypot(nx, ny);
+        return shadowMax >= center - radius && shadowMin <= center + radius;
+    }
+
+    /**
+     * True if all four box corners lie inside wall w's shadow (A, B, B - v, A - v) by at least REGION_MARGIN
+     */
+    private boolean shadowContainsBox(int w, double vx, double vy, double minX, double minY, double maxX, double maxY) {
+        double[] qx = {x1[w], x1[w] + wallDx[w], x1[w] + wallDx[w] - vx, x1[w] - vx};
+        double[] qy = {y1[w], y1[w] + wallDy[w], y1[w] + wallDy[w] - vy, y1[w] - vy};
+        double orientation = Math.signum(wallDx[w] * -vy - wallDy[w] * -vx); // cross(B - A, D - A)
+        if (orientation == 0) {
+            return false;
+        }
+        double[] cx = {minX, maxX, maxX, minX};
+        double[] cy = {minY, minY, maxY, maxY};
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) & 3;
+            double ex = qx[j] - qx[i], ey = qy[j] - qy[i];
+            double minDistance = REGION_MARGIN * Math.hypot(ex, ey);
+            for (int c = 0; c < 4; c++) {
+                if ((ex * (cy[c] - qy[i]) - ey * (cx[c] - qx[i])) * orientation < minDistance) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ray parameter t at which wall w blocks the ray from (ux, uy, uz), or -1 if it does not block it.
+     * The ray crosses the wall's vertical plane at t > 0, between its end points, below its top.
+     */
+    double blockingDistance(int w, double ux, double uy, double uz, SatelliteRay ray) {
+        double dot = ray.dx * normalX[w] + ray.dy * normalY[w];
+        double t = ((x1[w] - ux) * normalX[w] + (y1[w] - uy) * normalY[w]) / dot;
+        double s = ((ux + t * ray.dx - x1[w]) * wallDx[w] + (uy + t * ray.dy - y1[w]) * wallDy[w]) * invLengthSq[w];
+        double rayHeight = uz + t * ray.slope;
+        // Non-short-circuit tests keep the scan branch-light; a parallel ray gives t = +-Inf or NaN and fails them
+        boolean blocked = Math.abs(dot) > 1e-10 & t > 0 & s >= 0 & s <= 1 & rayHeight < height[w];
+        return blocked ? t : -1;
+    }
+
+    /**
+     * First wall in [from, to) that blocks the ray, or -1
+     */
+    int firstBlockingWall(int from, int to, double ux, double uy, double uz, SatelliteRay ray) {
+        for (int w = from; w < to; w++) {
+            if (blockingDistance(w, ux, uy, uz, ray) >= 0) {
+                return w;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Interval [lo[k], hi[k]] of the listed walls on the axis across the ray (-dy, dx), grown by BOX_MARGIN:
+     * the horizontal ray from (x, y) can only cross wall k if -dy * x + dx * y lies in it
+     */
+    void crossRayIntervals(int[] walls, int count, SatelliteRay ray, double[] lo, double[] hi) {
+        double margin = BOX_MARGIN * ray.horizontalLength;
+        for (int k = 0; k < count; k++) {
+            int w = walls[k];
+            double p1 = -ray.dy * x1[w] + ray.dx * y1[w];
+            double p2 = p1 - ray.dy * wallDx[w] + ray.dx * wallDy[w];
+            lo[k] = Math.min(p1, p2) - margin;
+            hi[k] = Math.max(p1, p2) + margin;
+        }
+    }
+
+    /**
+     * First of the listed walls that blocks the ray, or -1; lo and hi from crossRayIntervals
+     */
+    int firstBlockingWall(int[] walls, double[] lo, double[] hi, double ux, double uy, double uz, SatelliteRay ray) {
+        double p = -ray.dy * ux + ray.dx * uy;
+        for (int k = 0; k < walls.length; k++) {
+            if (p >= lo[k] && p <= hi[k] && blockingDistance(walls[k], ux, uy, uz, ray) >= 0) {
+                return walls[k];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,181 @@
+package com.gps.particlefilter.los;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memo of geometric LOS masks by quantized receiver position.
+ * x and y are snapped to a square cell and the mask is computed at the cell center, so the
+ * answer for a position does not depend on which particle asked first; z is part of the key
+ * unquantized (receivers share one height, and the height-specific modes compare it exactly).
+ * A version number in the key separates satellite sets and geometric modes.
+ *
+ * Entries live in flat arrays sized from a memory budget, grouped in 4-way sets; the victim
+ * within a full set is chosen by CLOCK (second chance on a reference bit). Sets are guarded
+ * by striped locks so parallel weighting threads rarely contend.
+ */
+final class LosCache {
+    private static final int WAYS = 4;
+    private static final int STRIPES = 64;
+
+    /**
+     * Computes the mask of one position into dst (bit i = satellite i is LOS)
+     */
+    interface MaskSource {
+        void compute(double x, double y, double z, long[] dst);
+    }
+
+    private final double cellSize;
+    private final double inverseCellSize;
+    private final int words;
+    private final int setMask;
+
+    // Per slot (set * WAYS + way)
+    private final long[] keyX;
+    private final long[] keyY;
+    private final long[] keyZ;
+    private final int[] keyVersion;
+    private final boolean[] used;
+    private final boolean[] referenced;
+    private final long[] masks;        // slot * words .. + words
+    private final byte[] hands;        // Per set: next way the CLOCK hand looks at
+    private final Object[] locks = new Object[STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param cellSize Quantization cell in meters
+     * @param memoryBytes Budget for all entries (keys, masks and bookkeeping)
+     * @param satelliteCount Mask length in bits
+     */
+    LosCache(double cellSize, long memoryBytes, int satelliteCount) {
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1.0 / cellSize;
+        this.words = Math.max(1, (satelliteCount + 63) >>> 6);
+
+        long entryBytes = 3 * 8 + 4 + 2 + 8L * words;
+        long sets = Math.max(1, memoryBytes / (entryBytes * WAYS));
+        int setCount = Integer.highestOneBit((int) Math.min(sets, 1 << 24));
+        this.setMask = setCount - 1;
+
+        int slots = setCount * WAYS;
+        keyX = new long[slots];
+        keyY = new long[slots];
+        keyZ = new long[slots];
+        keyVersion = new int[slots];
+        used = new boolean[slots];
+        referenced = new boolean[slots];
+        masks = new long[slots * words];
+        hands = new byte[setCount];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Mask for the cell containing (x, y) at height z, from the cache or computed at the cell center
+     * @param dst Receives the mask (at least getWords() longs)
+     */
+    void get(double x, double y, double z, int version, long[] dst, MaskSource source) {
+        long cx = (long) Math.floor(x * inverseCellSize);
+        long cy = (long) Math.floor(y * inverseCellSize);
+        long cz = Double.doubleToLongBits(z);
+        int set = hash(cx, cy, cz, version) & setMask;
+        int base = set * WAYS;
+
+        synchronized (locks[set & (STRIPES - 1)]) {
+            int slot = find(base, cx, cy, cz, version);
+            if (slot >= 0) {
+                referenced[slot] = true;
+                System.arraycopy(masks, slot * words, dst, 0, words);
+                hits.increment();
+                return;
+            }
+        }
+
+        // Compute outside the lock; a concurrent miss on the same cell computes the same mask
+        misses.increment();
+        source.compute((cx + 0.5) * cellSize, (cy + 0.5) * cellSize, z, dst);
+
+        synchronized (locks[set & (STRIPES - 1)]) {
+            if (find(base, cx, cy, cz, version) >= 0) {
+                return; // Inserted by a concurrent miss meanwhile: keep one way per cell
+            }
+            int slot = victim(set, base);
+            if (used[slot]) {
+                evictions.increment();
+            }
+            used[slot] = true;
+            referenced[slot] = false;
+            keyX[slot] = cx;
+            keyY[slot] = cy;
+            keyZ[slot] = cz;
+            keyVersion[slot] = version;
+            System.arraycopy(dst, 0, masks, slot * words, words);
+        }
+    }
+
+    /**
+     * Way of the set holding the key, or -1
+     */
+    private int find(int base, long cx, long cy, long cz, int version) {
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (used[slot] && keyX[slot] == cx && keyY[slot] == cy && keyZ[slot] == cz
+                    && keyVersion[slot] == version) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Free way of the set, else the first one the CLOCK hand finds unreferenced
+     */
+    private int victim(int set, int base) {
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (!used[slot]) {
+                return slot;
+            }
+        }
+        int hand = hands[set];
+        while (referenced[base + hand]) {
+            referenced[base + hand] = false;
+            hand = (hand + 1) & (WAYS - 1);
+        }
+        hands[set] = (byte) ((hand + 1) & (WAYS - 1));
+        return base + hand;
+    }
+
+    private static int hash(long cx, long cy, long cz, int version) {
+        long h = cx * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 29) ^ cy) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 31) ^ cz) * 0x94D049BB133111EBL;
+        h = (h ^ (h >>> 29) ^ version) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    int getWords() {
+        return words;
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    String describe() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return String.format("LOS cache: %.2f m cells, %d entries (%d KB), %d hits, %d misses (%.1f%% hit rate), %d evictions",
+            cellSize, used.length, (long) used.length * (3 * 8 + 4 + 2 + 8L * words) / 1024,
+            hitCount, misses.sum(), total > 0 ? 100.0 * hitCount / total : 0.0, evictions.sum());
+    }
+}
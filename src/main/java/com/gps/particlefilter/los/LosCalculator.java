@@ -2,23 +2,119 @@ package com.gps.particlefilter.los;
 
 import com.gps.particlefilter.model.*;
 import com.gps.particlefilter.config.Configuration;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.stream.Collectors;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * LOS/NLOS classification of satellites for a receiver position.
+ * Queries have no side effects: signal strength is read from a per-epoch snapshot and
+ * random draws come from generators keyed by seed, epoch and position, so one instance
+ * can serve many threads and filters at once.
+ */
 public class LosCalculator {
     private List<Building> buildings;
     private List<Satellite> satellites;
+    
+    // Satellite name -> bit index in LosVector; satelliteIndex[i] is the bit of satellites.get(i)
+    private SatelliteRegistry satelliteRegistry;
+    private int[] satelliteIndex;
     private boolean debugPrinted = false; // Parameter to check if we already printed the information
     private Configuration config;
     
-    // Ray-Shooting optimization: Spatial indexing for buildings
-    private List<Building> sortedBuildingsByDistance;
-    private boolean rayShooting; // Enable Ray-Shooting optimization (from config)
+    // Walls compiled into flat arrays, and the ray direction of every satellite (indexed like satellites)
+    private CityModel cityModel;
+    private SatelliteRay[] satelliteRays;
+    
+    // Ray-Shooting optimization: spatial index over building walls used by the exact accelerated mode
+    public enum SpatialIndex {
+        GRID,  // Uniform grid walked with a DDA (even building density)
+        BVH,   // SAH bounding volume hierarchy with height pruning (uneven density)
+        PROJECTED // Per satellite: walls projected across the ray direction, one stabbing query per position
+    }
+    
+    private SpatialIndex spatialIndex;
+    private volatile WallIndex wallIndex;
+    
+    // PROJECTED index: one per satellite (null for vertical rays, which use wallIndex)
+    private volatile ProjectedWallIndex[] projectedIndexes;
+    
+    // Shadow rasters for SHADOW_RASTER mode, built on first use
+    private volatile ShadowRaster shadowRaster;
+    
+    // Per-cell azimuth skylines for SKYLINE mode, created on first use (cells fill in lazily, within a budget)
+    private volatile SkylineIndex skylineIndex;
+    private volatile long skylineMemoryMb;
+    
+    // Distance to the nearest shadow boundary, created on first use (tiles fill in lazily)
+    private volatile ShadowDistanceField shadowDistanceField;
+    private volatile boolean shadowClearanceEnabled;
+    
+    // Geometric LOS modes: trade speed against exactness explicitly
+    public enum GeometricMode {
+        BRUTE_FORCE,             // Check every building (reference answer)
+        RAY_SHOOTING_HEURISTIC,  // Top ceil(log(B+1)*2) buildings by relevance score only (lossy)
+        EXACT_ACCELERATED,       // Spatial index over the walls (los.spatial.index), same answer as BRUTE_FORCE
+        DIAGNOSTIC,              // EXACT_ACCELERATED answer, counts heuristic disagreements
+        SHADOW_RASTER,           // Per-satellite shadow bit lookup at the raster height, else EXACT_ACCELERATED
+        SKYLINE                  // Elevation vs. per-cell azimuth skyline, EXACT_ACCELERATED near the skyline
+    }
+    
+    private volatile GeometricMode geometricMode;
+    
+    // Implementation of the wall test used for contiguous wall ranges
+    public enum WallKernelMode {
+        AUTO,    // Vector API when available with at least 4 lanes, else scalar
+        SCALAR,  // One wall at a time
+        VECTOR   // Vector API whenever the module is available
+    }
+    
+    private volatile WallKernel wallKernel;
+    
+    // Skip walls farther than the shadow length of their building (exact, see CityModel.isCandidate)
+    private volatile boolean horizonCulling;
+    
+    // Skip buildings whose bounding box the ray misses before testing their walls (exact)
+    private volatile boolean boxRejection;
+    
+    // Geometric LOS of a satellite for every receiver of a region (see classifySatellites)
+    public enum RegionLos {
+        ALL_LOS,   // No wall's shadow reaches the region
+        ALL_NLOS,  // The region lies inside one wall's shadow
+        AMBIGUOUS  // Test every receiver
+    }
+    
+    // Classify satellites for a whole region before testing receivers one by one (exact)
+    private volatile boolean regionPruning;
+    
+    // Test receivers of a region only against the walls whose shadow reaches it (exact),
+    // unless there are more of them than this and a spatial index is at hand
+    private volatile boolean regionWallCulling;
+    private final int regionMaxWalls;
+    
+    // Geometric masks by quantized position (null = off); the version changes with the geometric mode
+    private volatile LosCache losCache;
+    private volatile int losCacheVersion;
+    // Per-thread buffer for the cached geometric mask of one position, so calculateLosMask stays allocation-free
+    private final ThreadLocal<long[]> cacheScratch = ThreadLocal.withInitial(() -> new long[0]);
+    
+    // On-disk tier below losCache, opened on first miss for the current geometric mode (see PersistentLosCache)
+    private volatile boolean persistentCacheEnabled;
+    private volatile PersistentLosCache persistentCache;
+    private volatile boolean persistentCacheFailed;
+    
+    // DIAGNOSTIC mode counters
+    private final AtomicLong diagnosticQueries = new AtomicLong();
+    private final AtomicLong heuristicFalseLos = new AtomicLong();
+    private final AtomicLong heuristicFalseNlos = new AtomicLong();
     
     // Tolerance range in wall collision calculation (meters)
     private double losTolerance;
@@ -37,16 +133,28 @@ public class LosCalculator {
         HYBRID                   // Combined (recommended)
     }
     
-    private ClassificationMode classificationMode;
+    private volatile ClassificationMode classificationMode;
     
     // Misclassification error simulation
-    private double misclassificationErrorPercentage = 0.0;
-    private java.util.Random misclassificationRandom;
+    private volatile double misclassificationErrorPercentage = 0.0;
+    private final long randomSeed;
+    
+    // Signal strength state of the current epoch, replaced as a whole by beginEpoch()
+    private volatile SignalSnapshot signalSnapshot;
 
     public LosCalculator(List<Building> buildings, List<Satellite> satellites) {
         this.buildings = buildings;
         this.satellites = satellites;
         this.config = Configuration.getInstance();
+        this.satelliteRegistry = new SatelliteRegistry(satellites);
+        this.satelliteIndex = new int[satellites.size()];
+        for (int i = 0; i < satellites.size(); i++) {
+            satelliteIndex[i] = satelliteRegistry.indexOf(satellites.get(i).getName());
+        }
+        this.satelliteRays = new SatelliteRay[satellites.size()];
+        for (int i = 0; i < satellites.size(); i++) {
+            satelliteRays[i] = new SatelliteRay(satellites.get(i));
+        }
         
         // Load configuration settings
         String modeString = config.getLosClassificationMode();
@@ -55,15 +163,45 @@ public class LosCalculator {
         } catch (IllegalArgumentException e) {
             this.classificationMode = ClassificationMode.GEOMETRIC_ONLY;
         }
-        this.rayShooting = config.isLosRayShootingEnabled();
+        String geometricModeString = config.getLosGeometricMode();
+        try {
+            this.geometricMode = GeometricMode.valueOf(geometricModeString);
+        } catch (IllegalArgumentException e) {
+            this.geometricMode = config.isLosRayShootingEnabled() ? GeometricMode.EXACT_ACCELERATED : GeometricMode.BRUTE_FORCE;
+        }
+        WallKernelMode kernelMode;
+        try {
+            kernelMode = WallKernelMode.valueOf(config.getLosWallKernel());
+        } catch (IllegalArgumentException e) {
+            kernelMode = WallKernelMode.AUTO;
+        }
+        this.wallKernel = WallKernel.create(kernelMode);
+        this.horizonCulling = config.isLosHorizonCullingEnabled();
+        try {
+            this.spatialIndex = SpatialIndex.valueOf(config.getLosSpatialIndex());
+        } catch (IllegalArgumentException e) {
+            this.spatialIndex = SpatialIndex.PROJECTED;
+        }
+        this.boxRejection = config.isLosBoxRejectionEnabled();
+        this.regionPruning = config.isLosRegionPruningEnabled();
+        this.regionWallCulling = config.isLosRegionWallCullingEnabled();
+        this.regionMaxWalls = config.getLosRegionMaxWalls();
+        this.shadowClearanceEnabled = config.isLosShadowClearanceEnabled();
         this.losTolerance = config.getLosTolerance();
+        if (config.getLosCacheCellSize() > 0) {
+            this.losCache = new LosCache(config.getLosCacheCellSize(), config.getLosCacheMemoryMb() << 20, satellites.size());
+        }
+        this.persistentCacheEnabled = config.isLosCachePersistent();
+        this.skylineMemoryMb = config.getLosSkylineMemoryMb();
         this.cnThreshold = config.getLosSignalThreshold();
         
-        // Initialize misclassification random generator
-        this.misclassificationRandom = new java.util.Random();
+        // Seed for misclassification and degradation draws (0 = new seed every run)
+        int configuredSeed = config.getLosRandomSeed();
+        this.randomSeed = configuredSeed != 0 ? configuredSeed : new SplittableRandom().nextLong();
+        this.signalSnapshot = createSignalSnapshot(Long.MIN_VALUE);
         
-        // Initialize Ray-Shooting optimization
-        initializeRayShooting();
+        // Compile the walls and build the spatial index once; every query reads them
+        initializeSpatialIndex();
         
         // Print building information only if debug is enabled
         if (config.isDebugBuildingInfoEnabled()) {
@@ -98,34 +236,249 @@ public class LosCalculator {
         }
     }
 
+    /**
+     * LOS/NLOS status per satellite name
+     * Map view of {@link #calculateLosVector(Point3D)}, kept for reporting code
+     */
     public Map<String, Boolean> calculateLOS(Point3D pos) {
-        Map<String, Boolean> result = new HashMap<>();
+        return calculateLosVector(pos).toMap();
+    }
+    
+    /**
+     * LOS/NLOS status of all satellites as a bit mask over {@link #getSatelliteRegistry()}
+     */
+    public LosVector calculateLosVector(Point3D pos) {
+        long[] words = new long[satelliteRegistry.wordCount()];
+        calculateLosMask(pos.getX(), pos.getY(), pos.getZ(), words, 0);
+        return new LosVector(satelliteRegistry, words);
+    }
+    
+    /**
+     * Write the LOS bit mask for position (x, y, z) into dst[offset .. offset + getSatelliteRegistry().wordCount())
+     * Allocation-free variant of {@link #calculateLosVector(Point3D)} for packed particle stores.
+     * Misclassification draws also depend on the slot offset / wordCount, so particles sharing a
+     * position (resampled copies, LOS cache cells) flip independently
+     */
+    public void calculateLosMask(double x, double y, double z, long[] dst, int offset) {
+        // Geometric answers of the position's cache cell, when the cache is on
+        LosCache cache = losCache;
+        long[] geometric = null;
+        if (cache != null && classificationMode != ClassificationMode.SIGNAL_STRENGTH_ONLY) {
+            geometric = cacheScratch.get();
+            if (geometric.length != cache.getWords()) {
+                geometric = new long[cache.getWords()];
+                cacheScratch.set(geometric);
+            }
+            cache.get(x, y, z, losCacheVersion, geometric, persistentCacheEnabled
+                ? this::computeGeometricMaskPersistent : this::computeGeometricMask);
+        }
+        classify(x, y, z, geometric, 0, dst, offset);
+    }
+    
+    /**
+     * LOS bit masks of many positions, evaluated satellite-major: one satellite for all positions,
+     * then the next, so each satellite's ray data and wall index stay hot across the pass.
+     * Same result as calculateLosMask(x[i], y[i], z[i], dst, i * getSatelliteRegistry().wordCount())
+     * for every listed position i.
+     * @param indices Positions to evaluate are x[indices[k]], y[indices[k]], z[indices[k]] for k < count
+     */
+    public void calculateLosMasks(double[] x, double[] y, double[] z, int[] indices, int count, long[] dst) {
+        calculateLosMasks(x, y, z, indices, count, dst, null);
+    }
+    
+    /**
+     * calculateLosMasks with a classification from {@link #classifySatellites} of a region holding
+     * every listed position: ALL_LOS and ALL_NLOS satellites are set without testing any position,
+     * the others are tested against their active walls only
+     * @param region null = all AMBIGUOUS, all walls searched
+     */
+    public void calculateLosMasks(double[] x, double[] y, double[] z, int[] indices, int count, long[] dst,
+                                  RegionClassification region) {
+        calculateLosMasks(x, y, z, indices, count, dst, region, null);
+    }
+    
+    /**
+     * calculateLosMasks that also keeps the geometric masks, for {@link #classifyGeometricMask}
+     * @param geometricDst Receives bit s = geometric LOS of satellites.get(s) at
+     *                     geometricDst[i * getGeometricWordCount() ..] for every listed position i,
+     *                     whenever isShadowClearanceAvailable() (null = not needed)
+     */
+    public void calculateLosMasks(double[] x, double[] y, double[] z, int[] indices, int count, long[] dst,
+                                  RegionClassification region, long[] geometricDst) {
+        int wordCount = satelliteRegistry.wordCount();
+        if (losCache != null || classificationMode == ClassificationMode.SIGNAL_STRENGTH_ONLY) {
+            // Cached or signal-only answers are per position anyway
+            for (int k = 0; k < count; k++) {
+                int i = indices[k];
+                calculateLosMask(x[i], y[i], z[i], dst, i * wordCount);
+            }
+            return;
+        }
         
-        for (Satellite satellite : satellites) {
+        int geometricWords = Math.max(1, (satellites.size() + 63) >>> 6);
+        long[] geometric = new long[count * geometricWords];
+        for (int s = 0; s < satellites.size(); s++) {
+            int word = s >>> 6;
+            long bit = 1L << s;
+            RegionLos status = region != null ? region.get(s) : RegionLos.AMBIGUOUS;
+            if (status == RegionLos.ALL_LOS) {
+                for (int k = 0; k < count; k++) {
+                    geometric[k * geometricWords + word] |= bit;
+                }
+                continue;
+            }
+            if (status == RegionLos.ALL_NLOS) {
+                continue;
+            }
+            int[] walls = region != null ? region.activeWalls(s) : null;
+            for (int k = 0; k < count; k++) {
+                int i = indices[k];
+                boolean los = walls != null
+                    ? isLosGeometricActive(x[i], y[i], z[i], s, region) : isLosGeometric(x[i], y[i], z[i], s);
+                if (los) {
+                    geometric[k * geometricWords + word] |= bit;
+                }
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            int i = indices[k];
+            classify(x[i], y[i], z[i], geometric, k * geometricWords, dst, i * wordCount);
+            if (geometricDst != null) {
+                System.arraycopy(geometric, k * geometricWords, geometricDst, i * geometricWords, geometricWords);
+            }
+        }
+    }
+    
+    /**
+     * LOS bit mask of (x, y, z) from its known geometric mask (bit s = satellites.get(s) is geometrically LOS,
+     * see calculateLosMasks), with the current epoch's signal snapshot and misclassification
+     */
+    public void classifyGeometricMask(double x, double y, double z, long[] geometric, int geometricOffset,
+                                      long[] dst, int offset) {
+        classify(x, y, z, geometric, geometricOffset, dst, offset);
+    }
+    
+    /**
+     * Length of a geometric mask in longs (see calculateLosMasks)
+     */
+    public int getGeometricWordCount() {
+        return Math.max(1, (satellites.size() + 63) >>> 6);
+    }
+    
+    /**
+     * True if getShadowClearance can be non-zero: enabled, an exact geometric mode,
+     * geometric classification and no LOS cache (whose answers belong to cell centers)
+     */
+    public boolean isShadowClearanceAvailable() {
+        GeometricMode mode = geometricMode;
+        return shadowClearanceEnabled && losCache == null
+            && classificationMode != ClassificationMode.SIGNAL_STRENGTH_ONLY
+            && (mode == GeometricMode.BRUTE_FORCE || mode == GeometricMode.EXACT_ACCELERATED
+                || mode == GeometricMode.SHADOW_RASTER);
+    }
+    
+    /**
+     * Distance (meters) a receiver at (x, y, z) can move horizontally without its geometric
+     * mask changing for any satellite; 0 if unknown or isShadowClearanceAvailable() is false
+     */
+    public double getShadowClearance(double x, double y, double z) {
+        return isShadowClearanceAvailable() ? getShadowDistanceField().clearance(x, y, z) : 0;
+    }
+    
+    /**
+     * Geometric LOS of every satellite for all receivers in the box [minX, maxX] x [minY, maxY] at
+     * heights minZ .. maxZ, with the active walls of the ambiguous ones (see RegionClassification).
+     * Both are exact, so calculateLosMasks gives the same masks with or without this classification
+     * for positions inside the box. Everything is AMBIGUOUS with all walls searched when region pruning
+     * and wall culling are off, when the LOS cache is on (its answers belong to cell centers),
+     * without geometric classification, and in the approximate and counting modes.
+     */
+    public RegionClassification classifySatellites(double minX, double minY, double minZ,
+                                                   double maxX, double maxY, double maxZ) {
+        GeometricMode mode = geometricMode;
+        boolean exactMode = mode == GeometricMode.BRUTE_FORCE || mode == GeometricMode.EXACT_ACCELERATED
+            || mode == GeometricMode.SHADOW_RASTER;
+        if (!(regionPruning || regionWallCulling) || !exactMode || losCache != null
+                || classificationMode == ClassificationMode.SIGNAL_STRENGTH_ONLY
+                || !(minX <= maxX && minY <= maxY && minZ <= maxZ)) {
+            return RegionClassification.ambiguous(satellites.size());
+        }
+        RegionLos[] status = new RegionLos[satellites.size()];
+        int[][] activeWalls = new int[satellites.size()][];
+        double[][] activeLo = new double[satellites.size()][];
+        double[][] activeHi = new double[satellites.size()][];
+        int[] walls = new int[cityModel.wallCount];
+        for (int i = 0; i < satellites.size(); i++) {
+            SatelliteRay ray = satelliteRays[i];
+            int count = cityModel.collectRegionWalls(minX, minY, minZ, maxX, maxY, ray, walls);
+            int region = regionPruning
+                ? cityModel.classifyRegion(minX, minY, maxX, maxY, maxZ, ray, walls, count) : ShadowRaster.UNKNOWN;
+            status[i] = region == ShadowRaster.LOS ? RegionLos.ALL_LOS
+                : region == ShadowRaster.NLOS ? RegionLos.ALL_NLOS : RegionLos.AMBIGUOUS;
+            if (status[i] == RegionLos.AMBIGUOUS && regionWallCulling && count >= 0
+                    && (count <= regionMaxWalls || mode == GeometricMode.BRUTE_FORCE)) {
+                activeWalls[i] = Arrays.copyOf(walls, count);
+                activeLo[i] = new double[count];
+                activeHi[i] = new double[count];
+                cityModel.crossRayIntervals(walls, count, ray, activeLo[i], activeHi[i]);
+            }
+        }
+        return new RegionClassification(status, activeWalls, activeLo, activeHi);
+    }
+    
+    /**
+     * Geometric LOS against a satellite's active walls of a region holding (x, y, z)
+     */
+    private boolean isLosGeometricActive(double x, double y, double z, int satellite, RegionClassification region) {
+        if (geometricMode == GeometricMode.SHADOW_RASTER) {
+            int rasterLos = getShadowRaster().lookup(satellite, x, y, z);
+            if (rasterLos != ShadowRaster.UNKNOWN) {
+                return rasterLos == ShadowRaster.LOS;
+            }
+        }
+        return cityModel.firstBlockingWall(region.activeWalls(satellite), region.activeLo(satellite),
+            region.activeHi(satellite), x, y, z, satelliteRays[satellite]) < 0;
+    }
+    
+    /**
+     * Combine geometric LOS (bit i of geometric[geometricOffset ..], or computed here if geometric is null)
+     * with the epoch's signal snapshot and misclassification into the LOS mask at dst[offset ..]
+     */
+    private void classify(double x, double y, double z, long[] geometric, int geometricOffset, long[] dst, int offset) {
+        int wordCount = satelliteRegistry.wordCount();
+        for (int w = 0; w < wordCount; w++) {
+            dst[offset + w] = 0L;
+        }
+        SignalSnapshot snapshot = signalSnapshot;
+        ClassificationMode mode = classificationMode;
+        double misclassification = misclassificationErrorPercentage;
+        
+        // Draws depend on (seed, epoch, slot, position) only, never on call order or thread
+        SplittableRandom random = misclassification > 0.0
+            ? new SplittableRandom(positionSeed(snapshot.epoch, offset / wordCount, x, y, z)) : null;
+        
+        for (int i = 0; i < satellites.size(); i++) {
             boolean isLos;
             
-            switch (classificationMode) {
+            switch (mode) {
                 case SIGNAL_STRENGTH_ONLY:
                     // Article's primary method: Use C/N0 threshold (configurable)
-                    isLos = satellite.isLosFromSignalStrength(cnThreshold);
+                    isLos = snapshot.signalLos[i];
                     break;
                     
                 case GEOMETRIC_ONLY:
                     // Original geometric method
-                    isLos = isLosGeometric(pos, satellite);
+                    isLos = geometric != null
+                        ? (geometric[geometricOffset + (i >>> 6)] & (1L << i)) != 0 : isLosGeometric(x, y, z, i);
                     break;
                     
                 case HYBRID:
                 default:
                     // Article's recommended approach: Signal strength + geometric validation
-                    boolean signalLos = satellite.isLosFromSignalStrength(cnThreshold);
-                    boolean geometricLos = isLosGeometric(pos, satellite);
-                    
-                    // If signal suggests NLOS, apply signal degradation for realism
-                    if (!signalLos && geometricLos) {
-                        // Geometric says LOS but signal is weak - likely multipath/attenuation
-                        satellite.applyNlosSignalDegradation();
-                    }
+                    // Weak-signal degradation is applied once per epoch in the snapshot
+                    boolean signalLos = snapshot.signalLos[i];
+                    boolean geometricLos = geometric != null
+                        ? (geometric[geometricOffset + (i >>> 6)] & (1L << i)) != 0 : isLosGeometric(x, y, z, i);
                     
                     // Combine both: if either suggests NLOS, classify as NLOS
                     isLos = signalLos && geometricLos;
@@ -133,47 +486,287 @@ public class LosCalculator {
             }
             
             // Apply misclassification error if enabled
-            if (misclassificationErrorPercentage > 0.0) {
-                if (misclassificationRandom.nextDouble() * 100.0 < misclassificationErrorPercentage) {
+            if (random != null) {
+                if (random.nextDouble() * 100.0 < misclassification) {
                     isLos = !isLos;  // Flip the classification
                 }
             }
             
-            result.put(satellite.getName(), isLos);
+            // Same bit for satellites sharing a name: last one wins, as with the old map
+            int bit = satelliteIndex[i];
+            if (isLos) {
+                dst[offset + (bit >>> 6)] |= 1L << bit;
+            } else {
+                dst[offset + (bit >>> 6)] &= ~(1L << bit);
+            }
+        }
+    }
+    
+    /**
+     * Geometric LOS of every satellite at (x, y, z): bit i of dst is satellites.get(i)
+     */
+    private void computeGeometricMask(double x, double y, double z, long[] dst) {
+        Arrays.fill(dst, 0L); // dst may be a reused scratch buffer
+        for (int i = 0; i < satellites.size(); i++) {
+            if (isLosGeometric(x, y, z, i)) {
+                dst[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+    
+    /**
+     * computeGeometricMask through the on-disk cache (x, y is a cache cell center)
+     */
+    private void computeGeometricMaskPersistent(double x, double y, double z, long[] dst) {
+        PersistentLosCache store = getPersistentCache();
+        if (store != null && store.get(x, y, z, dst)) {
+            return;
+        }
+        computeGeometricMask(x, y, z, dst);
+        if (store != null) {
+            store.put(x, y, z, dst);
+        }
+    }
+    
+    /**
+     * On-disk cache file for the buildings, satellites, cache cell size and geometric mode,
+     * or null if it cannot be opened (the cache then stays in memory)
+     */
+    private PersistentLosCache getPersistentCache() {
+        PersistentLosCache store = persistentCache;
+        if (store == null && !persistentCacheFailed) {
+            synchronized (this) {
+                store = persistentCache;
+                if (store == null && !persistentCacheFailed) {
+                    try {
+                        store = PersistentLosCache.open(Paths.get(config.getLosCacheDirectory()), persistentCacheKey(),
+                            losCache.getWords(), config.getLosCacheDiskMb() << 20);
+                        System.out.println(store.describe());
+                        persistentCache = store;
+                    } catch (IOException e) {
+                        System.err.println("Warning: persistent LOS cache unavailable: " + e.getMessage());
+                        persistentCacheFailed = true;
+                    }
+                }
+            }
+        }
+        return store;
+    }
+    
+    /**
+     * Give back the on-disk cache file (unlocked once no calculator of the JVM uses it);
+     * a later lookup opens it again
+     */
+    private synchronized void releasePersistentCache() {
+        PersistentLosCache store = persistentCache;
+        persistentCache = null;
+        persistentCacheFailed = false;
+        if (store != null) {
+            store.release();
+        }
+    }
+    
+    /**
+     * Release the files held by this calculator (the persistent LOS cache); call once it is done
+     */
+    public void close() {
+        releasePersistentCache();
+    }
+    
+    /**
+     * Hash of everything a cached geometric mask depends on: building footprints and heights,
+     * satellite names and directions, cache cell size and geometric mode (exact modes share one key)
+     */
+    private long persistentCacheKey() {
+        long h = mix(0x4C4F53L, Double.doubleToLongBits(config.getLosCacheCellSize()));
+        for (Building building : buildings) {
+            h = mix(h, Double.doubleToLongBits(building.getHeight()));
+            for (Point3D vertex : building.getVertices()) {
+                h = mix(h, Double.doubleToLongBits(vertex.getX()));
+                h = mix(h, Double.doubleToLongBits(vertex.getY()));
+                h = mix(h, Double.doubleToLongBits(vertex.getZ()));
+            }
+        }
+        for (int i = 0; i < satellites.size(); i++) {
+            Satellite satellite = satellites.get(i);
+            h = mix(h, satellite.getName().hashCode());
+            h = mix(h, Double.doubleToLongBits(satellite.getAzimuth()));
+            h = mix(h, Double.doubleToLongBits(satellite.getElevation()));
+        }
+        switch (geometricMode) {
+            case RAY_SHOOTING_HEURISTIC:
+                return mix(h, 1);
+            case SKYLINE:
+                h = mix(h, 2);
+                h = mix(h, Double.doubleToLongBits(config.getLosSkylineCellSize()));
+                h = mix(h, Double.doubleToLongBits(config.getLosSkylineMargin()));
+                h = mix(h, Double.doubleToLongBits(config.getLosRasterHeight()));
+                return mix(h, Double.doubleToLongBits(config.getLosRasterMargin()));
+            default:
+                return mix(h, 0); // Exact modes all give the brute force answer
         }
+    }
+    
+    /**
+     * Start a new epoch: take a fresh signal strength snapshot of the satellites.
+     * In HYBRID mode weak (NLOS) signals get one NLOS degradation of 10-20 dB-Hz per epoch,
+     * drawn from a generator keyed by seed and epoch; the satellites themselves are not changed.
+     * Calling it again with the same epoch (e.g. from several filters) keeps the current snapshot.
+     * @param epoch Epoch key, e.g. the measurement timestamp
+     */
+    public void beginEpoch(long epoch) {
+        if (signalSnapshot.epoch != epoch) {
+            signalSnapshot = createSignalSnapshot(epoch);
+        }
+    }
+    
+    /**
+     * Key of the current epoch (Long.MIN_VALUE before the first beginEpoch call)
+     * Results for a position are only reusable within one epoch
+     */
+    public long getEpoch() {
+        return signalSnapshot.epoch;
+    }
+    
+    /**
+     * C/N0 of a satellite in the current epoch snapshot
+     * @return C/N0 in dB-Hz, or NaN if the satellite is unknown
+     */
+    public double getSnapshotCnRatio(String satelliteName) {
+        SignalSnapshot snapshot = signalSnapshot;
+        for (int i = 0; i < satellites.size(); i++) {
+            if (satellites.get(i).getName().equals(satelliteName)) {
+                return snapshot.cnRatio[i];
+            }
+        }
+        return Double.NaN;
+    }
+    
+    private SignalSnapshot createSignalSnapshot(long epoch) {
+        int count = satellites.size();
+        double[] cnRatio = new double[count];
+        boolean[] signalLos = new boolean[count];
         
-        return result;
+        for (int i = 0; i < count; i++) {
+            double cn = satellites.get(i).getCnRatio();
+            signalLos[i] = cn >= cnThreshold;
+            
+            if (classificationMode == ClassificationMode.HYBRID && !signalLos[i]) {
+                // Same model as Satellite.applyNlosSignalDegradation, without touching the satellite
+                SplittableRandom random = new SplittableRandom(mix(mix(randomSeed, epoch), i));
+                double degradation = 10 + random.nextDouble() * 10; // 10-20 dB-Hz reduction
+                cn = Math.max(20, cn - degradation);
+            }
+            cnRatio[i] = cn;
+        }
+        return new SignalSnapshot(epoch, cnRatio, signalLos);
     }
     
     /**
-     * Geometric LOS calculation with Ray-Shooting optimization
+     * Seed of the misclassification draws of one mask slot; the slot keeps copies at the same position independent
      */
-    private boolean isLosGeometric(Point3D pos, Satellite satellite) {
-        if (rayShooting) {
-            return isLosGeometricRayShoot(pos, satellite);
-        } else {
-            // Original method: check against all buildings
-            for (Building building : buildings) {
-                if (building == null || building.getVertices() == null || building.getVertices().size() < 3) {
-                    continue;
+    private long positionSeed(long epoch, int slot, double x, double y, double z) {
+        long h = mix(mix(randomSeed, epoch), slot);
+        h = mix(h, Double.doubleToLongBits(x));
+        h = mix(h, Double.doubleToLongBits(y));
+        return mix(h, Double.doubleToLongBits(z));
+    }
+    
+    private static long mix(long h, long value) {
+        h = (h ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+    
+    /**
+     * Satellite name to bit index mapping used by the LOS vectors of this calculator
+     */
+    public SatelliteRegistry getSatelliteRegistry() {
+        return satelliteRegistry;
+    }
+    
+    /**
+     * Geometric LOS calculation using the configured geometric mode
+     * @param satellite Index into the satellite list
+     */
+    private boolean isLosGeometric(double x, double y, double z, int satellite) {
+        SatelliteRay ray = satelliteRays[satellite];
+        if (horizonCulling && !cityModel.mayBlock(z, ray)) {
+            return true; // Every building is too low for this satellite
+        }
+        switch (geometricMode) {
+            case BRUTE_FORCE:
+                return isLosGeometricBruteForce(x, y, z, ray);
+                
+            case RAY_SHOOTING_HEURISTIC:
+                return isLosGeometricHeuristic(new Point3D(x, y, z), ray);
+                
+            case SHADOW_RASTER:
+                int rasterLos = getShadowRaster().lookup(satellite, x, y, z);
+                if (rasterLos != ShadowRaster.UNKNOWN) {
+                    return rasterLos == ShadowRaster.LOS;
                 }
+                return isLosGeometricRayShoot(x, y, z, satellite);
                 
-                LosResult losResult = computeLosDetailedWithIntersection(pos, building, satellite);
-                if (!losResult.isLos()) {
-                    return false; // Blocked by this building
+            case SKYLINE:
+                Satellite sat = satellites.get(satellite);
+                int skylineLos = getSkylineIndex().lookup(x, y, z, sat.getAzimuth(), sat.getElevation());
+                if (skylineLos != ShadowRaster.UNKNOWN) {
+                    return skylineLos == ShadowRaster.LOS;
                 }
-            }
-            return true; // Not blocked by any building
+                return isLosGeometricRayShoot(x, y, z, satellite);
+                
+            case DIAGNOSTIC:
+                boolean exactLos = isLosGeometricRayShoot(x, y, z, satellite);
+                boolean heuristicLos = isLosGeometricHeuristic(new Point3D(x, y, z), ray);
+                diagnosticQueries.incrementAndGet();
+                if (heuristicLos && !exactLos) {
+                    heuristicFalseLos.incrementAndGet();
+                } else if (!heuristicLos && exactLos) {
+                    heuristicFalseNlos.incrementAndGet();
+                }
+                return exactLos;
+                
+            case EXACT_ACCELERATED:
+            default:
+                return isLosGeometricRayShoot(x, y, z, satellite);
         }
     }
     
     /**
-     * Ray-Shooting optimization: O(N × k × log(B)) complexity
-     * Only checks buildings that are likely to intersect the ray
+     * Original method: check against all buildings (one scan over all compiled walls)
      */
-    private boolean isLosGeometricRayShoot(Point3D pos, Satellite satellite) {
+    private boolean isLosGeometricBruteForce(double x, double y, double z, SatelliteRay ray) {
+        if (horizonCulling || boxRejection) {
+            return cityModel.firstBlockingWallOfCandidates(wallKernel, x, y, z, ray, horizonCulling, boxRejection) < 0;
+        }
+        return wallKernel.firstBlockingWall(cityModel, 0, cityModel.wallCount, x, y, z, ray) < 0;
+    }
+    
+    /**
+     * Exact accelerated LOS: asks the configured spatial index for the first wall blocking the
+     * satellite ray (the satellite's projected buckets for PROJECTED, the grid cells crossed for
+     * GRID, the pruned hierarchy nodes for BVH).
+     * Cost depends on the walls near the ray, not on the number of buildings,
+     * and the result is identical to checking every building.
+     */
+    private boolean isLosGeometricRayShoot(double x, double y, double z, int satellite) {
+        SatelliteRay ray = satelliteRays[satellite];
+        double maxT = horizonCulling ? ray.reach(cityModel.maxHeight - z) : Double.POSITIVE_INFINITY;
+        ProjectedWallIndex[] projected = projectedIndexes;
+        if (projected != null && projected[satellite] != null) {
+            return !projected[satellite].isBlocked(x, y, z, maxT);
+        }
+        return !wallIndex.isBlocked(x, y, z, ray, maxT);
+    }
+    
+    /**
+     * Legacy Ray-Shooting heuristic: O(N × k × log(B)) complexity
+     * Only checks the ceil(log(B+1)*2) buildings with the highest relevance score,
+     * so a blocking building outside that set is missed and reported as LOS.
+     */
+    private boolean isLosGeometricHeuristic(Point3D pos, SatelliteRay ray) {
         // Get buildings sorted by relevance to the ray direction
-        List<Building> candidateBuildings = getRelevantBuildings(pos, satellite);
+        List<Building> candidateBuildings = getRelevantBuildings(pos, ray);
         
         // Check only the most relevant buildings (logarithmic portion of B)
         int maxBuildings = Math.min(candidateBuildings.size(), (int) Math.ceil(Math.log(buildings.size() + 1) * 2));
@@ -184,7 +777,7 @@ public class LosCalculator {
                 continue;
             }
             
-            LosResult losResult = computeLosDetailedWithIntersection(pos, building, satellite);
+            LosResult losResult = computeLosDetailed(pos, building, ray);
             if (!losResult.isLos()) {
                 return false; // Blocked by this building
             }
@@ -197,66 +790,63 @@ public class LosCalculator {
      * Returns an object containing all relevant information: whether there's LOS, intersection point, ray height, etc.
      */
     public LosResult computeLosDetailedWithIntersection(Point3D userPoint, Building building, Satellite satellite) {
-        List<Point3D> vertices = building.getVertices();
+        return computeLosDetailed(userPoint, building, rayFor(satellite));
+    }
+    
+    /**
+     * Tests the ray against the walls of one building in vertex order
+     * @return NLOS result for the first blocking wall, or LOS
+     */
+    private LosResult computeLosDetailed(Point3D userPoint, Building building, SatelliteRay ray) {
+        CityModel model = cityModel;
+        int b = model.indexOf(building);
+        if (b < 0) {
+            // Not part of this calculator's buildings: compile it on its own
+            model = new CityModel(Collections.singletonList(building));
+            b = 0;
+        }
         
-        // Iterate through all walls of the building
-        for (int i = 0; i < vertices.size() - 1; i++) {
-            Point3D p1 = vertices.get(i);
-            Point3D p2 = vertices.get(i + 1);
-            
-            // Calculate direction vector to satellite
-            double azimuthRad = Math.toRadians(satellite.getAzimuth());
-            double elevationRad = Math.toRadians(satellite.getElevation());
-            
-            // Unit vector in direction of satellite
-            double dx = Math.sin(azimuthRad) * Math.cos(elevationRad);
-            double dy = Math.cos(azimuthRad) * Math.cos(elevationRad);
-            double dz = Math.sin(elevationRad);
-            
-            // Calculate intersection with vertical plane of the wall
-            double wallDx = p2.getX() - p1.getX();
-            double wallDy = p2.getY() - p1.getY();
-            
-            // Calculate cross product of wall vector with direction vector
-            double normalX = -wallDy;  // Vector perpendicular to wall
-            double normalY = wallDx;
-            
-            // Scalar product of direction vector with normal
-            double dot = dx * normalX + dy * normalY;
-            
-            if (Math.abs(dot) > 1e-10) {  // If ray is not parallel to wall
-                // Calculate parameter t of intersection point
-                double t = ((p1.getX() - userPoint.getX()) * normalX + 
-                          (p1.getY() - userPoint.getY()) * normalY) / dot;
-                
-                if (t > 0) {  // Intersection in positive direction
-                    // Intersection point
-                    double intersectX = userPoint.getX() + t * dx;
-                    double intersectY = userPoint.getY() + t * dy;
-                    
-                    // Check if intersection point is on the wall
-                    double wallLen = Math.sqrt(wallDx * wallDx + wallDy * wallDy);
-                    double s = ((intersectX - p1.getX()) * wallDx + 
-                              (intersectY - p1.getY()) * wallDy) / (wallLen * wallLen);
-                    
-                    if (s >= 0 && s <= 1) {  // Intersection on the wall
-                        // Calculate ray height at intersection point (now using proper UTM coordinates in meters)
-                        double horizontalDistance = t * Math.sqrt(dx * dx + dy * dy);
-                        double heightGain = horizontalDistance * Math.tan(elevationRad);
-                        double rayHeightAtIntersection = userPoint.getZ() + heightGain;
-                        
-                        // Check if ray is blocked by the building
-                        if (rayHeightAtIntersection < building.getHeight()) {
-                            double deltaH = building.getHeight() - rayHeightAtIntersection;
-                            return new LosResult(false, deltaH, 
-                                new Point2D(intersectX, intersectY), rayHeightAtIntersection);
-                        }
-                    }
-                }
-            }
+        double ux = userPoint.getX(), uy = userPoint.getY(), uz = userPoint.getZ();
+        if (!model.isCandidate(b, ux, uy, uz, ray, horizonCulling, boxRejection)) {
+            return new LosResult(true, 0, null, 0);
+        }
+        int wall = wallKernel.firstBlockingWall(model, model.wallStart[b], model.wallStart[b + 1], ux, uy, uz, ray);
+        if (wall < 0) {
+            return new LosResult(true, 0, null, 0);
         }
         
-        return new LosResult(true, 0, null, 0);
+        // Intersection point and ray height there (same arithmetic as the blocking test)
+        double t = model.blockingDistance(wall, ux, uy, uz, ray);
+        double rayHeightAtIntersection = uz + t * ray.slope;
+        double deltaH = model.height[wall] - rayHeightAtIntersection;
+        return new LosResult(false, deltaH, new Point2D(ux + t * ray.dx, uy + t * ray.dy), rayHeightAtIntersection);
+    }
+    
+    /**
+     * Height by which the tallest blocking wall exceeds the ray from the user to the satellite,
+     * over all buildings (the largest deltaH of any NLOS wall)
+     * @return Height in meters, or 0 if no wall blocks the ray
+     */
+    public double computeMaxBlockingDeltaH(Point3D userPoint, Satellite satellite) {
+        SatelliteRay ray = rayFor(satellite);
+        if (horizonCulling && !cityModel.mayBlock(userPoint.getZ(), ray)) {
+            return 0;
+        }
+        double deltaH = wallKernel.maxBlockingDeltaH(cityModel, 0, cityModel.wallCount,
+            userPoint.getX(), userPoint.getY(), userPoint.getZ(), ray);
+        return deltaH > 0 ? deltaH : 0;
+    }
+    
+    /**
+     * Precomputed ray of a satellite of this calculator, or a new one for any other satellite
+     */
+    private SatelliteRay rayFor(Satellite satellite) {
+        for (int i = 0; i < satellites.size(); i++) {
+            if (satellites.get(i) == satellite) {
+                return satelliteRays[i];
+            }
+        }
+        return new SatelliteRay(satellite);
     }
     
     /**
@@ -315,6 +905,9 @@ public class LosCalculator {
         }
         
         System.out.println("Applied signal degradation to " + degradedCount + "/" + satellites.size() + " satellites");
+        
+        // Classification reads the snapshot, so take the degraded values into it
+        signalSnapshot = createSignalSnapshot(signalSnapshot.epoch);
         System.out.println("=== Urban Signal Degradation Complete ===\n");
     }
 
@@ -323,75 +916,193 @@ public class LosCalculator {
      * @return int[2] array where [0] = LOS count, [1] = NLOS count
      */
     public int[] getLosNlosCount(Point3D position) {
-        Map<String, Boolean> status = calculateLOS(position);
-        int losCount = 0;
-        int nlosCount = 0;
-        
-        for (Boolean isLos : status.values()) {
-            if (isLos) {
-                losCount++;
-            } else {
-                nlosCount++;
-            }
-        }
-        
-        return new int[] {losCount, nlosCount};
+        LosVector status = calculateLosVector(position);
+        return new int[] {status.getLosCount(), status.getNlosCount()};
     }
     
     /**
      * Return a compact representation of LOS/NLOS status for a point 
      */
     public String getLosStatusString(Point3D position) {
-        Map<String, Boolean> losStatus = calculateLOS(position);
-        int losCount = 0;
-        int nlosCount = 0;
+        LosVector losStatus = calculateLosVector(position);
+        return String.format("Satellites - LOS: %d, NLOS: %d", losStatus.getLosCount(), losStatus.getNlosCount());
+    }
+    
+    /**
+     * Build the spatial index used by the accelerated modes (los.spatial.index: PROJECTED by
+     * default, GRID or BVH); PROJECTED also keeps the grid, for satellites at the zenith.
+     * Done once per calculator; the buildings do not change afterwards
+     */
+    private void initializeSpatialIndex() {
+        cityModel = new CityModel(buildings != null ? buildings : new ArrayList<>());
+        wallIndex = createWallIndex(spatialIndex);
+        projectedIndexes = createProjectedIndexes(spatialIndex);
         
-        for (Boolean isLos : losStatus.values()) {
-            if (isLos) {
-                losCount++;
-            } else {
-                nlosCount++;
+        if (geometricMode != GeometricMode.BRUTE_FORCE && buildings != null && !buildings.isEmpty()) {
+            System.out.println(describeSpatialIndex());
+        }
+    }
+    
+    /**
+     * Shadow rasters of all satellites, rasterized on first use
+     */
+    private ShadowRaster getShadowRaster() {
+        ShadowRaster raster = shadowRaster;
+        if (raster == null) {
+            synchronized (this) {
+                raster = shadowRaster;
+                if (raster == null) {
+                    long start = System.nanoTime();
+                    raster = new ShadowRaster(cityModel, satelliteRays, config.getLosRasterHeight(),
+                        config.getLosRasterCellSize(), config.getLosRasterMargin());
+                    System.out.printf("%s, built in %d ms%n", raster.describe(), (System.nanoTime() - start) / 1_000_000);
+                    shadowRaster = raster;
+                }
             }
         }
-        
-        return String.format("Satellites - LOS: %d, NLOS: %d", losCount, nlosCount);
+        return raster;
     }
     
     /**
-     * Initialize Ray-Shooting optimization
-     * Pre-computes spatial indexing for buildings
+     * Skyline index around the buildings; it does not depend on the satellites
      */
-    private void initializeRayShooting() {
-        if (!rayShooting || buildings == null || buildings.isEmpty()) {
-            return;
+    private SkylineIndex getSkylineIndex() {
+        SkylineIndex index = skylineIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = skylineIndex;
+                if (index == null) {
+                    index = new SkylineIndex(cityModel, config.getLosRasterHeight(), config.getLosSkylineCellSize(),
+                        config.getLosRasterMargin(), config.getLosSkylineMargin(), skylineMemoryMb << 20);
+                    System.out.println(index.describe());
+                    skylineIndex = index;
+                }
+            }
         }
-        
-        System.out.println("Initializing Ray-Shooting optimization for " + buildings.size() + " buildings...");
-        
-        // Create a copy of buildings for spatial indexing
-        sortedBuildingsByDistance = new ArrayList<>(buildings);
-        
-        System.out.println("Ray-Shooting optimization initialized.");
+        return index;
     }
     
     /**
-     * Get buildings sorted by relevance to the satellite ray
-     * This implements the article's spatial indexing approach
+     * Shadow distance field of all satellites at the raster height
      */
-    private List<Building> getRelevantBuildings(Point3D pos, Satellite satellite) {
-        if (sortedBuildingsByDistance == null) {
-            return buildings;
+    private ShadowDistanceField getShadowDistanceField() {
+        ShadowDistanceField field = shadowDistanceField;
+        if (field == null) {
+            synchronized (this) {
+                field = shadowDistanceField;
+                if (field == null) {
+                    field = new ShadowDistanceField(cityModel, satelliteRays, config.getLosRasterHeight(),
+                        config.getLosShadowClearanceCellSize(), config.getLosRasterMargin(),
+                        config.getLosShadowClearanceMax());
+                    System.out.println(field.describe());
+                    shadowDistanceField = field;
+                }
+            }
         }
-        
-        // Calculate ray direction vector
-        double azimuthRad = Math.toRadians(satellite.getAzimuth());
-        double elevationRad = Math.toRadians(satellite.getElevation());
-        
-        double dx = Math.sin(azimuthRad) * Math.cos(elevationRad);
-        double dy = Math.cos(azimuthRad) * Math.cos(elevationRad);
+        return field;
+    }
+    
+    /**
+     * Size and built tiles of the shadow distance field
+     */
+    public String getShadowClearanceSummary() {
+        ShadowDistanceField field = shadowDistanceField;
+        return field != null ? field.describe() : "LOS shadow distance field: not built";
+    }
+    
+    /**
+     * Compute the SKYLINE mode cells around a route up front instead of on first use
+     * @param route Receiver positions, e.g. the ground truth or a previous run
+     * @param radius Cells within this many meters (per axis) of every position
+     */
+    public void precomputeSkyline(List<Point3D> route, double radius) {
+        SkylineIndex index = getSkylineIndex();
+        long start = System.nanoTime();
+        for (Point3D point : route) {
+            index.precompute(point.getX(), point.getY(), radius);
+        }
+        System.out.printf("Skyline cells around %d route points: %d cells, %d ms%n",
+            route.size(), index.getBuiltCellCount(), (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    /**
+     * Number of skyline cells computed so far (SKYLINE mode), including evicted ones
+     */
+    public int getSkylineCellCount() {
+        SkylineIndex index = skylineIndex;
+        return index != null ? index.getBuiltCellCount() : 0;
+    }
+    
+    /**
+     * Memory budget of the SKYLINE mode cells; drops the cells built so far
+     */
+    public synchronized void setSkylineMemoryMb(long memoryMb) {
+        this.skylineMemoryMb = memoryMb;
+        this.skylineIndex = null;
+    }
+    
+    /**
+     * Size, kept cells and evictions of the skyline index
+     */
+    public String getSkylineSummary() {
+        SkylineIndex index = skylineIndex;
+        return index != null ? index.describe() : "LOS skyline index: not built";
+    }
+    
+    /**
+     * Number of building walls the geometric modes test
+     */
+    public int getWallCount() {
+        return cityModel.wallCount;
+    }
+    
+    private WallIndex createWallIndex(SpatialIndex index) {
+        return index == SpatialIndex.BVH ? new WallBvh(cityModel) : new WallGrid(cityModel, config.getLosGridCellSize());
+    }
+    
+    /**
+     * Per-satellite projected wall indexes for PROJECTED, else null
+     */
+    private ProjectedWallIndex[] createProjectedIndexes(SpatialIndex index) {
+        if (index != SpatialIndex.PROJECTED) {
+            return null;
+        }
+        ProjectedWallIndex[] indexes = new ProjectedWallIndex[satelliteRays.length];
+        for (int i = 0; i < satelliteRays.length; i++) {
+            if (satelliteRays[i].horizontalLength > 1e-12) {
+                indexes[i] = new ProjectedWallIndex(cityModel, satelliteRays[i], config.getLosGridCellSize());
+            }
+        }
+        return indexes;
+    }
+    
+    private String describeSpatialIndex() {
+        ProjectedWallIndex[] projected = projectedIndexes;
+        if (projected == null) {
+            return wallIndex.describe();
+        }
+        int count = 0;
+        long entries = 0;
+        for (ProjectedWallIndex index : projected) {
+            if (index != null) {
+                count++;
+                entries += index.getEntryCount();
+            }
+        }
+        return String.format("LOS projected wall index: %d of %d satellites, %d wall entries (vertical rays: %s)",
+            count, projected.length, entries, wallIndex.describe());
+    }
+    
+    /**
+     * Get buildings sorted by relevance to the satellite ray
+     * Used by the legacy Ray-Shooting heuristic only
+     */
+    private List<Building> getRelevantBuildings(Point3D pos, SatelliteRay ray) {
+        double dx = ray.dx;
+        double dy = ray.dy;
         
         // Sort buildings by their relevance to the ray
-        List<Building> candidates = new ArrayList<>(sortedBuildingsByDistance);
+        List<Building> candidates = new ArrayList<>(buildings);
         candidates.sort((b1, b2) -> {
             double score1 = calculateBuildingRelevanceScore(pos, b1, dx, dy);
             double score2 = calculateBuildingRelevanceScore(pos, b2, dx, dy);
@@ -406,7 +1117,7 @@ public class LosCalculator {
      * Higher score = more likely to intersect the ray
      */
     private double calculateBuildingRelevanceScore(Point3D pos, Building building, double rayDx, double rayDy) {
-        if (building.getVertices() == null || building.getVertices().isEmpty()) {
+        if (building == null || building.getVertices() == null || building.getVertices().isEmpty()) {
             return 0.0;
         }
         
@@ -437,7 +1148,6 @@ public class LosCalculator {
         double alignment = rayDx * toBuildingX + rayDy * toBuildingY;
         
         // Score combines alignment with ray direction and inverse distance
-        // Buildings closer to the ray path and closer to position get higher scores
         double alignmentScore = Math.max(0, alignment); // Only forward direction
         double distanceScore = 1.0 / (1.0 + distance); // Inverse distance (distance already in meters from UTM)
         double heightScore = Math.log(1.0 + building.getHeight() / 50.0); // Taller buildings more likely to block
@@ -447,20 +1157,227 @@ public class LosCalculator {
     
     /**
      * Enable/disable Ray-Shooting optimization
+     * Enabled maps to EXACT_ACCELERATED, disabled to BRUTE_FORCE; both return the same answer
      */
     public void setRayShootingOptimization(boolean enabled) {
-        this.rayShooting = enabled;
-        if (enabled) {
-            initializeRayShooting();
-        }
-        System.out.println("Ray-Shooting optimization " + (enabled ? "enabled" : "disabled"));
+        setGeometricMode(enabled ? GeometricMode.EXACT_ACCELERATED : GeometricMode.BRUTE_FORCE);
     }
     
     /**
      * Check if Ray-Shooting optimization is enabled
      */
     public boolean isRayShootingEnabled() {
-        return rayShooting;
+        return geometricMode != GeometricMode.BRUTE_FORCE;
+    }
+    
+    /**
+     * Set the geometric LOS mode
+     */
+    public void setGeometricMode(GeometricMode mode) {
+        this.geometricMode = mode;
+        losCacheVersion++; // Answers of the previous mode must not be served from the cache
+        releasePersistentCache(); // Its file is keyed by the previous mode
+        System.out.println("Geometric LOS mode set to: " + mode);
+    }
+    
+    /**
+     * Get current geometric LOS mode
+     */
+    public GeometricMode getGeometricMode() {
+        return geometricMode;
+    }
+    
+    /**
+     * Select the wall test implementation (see WallKernelMode)
+     */
+    public void setWallKernelMode(WallKernelMode mode) {
+        this.wallKernel = WallKernel.create(mode);
+        System.out.println("Wall kernel set to: " + wallKernel.getName());
+    }
+    
+    /**
+     * Select the spatial index used by EXACT_ACCELERATED and DIAGNOSTIC (rebuilt from the walls)
+     */
+    public void setSpatialIndex(SpatialIndex index) {
+        this.spatialIndex = index;
+        this.wallIndex = createWallIndex(index);
+        this.projectedIndexes = createProjectedIndexes(index);
+        System.out.println("Spatial index set to: " + describeSpatialIndex());
+    }
+    
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+    
+    /**
+     * Enable or disable horizon culling (walls beyond their building's shadow length are skipped)
+     */
+    public void setHorizonCullingEnabled(boolean enabled) {
+        this.horizonCulling = enabled;
+    }
+    
+    public boolean isHorizonCullingEnabled() {
+        return horizonCulling;
+    }
+    
+    /**
+     * Enable or disable bounding box pre-rejection of buildings the ray misses
+     */
+    public void setBoxRejectionEnabled(boolean enabled) {
+        this.boxRejection = enabled;
+    }
+    
+    public boolean isBoxRejectionEnabled() {
+        return boxRejection;
+    }
+    
+    /**
+     * Enable or disable classifying satellites for a whole region (see classifySatellites)
+     */
+    public void setRegionPruningEnabled(boolean enabled) {
+        this.regionPruning = enabled;
+    }
+    
+    public boolean isRegionPruningEnabled() {
+        return regionPruning;
+    }
+    
+    /**
+     * Enable or disable per-region active wall lists (see classifySatellites)
+     */
+    public void setRegionWallCullingEnabled(boolean enabled) {
+        this.regionWallCulling = enabled;
+    }
+    
+    public boolean isRegionWallCullingEnabled() {
+        return regionWallCulling;
+    }
+    
+    /**
+     * Enable or disable reusing geometric masks within the shadow clearance (see getShadowClearance)
+     */
+    public void setShadowClearanceEnabled(boolean enabled) {
+        this.shadowClearanceEnabled = enabled;
+    }
+    
+    public boolean isShadowClearanceEnabled() {
+        return shadowClearanceEnabled;
+    }
+    
+    /**
+     * Name of the active wall kernel, e.g. "SCALAR" or "VECTOR(4 lanes)"
+     */
+    public String getWallKernelName() {
+        return wallKernel.getName();
+    }
+    
+    /**
+     * Number of geometric queries compared in DIAGNOSTIC mode
+     */
+    public long getDiagnosticQueryCount() {
+        return diagnosticQueries.get();
+    }
+    
+    /**
+     * Number of DIAGNOSTIC queries where the heuristic said LOS but the exact answer is NLOS
+     */
+    public long getHeuristicFalseLosCount() {
+        return heuristicFalseLos.get();
+    }
+    
+    /**
+     * Number of DIAGNOSTIC queries where the heuristic said NLOS but the exact answer is LOS
+     */
+    public long getHeuristicFalseNlosCount() {
+        return heuristicFalseNlos.get();
+    }
+    
+    /**
+     * Summary of heuristic vs exact disagreements collected in DIAGNOSTIC mode
+     */
+    public String getDiagnosticSummary() {
+        long queries = diagnosticQueries.get();
+        long falseLos = heuristicFalseLos.get();
+        long falseNlos = heuristicFalseNlos.get();
+        double rate = queries > 0 ? 100.0 * (falseLos + falseNlos) / queries : 0.0;
+        return String.format("Ray-Shooting heuristic vs exact: %d queries, %d false LOS, %d false NLOS (%.2f%% disagreement)",
+            queries, falseLos, falseNlos, rate);
+    }
+    
+    /**
+     * Cache geometric LOS masks by position, quantized to cellSize meters
+     * (answers become those of the cell center), within a memory budget
+     * @param cellSize Quantization cell in meters; 0 or less turns the cache off
+     */
+    public void setLosCache(double cellSize, long memoryMb) {
+        this.losCache = cellSize > 0 ? new LosCache(cellSize, memoryMb << 20, satellites.size()) : null;
+        this.persistentCacheEnabled = false; // Its files are keyed by the configured cell size
+        releasePersistentCache();
+        System.out.println("LOS cache set to: " + (losCache != null ? losCache.describe() : "off"));
+    }
+    
+    public boolean isLosCacheEnabled() {
+        return losCache != null;
+    }
+    
+    /**
+     * Number of LOS masks served from the cache
+     */
+    public long getLosCacheHitCount() {
+        LosCache cache = losCache;
+        return cache != null ? cache.getHitCount() : 0;
+    }
+    
+    /**
+     * Number of LOS masks the cache had to compute
+     */
+    public long getLosCacheMissCount() {
+        LosCache cache = losCache;
+        return cache != null ? cache.getMissCount() : 0;
+    }
+    
+    /**
+     * Number of cached LOS masks replaced by newer ones
+     */
+    public long getLosCacheEvictionCount() {
+        LosCache cache = losCache;
+        return cache != null ? cache.getEvictionCount() : 0;
+    }
+    
+    /**
+     * Size and hit/miss/eviction counters of the LOS cache
+     */
+    public String getLosCacheSummary() {
+        LosCache cache = losCache;
+        if (cache == null) {
+            return "LOS cache: off";
+        }
+        PersistentLosCache store = persistentCacheEnabled ? persistentCache : null;
+        return store != null ? cache.describe() + "\n" + store.describe() : cache.describe();
+    }
+    
+    /**
+     * Reset DIAGNOSTIC mode counters
+     */
+    public void resetDiagnostics() {
+        diagnosticQueries.set(0);
+        heuristicFalseLos.set(0);
+        heuristicFalseNlos.set(0);
+    }
+
+    /**
+     * Immutable per-epoch signal strength state, indexed like the satellite list
+     */
+    private static final class SignalSnapshot {
+        final long epoch;
+        final double[] cnRatio;
+        final boolean[] signalLos;
+        
+        SignalSnapshot(long epoch, double[] cnRatio, boolean[] signalLos) {
+            this.epoch = epoch;
+            this.cnRatio = cnRatio;
+            this.signalLos = signalLos;
+        }
     }
 
     /**
@@ -0,0 +1,237 @@
+package com.gps.particlefilter.los;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Geometric LOS masks of cache cell centers in a memory-mapped file, reused across runs.
+ * One file per key: the key hashes the building model, the satellite geometry, the cell size
+ * and the geometric mode, so a changed building file or satellite set simply maps to another
+ * file, and a file whose header does not match its key is rebuilt from scratch.
+ *
+ * The file is an open-addressing table (linear probing, no deletion) of
+ * (tag, center x, center y, z, mask words); once 3/4 full, new masks are no longer stored.
+ * Every calculator of the JVM using the same file shares one instance, released when the last
+ * of them calls {@link #release()}. The file is locked exclusively while open, so another
+ * process sharing the cache directory cannot open it and keeps its cache in memory instead.
+ */
+final class PersistentLosCache {
+    private static final long MAGIC = 0x4C4F53434143484CL; // "LOSCACHL"
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int KEY_OFFSET = 8;
+    private static final int WORDS_OFFSET = 16;
+    private static final int CAPACITY_OFFSET = 20;
+    private static final int COUNT_OFFSET = 24;
+
+    private static final Map<Path, PersistentLosCache> OPEN = new HashMap<>();
+
+    private final Path file;
+    private final RandomAccessFile raf; // Open while the file lock is held
+    private final FileLock fileLock;
+    private MappedByteBuffer buffer; // null once released
+    private int users; // Guarded by the class
+    private final int words;
+    private final int slotBytes;
+    private final int capacity;
+    private final int maxCount;
+    private int count;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The cache file for this key in the directory, shared by all callers of this JVM;
+     * every successful call must be paired with a {@link #release()}
+     * @param maxBytes Size of a new file
+     * @throws IOException Also if another process has the file open
+     */
+    static synchronized PersistentLosCache open(Path directory, long key, int words, long maxBytes) throws IOException {
+        Path file = directory.resolve(String.format("los_%016x.bin", key));
+        PersistentLosCache cache = OPEN.get(file);
+        if (cache == null) {
+            Files.createDirectories(directory);
+            cache = new PersistentLosCache(file, key, words, maxBytes);
+            OPEN.put(file, cache);
+        }
+        cache.users++;
+        return cache;
+    }
+
+    /**
+     * Drop one user; the last one unlocks and closes the file (the mapping goes with the buffer)
+     */
+    void release() {
+        synchronized (PersistentLosCache.class) {
+            if (users == 0 || --users > 0) {
+                return;
+            }
+            OPEN.remove(file);
+        }
+        lock.writeLock().lock();
+        try {
+            buffer = null;
+            fileLock.release();
+            raf.close();
+        } catch (IOException e) {
+            System.err.println("Warning: Could not close persistent LOS cache " + file + ": " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private PersistentLosCache(Path file, long key, int words, long maxBytes) throws IOException {
+        this.file = file;
+        this.words = words;
+        this.slotBytes = 8 * (4 + words);
+        // One mapping, so the file stays below 2 GB
+        long slots = Math.max(16, (Math.min(maxBytes, Integer.MAX_VALUE) - HEADER_BYTES) / slotBytes);
+        int requestedCapacity = Integer.highestOneBit((int) slots);
+
+        raf = new RandomAccessFile(file.toFile(), "rw");
+        FileLock acquired = null;
+        try {
+            acquired = raf.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by this JVM through another path to the same file
+        }
+        if (acquired == null) {
+            raf.close();
+            throw new IOException(file + " is in use by another process");
+        }
+        fileLock = acquired;
+        try {
+            boolean valid = raf.length() >= HEADER_BYTES
+                && raf.readLong() == MAGIC && raf.readLong() == key && raf.readInt() == words;
+            int fileCapacity = valid ? raf.readInt() : 0;
+            valid = valid && Integer.bitCount(fileCapacity) == 1
+                && raf.length() == HEADER_BYTES + (long) fileCapacity * slotBytes;
+            if (!valid) {
+                raf.setLength(0); // Missing, stale or damaged: start over
+                raf.setLength(HEADER_BYTES + (long) requestedCapacity * slotBytes);
+            }
+            capacity = valid ? fileCapacity : requestedCapacity;
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        } catch (IOException e) {
+            raf.close(); // Releases the lock too
+            throw e;
+        }
+        if (buffer.getLong(MAGIC_OFFSET) != MAGIC) {
+            buffer.putLong(KEY_OFFSET, key);
+            buffer.putInt(WORDS_OFFSET, words);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(COUNT_OFFSET, 0);
+            buffer.putLong(MAGIC_OFFSET, MAGIC); // Last, so a half-written header is never trusted
+        }
+        count = buffer.getInt(COUNT_OFFSET);
+        maxCount = capacity / 4 * 3;
+    }
+
+    /**
+     * Stored mask of the cell center (x, y) at height z
+     * @return false if not stored (dst unchanged)
+     */
+    boolean get(double x, double y, double z, long[] dst) {
+        long kx = Double.doubleToLongBits(x), ky = Double.doubleToLongBits(y), kz = Double.doubleToLongBits(z);
+        long tag = tag(kx, ky, kz);
+        lock.readLock().lock();
+        try {
+            if (buffer == null) {
+                return false;
+            }
+            int slot = find(tag, kx, ky, kz);
+            int position = slotPosition(slot);
+            if (buffer.getLong(position) != tag) {
+                misses.increment();
+                return false;
+            }
+            for (int w = 0; w < words; w++) {
+                dst[w] = buffer.getLong(position + 32 + 8 * w);
+            }
+            hits.increment();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Store the mask of the cell center (x, y) at height z, unless the table is full or already has it
+     */
+    void put(double x, double y, double z, long[] mask) {
+        long kx = Double.doubleToLongBits(x), ky = Double.doubleToLongBits(y), kz = Double.doubleToLongBits(z);
+        long tag = tag(kx, ky, kz);
+        lock.writeLock().lock();
+        try {
+            if (buffer == null || count >= maxCount) {
+                return;
+            }
+            int position = slotPosition(find(tag, kx, ky, kz));
+            if (buffer.getLong(position) == tag) {
+                return;
+            }
+            buffer.putLong(position + 8, kx);
+            buffer.putLong(position + 16, ky);
+            buffer.putLong(position + 24, kz);
+            for (int w = 0; w < words; w++) {
+                buffer.putLong(position + 32 + 8 * w, mask[w]);
+            }
+            buffer.putLong(position, tag); // Tag last: a slot is used once its tag is set
+            buffer.putInt(COUNT_OFFSET, ++count);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Slot holding the key, or the empty slot where it would go
+     */
+    private int find(long tag, long kx, long ky, long kz) {
+        int slot = (int) (tag ^ (tag >>> 32)) & (capacity - 1);
+        while (true) {
+            int position = slotPosition(slot);
+            long stored = buffer.getLong(position);
+            if (stored == 0 || (stored == tag && buffer.getLong(position + 8) == kx
+                    && buffer.getLong(position + 16) == ky && buffer.getLong(position + 24) == kz)) {
+                return slot;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    private int slotPosition(int slot) {
+        return HEADER_BYTES + slot * slotBytes;
+    }
+
+    // Never 0 (0 marks an empty slot)
+    private static long tag(long kx, long ky, long kz) {
+        long h = kx * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 29) ^ ky) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 31) ^ kz) * 0x94D049BB133111EBL;
+        return (h ^ (h >>> 29)) | 1L;
+    }
+
+    String describe() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        lock.readLock().lock();
+        try {
+            return String.format("Persistent LOS cache %s: %d of %d entries (%d MB), %d hits, %d misses (%.1f%% hit rate)",
+                file, count, maxCount, (HEADER_BYTES + (long) capacity * slotBytes) >> 20,
+                hitCount, misses.sum(), total > 0 ? 100.0 * hitCount / total : 0.0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.gps.particlefilter.los;
+
+import java.util.Arrays;
+
+/**
+ * Walls seen along one satellite's horizontal direction u, with n perpendicular to it.
+ * The horizontal ray from P can only cross a wall whose projection onto n contains n·P, so
+ * every query is a stabbing query on n·P. The n axis is cut into equal buckets listing the
+ * walls whose (slightly grown) projection overlaps them, ordered by how far along u they start;
+ * a query scans one bucket from the walls ahead of the receiver and stops at the first wall
+ * starting beyond the ray's reach.
+ */
+final class ProjectedWallIndex {
+    // Projections are grown by this much (meters) so rounding never drops a blocking wall
+    private static final double MARGIN = 1e-6;
+    private static final int MAX_BUCKETS = 1 << 16;
+
+    private final CityModel model;
+    private final SatelliteRay ray;
+    private final double ux, uy;   // Unit horizontal ray direction
+    private final double nx, ny;   // Unit perpendicular
+    private final double minN;
+    private final double inverseBucketWidth;
+    private final int bucketCount;
+
+    // Bucket b holds entries bucketStart[b] .. bucketStart[b + 1], sorted by alongMin
+    private final int[] bucketStart;
+    private final int[] entryWall;
+    private final double[] entryAlongMin;
+    private final double[] entryAlongMax;
+    private final double maxAlongExtent;
+
+    /**
+     * @param requestedBucketWidth Bucket width on the perpendicular axis in meters
+     *                             (0 or less = mean wall length, never finer than 1 m, as for WallGrid)
+     * @throws IllegalArgumentException for a vertical ray (no horizontal direction)
+     */
+    ProjectedWallIndex(CityModel model, SatelliteRay ray, double requestedBucketWidth) {
+        if (!(ray.horizontalLength > 1e-12)) {
+            throw new IllegalArgumentException("Ray has no horizontal direction");
+        }
+        this.model = model;
+        this.ray = ray;
+        this.ux = ray.dx / ray.horizontalLength;
+        this.uy = ray.dy / ray.horizontalLength;
+        this.nx = -uy;
+        this.ny = ux;
+
+        int n = model.wallCount;
+        double[] lo = new double[n], hi = new double[n];
+        double[] alongMin = new double[n], alongMax = new double[n];
+        double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+        double maxExtent = 0;
+        double totalLength = 0;
+        for (int w = 0; w < n; w++) {
+            totalLength += Math.hypot(model.wallDx[w], model.wallDy[w]);
+            double x2 = model.x1[w] + model.wallDx[w], y2 = model.y1[w] + model.wallDy[w];
+            double n1 = nx * model.x1[w] + ny * model.y1[w], n2 = nx * x2 + ny * y2;
+            double a1 = ux * model.x1[w] + uy * model.y1[w], a2 = ux * x2 + uy * y2;
+            lo[w] = Math.min(n1, n2) - MARGIN;
+            hi[w] = Math.max(n1, n2) + MARGIN;
+            alongMin[w] = Math.min(a1, a2) - MARGIN;
+            alongMax[w] = Math.max(a1, a2) + MARGIN;
+            low = Math.min(low, lo[w]);
+            high = Math.max(high, hi[w]);
+            maxExtent = Math.max(maxExtent, alongMax[w] - alongMin[w]);
+        }
+        maxAlongExtent = maxExtent;
+
+        if (n == 0) {
+            minN = 0;
+            inverseBucketWidth = 1;
+            bucketCount = 0;
+            bucketStart = new int[1];
+            entryWall = new int[0];
+            entryAlongMin = entryAlongMax = new double[0];
+            return;
+        }
+        double width = requestedBucketWidth > 0 ? requestedBucketWidth : Math.max(1.0, totalLength / n);
+        width = Math.max(width, (high - low) / MAX_BUCKETS);
+        minN = low;
+        inverseBucketWidth = 1.0 / width;
+        bucketCount = Math.max(1, (int) Math.ceil((high - low) * inverseBucketWidth));
+
+        // Counting pass, then fill (compressed rows)
+        bucketStart = new int[bucketCount + 1];
+        for (int w = 0; w < n; w++) {
+            for (int b = bucketOf(lo[w]); b <= bucketOf(hi[w]); b++) {
+                bucketStart[b + 1]++;
+            }
+        }
+        for (int b = 0; b < bucketCount; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        int[] fill = Arrays.copyOf(bucketStart, bucketCount);
+        int[] walls = new int[bucketStart[bucketCount]];
+        for (int w = 0; w < n; w++) {
+            for (int b = bucketOf(lo[w]); b <= bucketOf(hi[w]); b++) {
+                walls[fill[b]++] = w;
+            }
+        }
+
+        // Sort every bucket by alongMin (boxed sort; buckets are short and this runs once per satellite)
+        entryWall = new int[walls.length];
+        entryAlongMin = new double[walls.length];
+        entryAlongMax = new double[walls.length];
+        for (int b = 0; b < bucketCount; b++) {
+            Integer[] order = new Integer[bucketStart[b + 1] - bucketStart[b]];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = walls[bucketStart[b] + k];
+            }
+            Arrays.sort(order, (w1, w2) -> Double.compare(alongMin[w1], alongMin[w2]));
+            for (int k = 0; k < order.length; k++) {
+                int e = bucketStart[b] + k;
+                entryWall[e] = order[k];
+                entryAlongMin[e] = alongMin[order[k]];
+                entryAlongMax[e] = alongMax[order[k]];
+            }
+        }
+    }
+
+    private int bucketOf(double coordinate) {
+        int b = (int) Math.floor((coordinate - minN) * inverseBucketWidth);
+        return Math.max(0, Math.min(bucketCount - 1, b));
+    }
+
+    /**
+     * True if a wall blocks this index's satellite ray from (px, py, pz) within ray parameter maxT
+     */
+    boolean isBlocked(double px, double py, double pz, double maxT) {
+        if (maxT < 0) {
+            return false; // No wall can reach the ray (see SatelliteRay.reach)
+        }
+        double s = nx * px + ny * py;
+        double f = (s - minN) * inverseBucketWidth;
+        if (!(f >= 0 && f < bucketCount)) {
+            return false; // Outside every wall's projection
+        }
+        int b = (int) f;
+        double q = ux * px + uy * py;
+        double reach = maxT * ray.horizontalLength;
+        int end = bucketStart[b + 1];
+
+        // Skip walls that end behind the receiver: none starts after q - maxAlongExtent and still ends before q
+        int k = lowerBound(bucketStart[b], end, q - maxAlongExtent);
+        for (; k < end; k++) {
+            if (entryAlongMin[k] - q > reach) {
+                return false; // This and all later walls start beyond the reach
+            }
+            if (entryAlongMax[k] >= q && model.blockingDistance(entryWall[k], px, py, pz, ray) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * First entry in [from, to) with alongMin >= value
+     */
+    private int lowerBound(int from, int to, double value) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (entryAlongMin[mid] < value) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    int getEntryCount() {
+        return entryWall.length;
+    }
+}
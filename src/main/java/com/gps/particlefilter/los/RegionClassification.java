@@ -0,0 +1,78 @@
+package com.gps.particlefilter.los;
+
+import java.util.Arrays;
+
+/**
+ * LOS of every satellite for a region holding all receivers of an epoch, e.g. the bounding box
+ * of the particle cloud (see LosCalculator.classifySatellites): satellites LOS or NLOS for the
+ * whole region, and for the ambiguous ones the active wall list, the walls whose shadow reaches
+ * the region. No other wall can block that satellite from a receiver inside the region.
+ * Indexed like the calculator's satellite list.
+ */
+public final class RegionClassification {
+    private final LosCalculator.RegionLos[] status;
+    private final int[][] activeWalls; // Per satellite, null = search all walls
+    private final double[][] activeLo;  // Their intervals across the ray (CityModel.crossRayIntervals)
+    private final double[][] activeHi;
+
+    RegionClassification(LosCalculator.RegionLos[] status, int[][] activeWalls, double[][] activeLo,
+                         double[][] activeHi) {
+        this.status = status;
+        this.activeWalls = activeWalls;
+        this.activeLo = activeLo;
+        this.activeHi = activeHi;
+    }
+
+    /**
+     * Every satellite AMBIGUOUS, every wall searched
+     */
+    static RegionClassification ambiguous(int satelliteCount) {
+        LosCalculator.RegionLos[] status = new LosCalculator.RegionLos[satelliteCount];
+        Arrays.fill(status, LosCalculator.RegionLos.AMBIGUOUS);
+        return new RegionClassification(status, new int[satelliteCount][], new double[satelliteCount][],
+            new double[satelliteCount][]);
+    }
+
+    public LosCalculator.RegionLos get(int satellite) {
+        return status[satellite];
+    }
+
+    public int getSatelliteCount() {
+        return status.length;
+    }
+
+    /**
+     * Number of satellites LOS or NLOS for the whole region
+     */
+    public int getPrunedCount() {
+        int count = 0;
+        for (LosCalculator.RegionLos s : status) {
+            if (s != LosCalculator.RegionLos.AMBIGUOUS) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Active walls of an ambiguous satellite, or -1 if all walls are searched
+     */
+    public int getActiveWallCount(int satellite) {
+        return activeWalls[satellite] != null ? activeWalls[satellite].length : -1;
+    }
+
+    /**
+     * Walls that can block the satellite in the region, or null to search all walls
+     */
+    int[] activeWalls(int satellite) {
+        return activeWalls[satellite];
+    }
+
+    double[] activeLo(int satellite) {
+        return activeLo[satellite];
+    }
+
+    double[] activeHi(int satellite) {
+        return activeHi[satellite];
+    }
+}
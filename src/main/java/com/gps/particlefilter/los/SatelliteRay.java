@@ -0,0 +1,49 @@
+package com.gps.particlefilter.los;
+
+import com.gps.particlefilter.model.Satellite;
+
+/**
+ * Direction of a satellite ray, computed once from azimuth and elevation.
+ * The ray from (x, y, z) is (x + t * dx, y + t * dy) horizontally, at height z + t * slope.
+ */
+final class SatelliteRay {
+    final double dx;           // sin(azimuth) * cos(elevation)
+    final double dy;           // cos(azimuth) * cos(elevation)
+    final double tanElevation;
+    final double slope;        // Height gain per unit of t: |(dx, dy)| * tan(elevation)
+    final double horizontalLength; // |(dx, dy)| = cos(elevation)
+    final double inverseDx;        // 1 / dx, for slab tests (Infinity when dx == 0)
+    final double inverseDy;
+    private final double inverseSlope;
+
+    SatelliteRay(Satellite satellite) {
+        double azimuthRad = Math.toRadians(satellite.getAzimuth());
+        double elevationRad = Math.toRadians(satellite.getElevation());
+        this.dx = Math.sin(azimuthRad) * Math.cos(elevationRad);
+        this.dy = Math.cos(azimuthRad) * Math.cos(elevationRad);
+        this.tanElevation = Math.tan(elevationRad);
+        this.inverseDx = 1.0 / dx;
+        this.inverseDy = 1.0 / dy;
+        this.horizontalLength = Math.sqrt(dx * dx + dy * dy);
+        this.slope = horizontalLength * tanElevation;
+        this.inverseSlope = 1.0 / slope;
+    }
+
+    /**
+     * Largest ray parameter t at which a wall rising heightAboveReceiver meters above the
+     * receiver can still block the ray (the wall's shadow length (h - z) / tan(elevation),
+     * divided by horizontalLength), with a small margin against rounding.
+     * @return Negative if no such wall can block (rising ray, wall not above the receiver),
+     *         +Infinity if the ray does not rise
+     */
+    double reach(double heightAboveReceiver) {
+        if (!(slope > 0)) {
+            // A level ray stays exactly at the receiver height; a descending one is never culled
+            return slope == 0 && heightAboveReceiver <= 0 ? -1 : Double.POSITIVE_INFINITY;
+        }
+        if (heightAboveReceiver <= 0) {
+            return -1;
+        }
+        return heightAboveReceiver * inverseSlope * (1 + 1e-9) + 1e-9;
+    }
+}
@@ -0,0 +1,38 @@
+package com.gps.particlefilter.los;
+
+/**
+ * Reference wall kernel: one wall per step with CityModel.blockingDistance
+ */
+final class ScalarWallKernel implements WallKernel {
+    static final ScalarWallKernel INSTANCE = new ScalarWallKernel();
+
+    private ScalarWallKernel() {
+    }
+
+    @Override
+    public int firstBlockingWall(CityModel model, int from, int to, double ux, double uy, double uz, SatelliteRay ray) {
+        return model.firstBlockingWall(from, to, ux, uy, uz, ray);
+    }
+
+    @Override
+    public double maxBlockingDeltaH(CityModel model, int from, int to, double ux, double uy, double uz, SatelliteRay ray) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int w = from; w < to; w++) {
+            double t = model.blockingDistance(w, ux, uy, uz, ray);
+            if (t >= 0) {
+                max = Math.max(max, model.height[w] - (uz + t * ray.slope));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String getName() {
+        return "SCALAR";
+    }
+
+    @Override
+    public int getLaneCount() {
+        return 1;
+    }
+}
@@ -0,0 +1,242 @@
+package com.gps.particlefilter.los;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Unsigned distance to the nearest shadow boundary of any satellite, at one receiver height.
+ * The shadow of wall w for a satellite is the parallelogram of receivers it blocks (see
+ * CityModel.classifyRegion); the satellite is NLOS exactly in the union of its walls' shadows.
+ * A receiver inside a shadow stays NLOS within its depth in that shadow, a receiver outside
+ * all shadows stays LOS within its distance to the nearest one, so its LOS vector is the same
+ * everywhere within the smallest of these over all satellites.
+ *
+ * Stored per cell as a lower bound for every point of the cell (distance from the cell center
+ * minus half the cell diagonal and a margin), capped at a maximum, in tiles of TILE x TILE
+ * cells computed on first use. Only the walls whose shadow comes within the cap of a tile
+ * are measured for it.
+ */
+final class ShadowDistanceField {
+    private static final int TILE = 16;
+    private static final long MAX_TILES = 1L << 20;
+    // Kept from every boundary (meters), far above the rounding of CityModel.blockingDistance
+    private static final double MARGIN = 1e-3;
+
+    private final CityModel model;
+    private final SatelliteRay[] rays;
+    private final double receiverHeight;
+    private final double maxDistance;
+    private final boolean bounded;  // False if some ray does not rise: its shadows are unbounded
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int tileCols;
+    private final int tileRows;
+    private final AtomicReferenceArray<float[]> tiles;
+    private final AtomicInteger builtTiles = new AtomicInteger();
+
+    /**
+     * @param receiverHeight Receiver height the distances are computed for (meters)
+     * @param requestedCellSize Cell size in meters (grown if the field would get too large)
+     * @param areaMargin Field area: building extent grown by this much (meters)
+     * @param maxDistance Distances are capped at this (meters)
+     */
+    ShadowDistanceField(CityModel model, SatelliteRay[] rays, double receiverHeight, double requestedCellSize,
+                        double areaMargin, double maxDistance) {
+        this.model = model;
+        this.rays = rays;
+        this.receiverHeight = receiverHeight;
+        this.maxDistance = maxDistance;
+        boolean rising = true;
+        for (SatelliteRay ray : rays) {
+            rising &= ray.slope > 0;
+        }
+        this.bounded = rising;
+
+        double bMinX = Double.POSITIVE_INFINITY, bMinY = Double.POSITIVE_INFINITY;
+        double bMaxX = Double.NEGATIVE_INFINITY, bMaxY = Double.NEGATIVE_INFINITY;
+        for (int b = 0; b < model.getBuildingCount(); b++) {
+            bMinX = Math.min(bMinX, model.buildingMinX[b]);
+            bMinY = Math.min(bMinY, model.buildingMinY[b]);
+            bMaxX = Math.max(bMaxX, model.buildingMaxX[b]);
+            bMaxY = Math.max(bMaxY, model.buildingMaxY[b]);
+        }
+        if (model.wallCount == 0) {
+            minX = minY = 0;
+            cellSize = 1;
+            tileCols = tileRows = 0;
+            tiles = new AtomicReferenceArray<>(0);
+            return;
+        }
+
+        double width = bMaxX - bMinX + 2 * areaMargin;
+        double height = bMaxY - bMinY + 2 * areaMargin;
+        double size = Math.max(Math.max(requestedCellSize, 0.01),
+            Math.sqrt(width * height / ((double) MAX_TILES * TILE * TILE)));
+        cellSize = size;
+        minX = bMinX - areaMargin;
+        minY = bMinY - areaMargin;
+        tileCols = (int) Math.ceil(width / (size * TILE));
+        tileRows = (int) Math.ceil(height / (size * TILE));
+        tiles = new AtomicReferenceArray<>(tileCols * tileRows);
+    }
+
+    /**
+     * Distance (meters) from (x, y, z) within which no shadow boundary lies;
+     * 0 if unknown (other height, outside the field, or a ray that does not rise)
+     */
+    double clearance(double x, double y, double z) {
+        if (z != receiverHeight || !bounded) {
+            return 0;
+        }
+        double fx = (x - minX) / cellSize;
+        double fy = (y - minY) / cellSize;
+        if (!(fx >= 0 && fx < tileCols * TILE && fy >= 0 && fy < tileRows * TILE)) {
+            return 0;
+        }
+        int cx = (int) fx, cy = (int) fy;
+        float[] tile = tile((cy / TILE) * tileCols + cx / TILE);
+        return tile[(cy % TILE) * TILE + cx % TILE];
+    }
+
+    /**
+     * Distances of a tile, computed on first use (concurrent callers may compute it twice, with the same result)
+     */
+    private float[] tile(int index) {
+        float[] tile = tiles.get(index);
+        if (tile == null) {
+            tile = computeTile(index % tileCols, index / tileCols);
+            if (tiles.compareAndSet(index, null, tile)) {
+                builtTiles.incrementAndGet();
+            } else {
+                tile = tiles.get(index);
+            }
+        }
+        return tile;
+    }
+
+    private float[] computeTile(int tileCol, int tileRow) {
+        double x0 = minX + tileCol * TILE * cellSize;
+        double y0 = minY + tileRow * TILE * cellSize;
+        double x1 = x0 + TILE * cellSize;
+        double y1 = y0 + TILE * cellSize;
+
+        // Distance from every cell center to the nearest boundary of any satellite so far
+        double[] nearest = new double[TILE * TILE];
+        Arrays.fill(nearest, maxDistance);
+        double[] outsideSq = new double[TILE * TILE];
+        double[] insideDepth = new double[TILE * TILE];
+        int[] walls = new int[model.wallCount];
+        for (SatelliteRay ray : rays) {
+            // Per cell center: squared distance to the nearest shadow it lies outside of,
+            // and its depth in the shadow it lies deepest in (0 = in none)
+            Arrays.fill(outsideSq, maxDistance * maxDistance);
+            Arrays.fill(insideDepth, 0);
+
+            // Shadows whose boundary comes within maxDistance of the tile reach the grown tile
+            int count = model.collectRegionWalls(x0 - maxDistance, y0 - maxDistance, receiverHeight,
+                x1 + maxDistance, y1 + maxDistance, ray, walls);
+            for (int k = 0; k < count; k++) {
+                int w = walls[k];
+                // A ray almost parallel to the wall is never blocked by it (see CityModel.blockingDistance)
+                if (!(Math.abs(ray.dx * model.normalX[w] + ray.dy * model.normalY[w]) > 1e-10)) {
+                    continue;
+                }
+                double reach = (model.height[w] - receiverHeight) / ray.slope;
+                double[] qx = {model.x1[w], model.x1[w] + model.wallDx[w], 0, 0};
+                double[] qy = {model.y1[w], model.y1[w] + model.wallDy[w], 0, 0};
+                qx[2] = qx[1] - ray.dx * reach;
+                qy[2] = qy[1] - ray.dy * reach;
+                qx[3] = qx[0] - ray.dx * reach;
+                qy[3] = qy[0] - ray.dy * reach;
+                double orientation = Math.signum((qx[1] - qx[0]) * (qy[3] - qy[0]) - (qy[1] - qy[0]) * (qx[3] - qx[0]));
+                if (orientation == 0) {
+                    continue;
+                }
+                // Inward unit normal of every edge, and the shadow's bounding box
+                double[] nx = new double[4], ny = new double[4];
+                double boxMinX = Double.POSITIVE_INFINITY, boxMinY = Double.POSITIVE_INFINITY;
+                double boxMaxX = Double.NEGATIVE_INFINITY, boxMaxY = Double.NEGATIVE_INFINITY;
+                for (int e = 0; e < 4; e++) {
+                    int f = (e + 1) & 3;
+                    double ex = qx[f] - qx[e], ey = qy[f] - qy[e];
+                    double scale = orientation / Math.hypot(ex, ey);
+                    nx[e] = -ey * scale;
+                    ny[e] = ex * scale;
+                    boxMinX = Math.min(boxMinX, qx[e]);
+                    boxMinY = Math.min(boxMinY, qy[e]);
+                    boxMaxX = Math.max(boxMaxX, qx[e]);
+                    boxMaxY = Math.max(boxMaxY, qy[e]);
+                }
+                for (int row = 0; row < TILE; row++) {
+                    double py = y0 + (row + 0.5) * cellSize;
+                    double boxDy = Math.max(0, Math.max(boxMinY - py, py - boxMaxY));
+                    for (int col = 0; col < TILE; col++) {
+                        double px = x0 + (col + 0.5) * cellSize;
+                        int cell = row * TILE + col;
+                        double boxDx = Math.max(0, Math.max(boxMinX - px, px - boxMaxX));
+                        if (boxDx * boxDx + boxDy * boxDy >= outsideSq[cell]) {
+                            continue; // Outside, and no nearer than a shadow already seen
+                        }
+                        // Signed distance to the nearest edge line, positive inside
+                        double depth = Double.POSITIVE_INFINITY;
+                        for (int e = 0; e < 4; e++) {
+                            depth = Math.min(depth, nx[e] * (px - qx[e]) + ny[e] * (py - qy[e]));
+                        }
+                        if (depth > 0) {
+                            insideDepth[cell] = Math.max(insideDepth[cell], depth);
+                            continue;
+                        }
+                        for (int e = 0; e < 4; e++) {
+                            int f = (e + 1) & 3;
+                            outsideSq[cell] = Math.min(outsideSq[cell],
+                                segmentDistanceSq(px, py, qx[e], qy[e], qx[f], qy[f]));
+                        }
+                    }
+                }
+            }
+
+            // Inside a shadow, the ball of its depth stays in it: NLOS throughout.
+            // Outside all, the ball reaching the nearest shadow stays outside all: LOS throughout.
+            for (int cell = 0; cell < nearest.length; cell++) {
+                double clear = insideDepth[cell] > 0 ? insideDepth[cell] : Math.sqrt(outsideSq[cell]);
+                nearest[cell] = Math.min(nearest[cell], clear);
+            }
+        }
+
+        // Lower bound for any point of the cell, rounded down to float
+        double halfDiagonal = cellSize * Math.sqrt(0.5);
+        float[] tile = new float[TILE * TILE];
+        for (int cell = 0; cell < tile.length; cell++) {
+            double bound = nearest[cell] - halfDiagonal - MARGIN;
+            float value = (float) Math.max(0, bound);
+            tile[cell] = value > bound ? Math.max(0, Math.nextDown(value)) : value;
+        }
+        return tile;
+    }
+
+    private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double ex = bx - ax, ey = by - ay;
+        double lengthSq = ex * ex + ey * ey;
+        double s = lengthSq > 0 ? ((px - ax) * ex + (py - ay) * ey) / lengthSq : 0;
+        s = Math.max(0, Math.min(1, s));
+        double dx = px - (ax + s * ex), dy = py - (ay + s * ey);
+        return dx * dx + dy * dy;
+    }
+
+    double getReceiverHeight() {
+        return receiverHeight;
+    }
+
+    int getBuiltTileCount() {
+        return builtTiles.get();
+    }
+
+    String describe() {
+        return String.format("LOS shadow distance field: %dx%d tiles of %dx%d cells of %.2f m at height %.2f m, " +
+                "capped at %.1f m, %d tiles built (%d KB)%s", tileCols, tileRows, TILE, TILE, cellSize,
+            receiverHeight, maxDistance, builtTiles.get(), builtTiles.get() * (long) TILE * TILE * 4 / 1024,
+            bounded ? "" : ", unusable (a satellite ray does not rise)");
+    }
+}
@@ -0,0 +1,230 @@
+package com.gps.particlefilter.los;
+
+/**
+ * Per-satellite shadow bit rasters for one receiver height (shadow matching).
+ * For a fixed satellite, wall w blocks a receiver at height z exactly on the parallelogram swept
+ * by the wall towards the receiver side: {e - t * (dx, dy) : e on the wall, 0 < t < (h - z) / slope}.
+ * Each parallelogram is rasterized once: cells entirely inside one are marked shadow (NLOS),
+ * cells it only partly covers are marked boundary. A query at the raster height then is one
+ * bit lookup; only boundary cells, other heights and points outside the raster need the exact test.
+ */
+final class ShadowRaster {
+    static final int NLOS = 0;
+    static final int LOS = 1;
+    static final int UNKNOWN = -1;
+
+    // Rasterization margin (meters): a cell is "inside" only with this much to spare
+    private static final double EPS = 1e-6;
+    private static final long MAX_CELLS = 1L << 26;
+
+    private final double receiverHeight;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+
+    // Per satellite, bit (row * cols + col); null rasters mean "always ask the exact test"
+    private final long[][] shadow;
+    private final long[][] boundary;
+    private long boundaryCells;
+
+    /**
+     * Rasterize the shadows of all walls for every satellite
+     * @param receiverHeight Receiver height the rasters are valid for (meters)
+     * @param requestedCellSize Cell size in meters (grown if the raster would get too large)
+     * @param margin Raster area: building extent grown by this much (meters)
+     */
+    ShadowRaster(CityModel model, SatelliteRay[] rays, double receiverHeight, double requestedCellSize, double margin) {
+        this.receiverHeight = receiverHeight;
+
+        double bMinX = Double.POSITIVE_INFINITY, bMinY = Double.POSITIVE_INFINITY;
+        double bMaxX = Double.NEGATIVE_INFINITY, bMaxY = Double.NEGATIVE_INFINITY;
+        for (int b = 0; b < model.getBuildingCount(); b++) {
+            bMinX = Math.min(bMinX, model.buildingMinX[b]);
+            bMinY = Math.min(bMinY, model.buildingMinY[b]);
+            bMaxX = Math.max(bMaxX, model.buildingMaxX[b]);
+            bMaxY = Math.max(bMaxY, model.buildingMaxY[b]);
+        }
+        shadow = new long[rays.length][];
+        boundary = new long[rays.length][];
+        if (model.wallCount == 0) {
+            minX = minY = 0;
+            cellSize = 1;
+            cols = rows = 0;
+            return;
+        }
+
+        double size = Math.max(requestedCellSize, 0.01);
+        double width = bMaxX - bMinX + 2 * margin;
+        double height = bMaxY - bMinY + 2 * margin;
+        size = Math.max(size, Math.sqrt(width * height / MAX_CELLS));
+        cellSize = size;
+        minX = bMinX - margin;
+        minY = bMinY - margin;
+        cols = (int) Math.ceil(width / size);
+        rows = (int) Math.ceil(height / size);
+
+        int words = (int) (((long) cols * rows + 63) >>> 6);
+        for (int s = 0; s < rays.length; s++) {
+            SatelliteRay ray = rays[s];
+            if (!(ray.slope > 0)) {
+                continue; // Level or descending ray: shadows are unbounded, keep the exact test
+            }
+            shadow[s] = new long[words];
+            boundary[s] = new long[words];
+            if (!model.mayBlock(receiverHeight, ray)) {
+                continue; // Every building is too low: LOS everywhere
+            }
+            for (int w = 0; w < model.wallCount; w++) {
+                if (model.height[w] > receiverHeight) {
+                    rasterizeWall(model, w, ray, shadow[s], boundary[s]);
+                }
+            }
+            for (int i = 0; i < words; i++) {
+                boundaryCells += Long.bitCount(boundary[s][i] & ~shadow[s][i]);
+            }
+        }
+    }
+
+    /**
+     * LOS status of the satellite at (x, y, z): LOS, NLOS or UNKNOWN (use the exact test)
+     */
+    int lookup(int satellite, double x, double y, double z) {
+        long[] shadowBits = shadow[satellite];
+        if (shadowBits == null || z != receiverHeight) {
+            return UNKNOWN;
+        }
+        double fx = (x - minX) / cellSize;
+        double fy = (y - minY) / cellSize;
+        if (!(fx >= 0 && fx < cols && fy >= 0 && fy < rows)) {
+            return UNKNOWN;
+        }
+        int cell = (int) fy * cols + (int) fx;
+        if ((shadowBits[cell >>> 6] & (1L << cell)) != 0) {
+            return NLOS;
+        }
+        return (boundary[satellite][cell >>> 6] & (1L << cell)) != 0 ? UNKNOWN : LOS;
+    }
+
+    private void rasterizeWall(CityModel model, int w, SatelliteRay ray, long[] shadowBits, long[] boundaryBits) {
+        double reach = (model.height[w] - receiverHeight) / ray.slope;
+        double vx = ray.dx * reach, vy = ray.dy * reach;
+        double ax = model.x1[w], ay = model.y1[w];
+        double bx = ax + model.wallDx[w], by = ay + model.wallDy[w];
+        double[] qx = {ax, bx, bx - vx, ax - vx};
+        double[] qy = {ay, by, by - vy, ay - vy};
+        // A ray almost parallel to the wall is never blocked by it (see CityModel.blockingDistance)
+        boolean solid = Math.abs(ray.dx * model.normalX[w] + ray.dy * model.normalY[w]) > 1e-9;
+
+        double qMinY = Math.min(Math.min(qy[0], qy[1]), Math.min(qy[2], qy[3]));
+        double qMaxY = Math.max(Math.max(qy[0], qy[1]), Math.max(qy[2], qy[3]));
+        int r0 = Math.max(0, (int) Math.floor((qMinY - EPS - minY) / cellSize));
+        int r1 = Math.min(rows - 1, (int) Math.floor((qMaxY + EPS - minY) / cellSize));
+        double[] range = new double[2];
+        for (int r = r0; r <= r1; r++) {
+            double y0 = minY + r * cellSize;
+            double y1 = y0 + cellSize;
+
+            // Cells touching the quad in this row (grown by EPS) are at least boundary cells
+            if (!bandRange(qx, qy, y0 - EPS, y1 + EPS, range)) {
+                continue;
+            }
+            int c0 = Math.max(0, (int) Math.floor((range[0] - EPS - minX) / cellSize));
+            int c1 = Math.min(cols - 1, (int) Math.floor((range[1] + EPS - minX) / cellSize));
+            setBits(boundaryBits, r * cols, c0, c1);
+
+            // A cell is inside the convex quad if its bottom and top edges are: intersect both chords
+            // (taken EPS outside the cell, so the cell is inside with a margin all around)
+            if (!solid || !chord(qx, qy, y0 - EPS, range)) {
+                continue;
+            }
+            double inLo = range[0], inHi = range[1];
+            if (!chord(qx, qy, y1 + EPS, range)) {
+                continue;
+            }
+            inLo = Math.max(inLo, range[0]) + EPS;
+            inHi = Math.min(inHi, range[1]) - EPS;
+            int f0 = Math.max(0, (int) Math.ceil((inLo - minX) / cellSize));
+            int f1 = Math.min(cols - 1, (int) Math.floor((inHi - minX) / cellSize) - 1);
+            // Cell edges are recomputed exactly as minX + c * cellSize; drop cells that round outside
+            while (f0 <= f1 && minX + f0 * cellSize < inLo) f0++;
+            while (f0 <= f1 && minX + (f1 + 1) * cellSize > inHi) f1--;
+            setBits(shadowBits, r * cols, f0, f1);
+        }
+    }
+
+    /**
+     * x-range of the convex quad on the horizontal line y = c
+     * @return false if the line misses the quad
+     */
+    private static boolean chord(double[] qx, double[] qy, double c, double[] range) {
+        double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) & 3;
+            if (qy[i] == c) {
+                lo = Math.min(lo, qx[i]);
+                hi = Math.max(hi, qx[i]);
+            }
+            if ((qy[i] < c && qy[j] > c) || (qy[i] > c && qy[j] < c)) {
+                double x = qx[i] + (c - qy[i]) * (qx[j] - qx[i]) / (qy[j] - qy[i]);
+                lo = Math.min(lo, x);
+                hi = Math.max(hi, x);
+            }
+        }
+        range[0] = lo;
+        range[1] = hi;
+        return lo <= hi;
+    }
+
+    /**
+     * x-range of the part of the convex quad with lo <= y <= hi
+     * @return false if the band misses the quad
+     */
+    private static boolean bandRange(double[] qx, double[] qy, double lo, double hi, double[] range) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < 4; i++) {
+            if (qy[i] >= lo && qy[i] <= hi) {
+                min = Math.min(min, qx[i]);
+                max = Math.max(max, qx[i]);
+            }
+        }
+        if (chord(qx, qy, lo, range)) {
+            min = Math.min(min, range[0]);
+            max = Math.max(max, range[1]);
+        }
+        if (chord(qx, qy, hi, range)) {
+            min = Math.min(min, range[0]);
+            max = Math.max(max, range[1]);
+        }
+        range[0] = min;
+        range[1] = max;
+        return min <= max;
+    }
+
+    private static void setBits(long[] bits, int rowStart, int c0, int c1) {
+        for (int c = c0; c <= c1; c++) {
+            int cell = rowStart + c;
+            bits[cell >>> 6] |= 1L << cell;
+        }
+    }
+
+    double getReceiverHeight() {
+        return receiverHeight;
+    }
+
+    String describe() {
+        long cells = (long) cols * rows;
+        int rasters = 0;
+        for (long[] bits : shadow) {
+            if (bits != null) {
+                rasters++;
+            }
+        }
+        double boundaryShare = rasters > 0 && cells > 0 ? 100.0 * boundaryCells / (cells * rasters) : 0;
+        return String.format("LOS shadow rasters: %d of %d satellites, %dx%d cells of %.2f m at height %.2f m, " +
+                "%.2f%% boundary cells, %d KB",
+            rasters, shadow.length, cols, rows, cellSize, receiverHeight, boundaryShare,
+            rasters * 2L * (((cells + 63) >>> 6) * 8) / 1024);
+    }
+}
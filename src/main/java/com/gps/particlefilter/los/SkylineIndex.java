@@ -0,0 +1,322 @@
+package com.gps.particlefilter.los;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Building boundary (skyline) per grid cell, as in the article's shadow matching:
+ * for the cell center at one receiver height, the highest elevation of any building top
+ * in each of BINS azimuth bins, stored as centidegrees in a short (1440 bytes per cell).
+ * A satellite is LOS when its elevation is above the boundary of its azimuth bin, so the
+ * index answers for any satellite set, including satellites that move every epoch.
+ *
+ * Cells are computed on first use. The boundary belongs to the cell center and the bin center,
+ * so answers within the configured margin of the boundary are left to the exact test.
+ *
+ * Cells are stored in tiles of TILE x TILE cells, allocated when their first cell is built and
+ * dropped with their last one. A memory budget caps the number of built cells; once it is reached
+ * the cell to replace is chosen by CLOCK (second chance on a reference bit), as in LosCache.
+ */
+final class SkylineIndex {
+    static final int BINS = 720;
+    private static final double BIN_WIDTH = 360.0 / BINS;
+    private static final short NO_BLOCKER = -9000; // Centidegrees: below every satellite
+    private static final long MAX_CELLS = 1L << 24; // Grid size limit, so cell indices fit an int
+    private static final int TILE_SHIFT = 4;
+    private static final int TILE = 1 << TILE_SHIFT;
+    private static final int CELL_BYTES = BINS * 2 + 16; // Skyline array and its header
+
+    // Horizontal direction of every bin center (azimuth clockwise from north)
+    private static final double[] BIN_DX = new double[BINS];
+    private static final double[] BIN_DY = new double[BINS];
+    static {
+        for (int bin = 0; bin < BINS; bin++) {
+            double azimuth = Math.toRadians((bin + 0.5) * BIN_WIDTH);
+            BIN_DX[bin] = Math.sin(azimuth);
+            BIN_DY[bin] = Math.cos(azimuth);
+        }
+    }
+
+    private final CityModel model;
+    private final double receiverHeight;
+    private final double marginDegrees;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    private final int tileCols;
+    private final AtomicReferenceArray<Tile> tiles;
+    private final int maxCells;
+    private final AtomicInteger builtCells = new AtomicInteger(); // Computed so far, including evicted ones
+    private final LongAdder evictions = new LongAdder();
+
+    // CLOCK ring over the live cells (grid cell indices), guarded by this
+    private int[] clockCells = new int[0];
+    private int liveCells = 0;
+    private int hand = 0;
+
+    /**
+     * TILE x TILE cells; a cell's skyline is null until built and after eviction
+     */
+    private static final class Tile {
+        final AtomicReferenceArray<short[]> skylines = new AtomicReferenceArray<>(TILE * TILE);
+        final boolean[] referenced = new boolean[TILE * TILE]; // Racy hint for CLOCK only
+        int live; // Guarded by the index
+    }
+
+    /**
+     * @param receiverHeight Receiver height the boundaries are computed for (meters)
+     * @param requestedCellSize Cell size in meters (grown if the index would get too large)
+     * @param areaMargin Index area: building extent grown by this much (meters)
+     * @param marginDegrees Elevations this close to the boundary are answered UNKNOWN
+     * @param memoryBytes Budget for the built cells
+     */
+    SkylineIndex(CityModel model, double receiverHeight, double requestedCellSize, double areaMargin,
+                 double marginDegrees, long memoryBytes) {
+        this.model = model;
+        this.receiverHeight = receiverHeight;
+        this.marginDegrees = marginDegrees;
+
+        double bMinX = Double.POSITIVE_INFINITY, bMinY = Double.POSITIVE_INFINITY;
+        double bMaxX = Double.NEGATIVE_INFINITY, bMaxY = Double.NEGATIVE_INFINITY;
+        for (int b = 0; b < model.getBuildingCount(); b++) {
+            bMinX = Math.min(bMinX, model.buildingMinX[b]);
+            bMinY = Math.min(bMinY, model.buildingMinY[b]);
+            bMaxX = Math.max(bMaxX, model.buildingMaxX[b]);
+            bMaxY = Math.max(bMaxY, model.buildingMaxY[b]);
+        }
+        if (model.wallCount == 0) {
+            minX = minY = 0;
+            cellSize = 1;
+            cols = rows = 0;
+            tileCols = 0;
+            tiles = new AtomicReferenceArray<>(0);
+            maxCells = 0;
+            return;
+        }
+
+        double width = bMaxX - bMinX + 2 * areaMargin;
+        double height = bMaxY - bMinY + 2 * areaMargin;
+        double size = Math.max(Math.max(requestedCellSize, 0.01), Math.sqrt(width * height / MAX_CELLS));
+        cellSize = size;
+        minX = bMinX - areaMargin;
+        minY = bMinY - areaMargin;
+        cols = (int) Math.ceil(width / size);
+        rows = (int) Math.ceil(height / size);
+        tileCols = (cols + TILE - 1) >>> TILE_SHIFT;
+        tiles = new AtomicReferenceArray<>(tileCols * ((rows + TILE - 1) >>> TILE_SHIFT));
+        maxCells = (int) Math.max(1, Math.min((long) cols * rows, memoryBytes / CELL_BYTES));
+    }
+
+    /**
+     * LOS status of a satellite at the given azimuth and elevation (degrees) seen from (x, y, z):
+     * ShadowRaster.LOS, ShadowRaster.NLOS or ShadowRaster.UNKNOWN (use the exact test)
+     */
+    int lookup(double x, double y, double z, double azimuth, double elevation) {
+        if (z != receiverHeight || !(elevation > 0)) {
+            return ShadowRaster.UNKNOWN;
+        }
+        double fx = (x - minX) / cellSize;
+        double fy = (y - minY) / cellSize;
+        if (!(fx >= 0 && fx < cols && fy >= 0 && fy < rows)) {
+            return ShadowRaster.UNKNOWN;
+        }
+        short[] skyline = skyline((int) fy * cols + (int) fx);
+
+        double boundary = skyline[bin(azimuth)] * 0.01;
+        if (elevation > boundary + marginDegrees) {
+            return ShadowRaster.LOS;
+        }
+        return elevation < boundary - marginDegrees ? ShadowRaster.NLOS : ShadowRaster.UNKNOWN;
+    }
+
+    /**
+     * Compute the skylines of all cells within radius meters (per axis) of (x, y) now
+     */
+    void precompute(double x, double y, double radius) {
+        int c0 = Math.max(0, (int) Math.floor((x - radius - minX) / cellSize));
+        int c1 = Math.min(cols - 1, (int) Math.floor((x + radius - minX) / cellSize));
+        int r0 = Math.max(0, (int) Math.floor((y - radius - minY) / cellSize));
+        int r1 = Math.min(rows - 1, (int) Math.floor((y + radius - minY) / cellSize));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                skyline(r * cols + c);
+            }
+        }
+    }
+
+    static int bin(double azimuth) {
+        double normalized = azimuth % 360.0;
+        if (normalized < 0) {
+            normalized += 360.0;
+        }
+        return Math.min(BINS - 1, (int) (normalized / BIN_WIDTH));
+    }
+
+    /**
+     * Boundary of a cell, computed on first use or after eviction
+     * (concurrent callers may compute it twice, with the same result)
+     */
+    private short[] skyline(int cell) {
+        int col = cell % cols;
+        int row = cell / cols;
+        int tileIndex = tileOf(col, row);
+        int slot = slotOf(col, row);
+        Tile tile = tiles.get(tileIndex);
+        if (tile != null) {
+            short[] skyline = tile.skylines.get(slot);
+            if (skyline != null) {
+                tile.referenced[slot] = true;
+                return skyline;
+            }
+        }
+        short[] skyline = computeSkyline(minX + (col + 0.5) * cellSize, minY + (row + 0.5) * cellSize);
+        builtCells.incrementAndGet();
+        return insert(cell, tileIndex, slot, skyline);
+    }
+
+    /**
+     * Store a computed cell, replacing the CLOCK victim when the budget is used up
+     * @return The stored skyline (another thread's, if it inserted the cell first)
+     */
+    private synchronized short[] insert(int cell, int tileIndex, int slot, short[] skyline) {
+        Tile tile = tiles.get(tileIndex);
+        if (tile != null) {
+            short[] existing = tile.skylines.get(slot);
+            if (existing != null) {
+                return existing;
+            }
+        }
+
+        int ring;
+        if (liveCells < maxCells) {
+            if (liveCells == clockCells.length) {
+                clockCells = Arrays.copyOf(clockCells, Math.min(maxCells, Math.max(64, 2 * liveCells)));
+            }
+            ring = liveCells++;
+        } else {
+            ring = evict();
+        }
+        clockCells[ring] = cell;
+
+        tile = tiles.get(tileIndex); // The eviction may have dropped it
+        if (tile == null) {
+            tile = new Tile();
+            tiles.set(tileIndex, tile);
+        }
+        tile.referenced[slot] = false;
+        tile.skylines.set(slot, skyline);
+        tile.live++;
+        return skyline;
+    }
+
+    /**
+     * Remove the first cell the CLOCK hand finds unreferenced
+     * @return Its ring position, free for the new cell
+     */
+    private int evict() {
+        while (true) {
+            int cell = clockCells[hand];
+            int col = cell % cols;
+            int row = cell / cols;
+            int tileIndex = tileOf(col, row);
+            int slot = slotOf(col, row);
+            Tile tile = tiles.get(tileIndex);
+            int ring = hand;
+            hand = (hand + 1) % liveCells;
+            if (tile.referenced[slot]) {
+                tile.referenced[slot] = false;
+                continue;
+            }
+            tile.skylines.set(slot, null);
+            if (--tile.live == 0) {
+                tiles.set(tileIndex, null);
+            }
+            evictions.increment();
+            return ring;
+        }
+    }
+
+    private int tileOf(int col, int row) {
+        return (row >>> TILE_SHIFT) * tileCols + (col >>> TILE_SHIFT);
+    }
+
+    private static int slotOf(int col, int row) {
+        return ((row & (TILE - 1)) << TILE_SHIFT) | (col & (TILE - 1));
+    }
+
+    /**
+     * Highest building top elevation per azimuth bin seen from (px, py) at the receiver height
+     */
+    private short[] computeSkyline(double px, double py) {
+        // Largest (h - z) / distance per bin, converted to an angle once per bin at the end
+        double[] maxTan = new double[BINS];
+        for (int w = 0; w < model.wallCount; w++) {
+            double rise = model.height[w] - receiverHeight;
+            if (rise <= 0) {
+                continue;
+            }
+            double ax = model.x1[w] - px, ay = model.y1[w] - py;
+            double ex = model.wallDx[w], ey = model.wallDy[w];
+            double bx = ax + ex, by = ay + ey;
+
+            // Bins whose center direction lies within the shorter arc from A to B
+            double azimuthA = Math.toDegrees(Math.atan2(ax, ay));
+            double azimuthB = Math.toDegrees(Math.atan2(bx, by));
+            double span = azimuthB - azimuthA;
+            if (span > 180) span -= 360;
+            if (span < -180) span += 360;
+            double start = span >= 0 ? azimuthA : azimuthA + span;
+            int first = (int) Math.ceil((start - 0.5 * BIN_WIDTH) / BIN_WIDTH);
+            int last = (int) Math.floor((start + Math.abs(span) - 0.5 * BIN_WIDTH) / BIN_WIDTH);
+
+            double cross = ax * ey - ay * ex; // cross(A - P, B - A)
+            for (int k = first; k <= last; k++) {
+                int bin = Math.floorMod(k, BINS);
+                double denominator = BIN_DX[bin] * ey - BIN_DY[bin] * ex; // cross(u, B - A)
+                if (denominator == 0) {
+                    continue;
+                }
+                double distance = cross / denominator;
+                if (distance > 0) {
+                    maxTan[bin] = Math.max(maxTan[bin], rise / distance);
+                }
+            }
+        }
+
+        short[] skyline = new short[BINS];
+        for (int bin = 0; bin < BINS; bin++) {
+            skyline[bin] = maxTan[bin] > 0
+                ? (short) Math.ceil(Math.toDegrees(Math.atan(maxTan[bin])) * 100)
+                : NO_BLOCKER;
+        }
+        return skyline;
+    }
+
+    double getReceiverHeight() {
+        return receiverHeight;
+    }
+
+    int getBuiltCellCount() {
+        return builtCells.get();
+    }
+
+    synchronized int getLiveCellCount() {
+        return liveCells;
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    String describe() {
+        int live = getLiveCellCount();
+        return String.format("LOS skyline index: %dx%d cells of %.2f m at height %.2f m, %d azimuth bins, " +
+                "%d cells built, %d kept (%d KB of %d KB), %d evictions", cols, rows, cellSize, receiverHeight, BINS,
+            builtCells.get(), live, live * (long) CELL_BYTES / 1024, maxCells * (long) CELL_BYTES / 1024,
+            evictions.sum());
+    }
+}
@@ -0,0 +1,93 @@
+package com.gps.particlefilter.los;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Wall kernel on the incubating Vector API: tests SPECIES.length() consecutive walls per step
+ * (4 with AVX2, 8 with AVX-512) and the remainder with the scalar test.
+ * Lane arithmetic repeats CityModel.blockingDistance operation for operation (no fused
+ * multiply-add), so the blocked mask is bit-for-bit the scalar answer.
+ *
+ * Needs --add-modules jdk.incubator.vector to compile and run; WallKernel.create loads it
+ * by name and falls back to ScalarWallKernel when the module is missing.
+ */
+final class VectorWallKernel implements WallKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public int firstBlockingWall(CityModel model, int from, int to, double ux, double uy, double uz, SatelliteRay ray) {
+        int lanes = SPECIES.length();
+        int w = from;
+        for (int upper = from + SPECIES.loopBound(to - from); w < upper; w += lanes) {
+            DoubleVector dot = dot(model, w, ray);
+            DoubleVector t = distance(model, w, ux, uy, dot);
+            VectorMask<Double> mask = blocked(model, w, ux, uy, ray, dot, t, t.mul(ray.slope).add(uz));
+            if (mask.anyTrue()) {
+                return w + mask.firstTrue();
+            }
+        }
+        return model.firstBlockingWall(w, to, ux, uy, uz, ray);
+    }
+
+    @Override
+    public double maxBlockingDeltaH(CityModel model, int from, int to, double ux, double uy, double uz, SatelliteRay ray) {
+        int lanes = SPECIES.length();
+        DoubleVector max = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int w = from;
+        for (int upper = from + SPECIES.loopBound(to - from); w < upper; w += lanes) {
+            DoubleVector dot = dot(model, w, ray);
+            DoubleVector t = distance(model, w, ux, uy, dot);
+            DoubleVector rayHeight = t.mul(ray.slope).add(uz);
+            DoubleVector deltaH = DoubleVector.fromArray(SPECIES, model.height, w).sub(rayHeight);
+            max = max.lanewise(VectorOperators.MAX, deltaH, blocked(model, w, ux, uy, ray, dot, t, rayHeight));
+        }
+        double result = max.reduceLanes(VectorOperators.MAX);
+        for (; w < to; w++) {
+            double t = model.blockingDistance(w, ux, uy, uz, ray);
+            if (t >= 0) {
+                result = Math.max(result, model.height[w] - (uz + t * ray.slope));
+            }
+        }
+        return result;
+    }
+
+    // Lane-wise CityModel.blockingDistance, split so both scans share it
+
+    private static DoubleVector dot(CityModel model, int w, SatelliteRay ray) {
+        return DoubleVector.fromArray(SPECIES, model.normalX, w).mul(ray.dx)
+            .add(DoubleVector.fromArray(SPECIES, model.normalY, w).mul(ray.dy));
+    }
+
+    private static DoubleVector distance(CityModel model, int w, double ux, double uy, DoubleVector dot) {
+        return DoubleVector.fromArray(SPECIES, model.x1, w).sub(ux).mul(DoubleVector.fromArray(SPECIES, model.normalX, w))
+            .add(DoubleVector.fromArray(SPECIES, model.y1, w).sub(uy).mul(DoubleVector.fromArray(SPECIES, model.normalY, w)))
+            .div(dot);
+    }
+
+    private static VectorMask<Double> blocked(CityModel model, int w, double ux, double uy, SatelliteRay ray,
+                                              DoubleVector dot, DoubleVector t, DoubleVector rayHeight) {
+        DoubleVector s = t.mul(ray.dx).add(ux).sub(DoubleVector.fromArray(SPECIES, model.x1, w))
+            .mul(DoubleVector.fromArray(SPECIES, model.wallDx, w))
+            .add(t.mul(ray.dy).add(uy).sub(DoubleVector.fromArray(SPECIES, model.y1, w))
+                .mul(DoubleVector.fromArray(SPECIES, model.wallDy, w)))
+            .mul(DoubleVector.fromArray(SPECIES, model.invLengthSq, w));
+        return dot.abs().compare(VectorOperators.GT, 1e-10)
+            .and(t.compare(VectorOperators.GT, 0.0))
+            .and(s.compare(VectorOperators.GE, 0.0))
+            .and(s.compare(VectorOperators.LE, 1.0))
+            .and(rayHeight.compare(VectorOperators.LT, DoubleVector.fromArray(SPECIES, model.height, w)));
+    }
+
+    @Override
+    public String getName() {
+        return "VECTOR(" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public int getLaneCount() {
+        return SPECIES.length();
+    }
+}
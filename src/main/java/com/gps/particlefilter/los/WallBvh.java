@@ -0,0 +1,308 @@
+package com.gps.particlefilter.los;
+
+import java.util.Arrays;
+
+/**
+ * 2D bounding volume hierarchy over building walls (footprint edges).
+ * Built top-down with binned SAH splits (half perimeter as the 2D surface area), so dense
+ * blocks get deep subtrees and open areas cost a single box test. Nodes are stored depth-first
+ * in flat arrays: the left child of an inner node directly follows it, the right child is
+ * stored explicitly. Every node keeps the height of its tallest wall; a ray that is already
+ * above it where it enters the node's box skips the whole subtree.
+ */
+class WallBvh implements WallIndex {
+    private static final int BINS = 16;
+    private static final int MAX_LEAF_SIZE = 8;
+    private static final double TRAVERSAL_COST = 1.0; // Relative to one wall test
+
+    // Node boxes are grown by this much (meters) so rounding never skips a blocking wall
+    private static final double BOX_MARGIN = 1e-6;
+
+    private final CityModel model;
+
+    // Node arrays; a leaf has count > 0 and holds walls wallOrder[first .. first + count)
+    private double[] nodeMinX;
+    private double[] nodeMinY;
+    private double[] nodeMaxX;
+    private double[] nodeMaxY;
+    private double[] nodeMaxHeight;
+    private int[] nodeFirst;  // Leaf: first index into wallOrder; inner node: right child
+    private int[] nodeCount;  // Leaf: wall count; inner node: 0
+    private byte[] nodeAxis;  // Inner node: split axis (0 = x, 1 = y)
+    private int nodeTotal;
+    private int depth;
+
+    private final int[] wallOrder;
+
+    // Per-wall boxes and centroids, used while building only
+    private double[] boxMinX, boxMinY, boxMaxX, boxMaxY, centerX, centerY;
+
+    /**
+     * Build the hierarchy over all walls of the city model
+     * @param model Compiled building walls in UTM coordinates
+     */
+    WallBvh(CityModel model) {
+        this.model = model;
+        int n = model.wallCount;
+        wallOrder = new int[n];
+        boxMinX = new double[n];
+        boxMinY = new double[n];
+        boxMaxX = new double[n];
+        boxMaxY = new double[n];
+        centerX = new double[n];
+        centerY = new double[n];
+        for (int w = 0; w < n; w++) {
+            double x2 = model.x1[w] + model.wallDx[w];
+            double y2 = model.y1[w] + model.wallDy[w];
+            wallOrder[w] = w;
+            boxMinX[w] = Math.min(model.x1[w], x2);
+            boxMinY[w] = Math.min(model.y1[w], y2);
+            boxMaxX[w] = Math.max(model.x1[w], x2);
+            boxMaxY[w] = Math.max(model.y1[w], y2);
+            centerX[w] = 0.5 * (boxMinX[w] + boxMaxX[w]);
+            centerY[w] = 0.5 * (boxMinY[w] + boxMaxY[w]);
+        }
+
+        int capacity = Math.max(1, 2 * n);
+        nodeMinX = new double[capacity];
+        nodeMinY = new double[capacity];
+        nodeMaxX = new double[capacity];
+        nodeMaxY = new double[capacity];
+        nodeMaxHeight = new double[capacity];
+        nodeFirst = new int[capacity];
+        nodeCount = new int[capacity];
+        nodeAxis = new byte[capacity];
+        if (n > 0) {
+            build(0, n, 1);
+        }
+
+        boxMinX = boxMinY = boxMaxX = boxMaxY = centerX = centerY = null;
+    }
+
+    /**
+     * Build the subtree over wallOrder[start .. end)
+     * @return Index of its root node
+     */
+    private int build(int start, int end, int level) {
+        int node = nodeTotal++;
+        depth = Math.max(depth, level);
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        double cMinX = Double.POSITIVE_INFINITY, cMinY = Double.POSITIVE_INFINITY;
+        double cMaxX = Double.NEGATIVE_INFINITY, cMaxY = Double.NEGATIVE_INFINITY;
+        double maxHeight = Double.NEGATIVE_INFINITY;
+        for (int i = start; i < end; i++) {
+            int w = wallOrder[i];
+            minX = Math.min(minX, boxMinX[w]);
+            minY = Math.min(minY, boxMinY[w]);
+            maxX = Math.max(maxX, boxMaxX[w]);
+            maxY = Math.max(maxY, boxMaxY[w]);
+            cMinX = Math.min(cMinX, centerX[w]);
+            cMinY = Math.min(cMinY, centerY[w]);
+            cMaxX = Math.max(cMaxX, centerX[w]);
+            cMaxY = Math.max(cMaxY, centerY[w]);
+            maxHeight = Math.max(maxHeight, model.height[w]);
+        }
+        nodeMinX[node] = minX - BOX_MARGIN;
+        nodeMinY[node] = minY - BOX_MARGIN;
+        nodeMaxX[node] = maxX + BOX_MARGIN;
+        nodeMaxY[node] = maxY + BOX_MARGIN;
+        nodeMaxHeight[node] = maxHeight;
+
+        int count = end - start;
+        int axis = (cMaxX - cMinX) >= (cMaxY - cMinY) ? 0 : 1;
+        double cMin = axis == 0 ? cMinX : cMinY;
+        double cExtent = axis == 0 ? cMaxX - cMinX : cMaxY - cMinY;
+
+        int mid = -1;
+        if (count > 1 && cExtent > 0) {
+            mid = sahSplit(start, end, axis, cMin, cExtent, halfPerimeter(minX, minY, maxX, maxY));
+        }
+        if (mid < 0 && count > MAX_LEAF_SIZE) {
+            // SAH prefers a leaf or all centroids coincide, but the leaf would be too large: split the order
+            mid = (start + end) >>> 1;
+        }
+        if (mid < 0) {
+            nodeFirst[node] = start;
+            nodeCount[node] = count;
+            return node;
+        }
+
+        nodeAxis[node] = (byte) axis;
+        build(start, mid, level + 1); // Left child is node + 1
+        nodeFirst[node] = build(mid, end, level + 1);
+        nodeCount[node] = 0;
+        return node;
+    }
+
+    /**
+     * Best SAH split of wallOrder[start .. end) into centroid bins along the axis; partitions the range
+     * @return First index of the right part, or -1 if a leaf is cheaper
+     */
+    private int sahSplit(int start, int end, int axis, double cMin, double cExtent, double parentArea) {
+        int[] binCount = new int[BINS];
+        double[] binMinX = new double[BINS], binMinY = new double[BINS];
+        double[] binMaxX = new double[BINS], binMaxY = new double[BINS];
+        Arrays.fill(binMinX, Double.POSITIVE_INFINITY);
+        Arrays.fill(binMinY, Double.POSITIVE_INFINITY);
+        Arrays.fill(binMaxX, Double.NEGATIVE_INFINITY);
+        Arrays.fill(binMaxY, Double.NEGATIVE_INFINITY);
+
+        double scale = BINS / cExtent;
+        for (int i = start; i < end; i++) {
+            int w = wallOrder[i];
+            int bin = binOf(w, axis, cMin, scale);
+            binCount[bin]++;
+            binMinX[bin] = Math.min(binMinX[bin], boxMinX[w]);
+            binMinY[bin] = Math.min(binMinY[bin], boxMinY[w]);
+            binMaxX[bin] = Math.max(binMaxX[bin], boxMaxX[w]);
+            binMaxY[bin] = Math.max(binMaxY[bin], boxMaxY[w]);
+        }
+
+        // Sweep from the right to get the cost of every right part, then from the left
+        double[] rightCost = new double[BINS];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int bin = BINS - 1; bin > 0; bin--) {
+            count += binCount[bin];
+            minX = Math.min(minX, binMinX[bin]);
+            minY = Math.min(minY, binMinY[bin]);
+            maxX = Math.max(maxX, binMaxX[bin]);
+            maxY = Math.max(maxY, binMaxY[bin]);
+            rightCost[bin] = count > 0 ? count * halfPerimeter(minX, minY, maxX, maxY) : 0;
+        }
+
+        double bestCost = Double.POSITIVE_INFINITY;
+        int bestBin = -1;
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+        count = 0;
+        for (int bin = 1; bin < BINS; bin++) {
+            count += binCount[bin - 1];
+            minX = Math.min(minX, binMinX[bin - 1]);
+            minY = Math.min(minY, binMinY[bin - 1]);
+            maxX = Math.max(maxX, binMaxX[bin - 1]);
+            maxY = Math.max(maxY, binMaxY[bin - 1]);
+            if (count == 0 || count == end - start) {
+                continue;
+            }
+            double cost = count * halfPerimeter(minX, minY, maxX, maxY) + rightCost[bin];
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestBin = bin;
+            }
+        }
+
+        double leafCost = end - start;
+        double splitCost = TRAVERSAL_COST + bestCost / Math.max(parentArea, 1e-12);
+        if (bestBin < 0 || (splitCost >= leafCost && end - start <= MAX_LEAF_SIZE)) {
+            return -1;
+        }
+
+        // Partition: walls in bins below bestBin first
+        int i = start, j = end - 1;
+        while (i <= j) {
+            if (binOf(wallOrder[i], axis, cMin, scale) < bestBin) {
+                i++;
+            } else {
+                int swap = wallOrder[i];
+                wallOrder[i] = wallOrder[j];
+                wallOrder[j--] = swap;
+            }
+        }
+        return i;
+    }
+
+    private int binOf(int w, int axis, double cMin, double scale) {
+        double center = axis == 0 ? centerX[w] : centerY[w];
+        return Math.min(BINS - 1, (int) ((center - cMin) * scale));
+    }
+
+    private static double halfPerimeter(double minX, double minY, double maxX, double maxY) {
+        return (maxX - minX) + (maxY - minY);
+    }
+
+    /**
+     * Ray parameter at which the horizontal ray enters the node's box, clipped to [0, maxT],
+     * or -1 if it misses the box within that range
+     */
+    private double entry(int node, double ux, double uy, SatelliteRay ray, double maxT) {
+        double tEnter = 0;
+        double tExit = maxT;
+        if (ray.dx == 0) {
+            if (ux < nodeMinX[node] || ux > nodeMaxX[node]) return -1;
+        } else {
+            double ta = (nodeMinX[node] - ux) * ray.inverseDx;
+            double tb = (nodeMaxX[node] - ux) * ray.inverseDx;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        }
+        if (ray.dy == 0) {
+            if (uy < nodeMinY[node] || uy > nodeMaxY[node]) return -1;
+        } else {
+            double ta = (nodeMinY[node] - uy) * ray.inverseDy;
+            double tb = (nodeMaxY[node] - uy) * ray.inverseDy;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        }
+        return tEnter <= tExit ? tEnter : -1;
+    }
+
+    @Override
+    public boolean isBlocked(double ux, double uy, double uz, SatelliteRay ray, double maxT) {
+        if (nodeTotal == 0) {
+            return false;
+        }
+        boolean rising = ray.slope >= 0;
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            double tEnter = entry(node, ux, uy, ray, maxT);
+            if (tEnter < 0) {
+                continue;
+            }
+            // From tEnter on a rising ray is at least this high: no wall of the subtree can block it
+            if (rising && uz + tEnter * ray.slope >= nodeMaxHeight[node]) {
+                continue;
+            }
+
+            int count = nodeCount[node];
+            if (count > 0) {
+                int first = nodeFirst[node];
+                for (int k = first; k < first + count; k++) {
+                    if (model.blockingDistance(wallOrder[k], ux, uy, uz, ray) >= 0) {
+                        return true;
+                    }
+                }
+                continue;
+            }
+
+            // Visit the child nearer along the ray first (pushed last)
+            double direction = nodeAxis[node] == 0 ? ray.dx : ray.dy;
+            if (direction < 0) {
+                stack[top++] = node + 1;
+                stack[top++] = nodeFirst[node];
+            } else {
+                stack[top++] = nodeFirst[node];
+                stack[top++] = node + 1;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String describe() {
+        int leaves = 0;
+        for (int node = 0; node < nodeTotal; node++) {
+            if (nodeCount[node] > 0) {
+                leaves++;
+            }
+        }
+        return String.format("LOS wall BVH: %d walls, %d nodes (%d leaves), depth %d",
+            wallOrder.length, nodeTotal, leaves, depth);
+    }
+}
@@ -0,0 +1,232 @@
+package com.gps.particlefilter.los;
+
+/**
+ * Uniform 2D grid over building walls (footprint edges).
+ * Each cell lists the walls whose segment passes through it, so a satellite ray
+ * only has to test the walls of the cells its horizontal projection crosses.
+ * The grid is walked cell-by-cell with a DDA (Amanatides-Woo) traversal.
+ */
+class WallGrid implements WallIndex {
+
+    /**
+     * Callback for walls found along a ray. Return true to stop the traversal.
+     */
+    interface WallVisitor {
+        boolean visit(int wall);
+    }
+
+    private final CityModel model;
+    private final int wallCount;
+
+    // Grid geometry (UTM meters)
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+
+    // Cell contents in compressed row form: walls of cell c are cellWalls[cellStart[c] .. cellStart[c + 1])
+    private final int[] cellStart;
+    private final int[] cellWalls;
+
+    /**
+     * Build the grid over all walls of the city model
+     * @param model Compiled building walls in UTM coordinates
+     * @param requestedCellSize Cell size in meters (0 or less = derive from mean wall length)
+     */
+    WallGrid(CityModel model, double requestedCellSize) {
+        this.model = model;
+        wallCount = model.wallCount;
+        double[] x1 = new double[wallCount];
+        double[] y1 = new double[wallCount];
+        double[] x2 = new double[wallCount];
+        double[] y2 = new double[wallCount];
+
+        double bMinX = Double.POSITIVE_INFINITY, bMinY = Double.POSITIVE_INFINITY;
+        double bMaxX = Double.NEGATIVE_INFINITY, bMaxY = Double.NEGATIVE_INFINITY;
+        double totalLength = 0;
+        for (int w = 0; w < wallCount; w++) {
+            x1[w] = model.x1[w];
+            y1[w] = model.y1[w];
+            x2[w] = model.x1[w] + model.wallDx[w];
+            y2[w] = model.y1[w] + model.wallDy[w];
+            totalLength += Math.hypot(model.wallDx[w], model.wallDy[w]);
+            bMinX = Math.min(bMinX, Math.min(x1[w], x2[w]));
+            bMinY = Math.min(bMinY, Math.min(y1[w], y2[w]));
+            bMaxX = Math.max(bMaxX, Math.max(x1[w], x2[w]));
+            bMaxY = Math.max(bMaxY, Math.max(y1[w], y2[w]));
+        }
+
+        if (wallCount == 0) {
+            minX = 0;
+            minY = 0;
+            cellSize = 1;
+            cols = 0;
+            rows = 0;
+            cellStart = new int[1];
+            cellWalls = new int[0];
+            return;
+        }
+
+        // Default cell size: about one mean wall length, never finer than 1 m
+        double size = requestedCellSize > 0 ? requestedCellSize : Math.max(1.0, totalLength / wallCount);
+        // Keep the grid at a sane number of cells for very large extents
+        double extent = Math.max(bMaxX - bMinX, bMaxY - bMinY);
+        size = Math.max(size, extent / 2048.0);
+
+        cellSize = size;
+        minX = bMinX - size * 0.5;
+        minY = bMinY - size * 0.5;
+        cols = (int) Math.floor((bMaxX - minX) / size) + 1;
+        rows = (int) Math.floor((bMaxY - minY) / size) + 1;
+
+        // Slightly inflate wall boxes so walls touching a cell border land in both cells
+        double eps = size * 1e-6;
+
+        // First pass: count walls per cell, second pass: fill
+        int[] counts = new int[cols * rows + 1];
+        for (int i = 0; i < wallCount; i++) {
+            int c0 = cellCol(Math.min(x1[i], x2[i]) - eps), c1 = cellCol(Math.max(x1[i], x2[i]) + eps);
+            int r0 = cellRow(Math.min(y1[i], y2[i]) - eps), r1 = cellRow(Math.max(y1[i], y2[i]) + eps);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    counts[r * cols + c]++;
+                }
+            }
+        }
+        cellStart = new int[cols * rows + 1];
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] = cellStart[c] + counts[c];
+        }
+        cellWalls = new int[cellStart[cols * rows]];
+        int[] fill = new int[cols * rows];
+        for (int i = 0; i < wallCount; i++) {
+            int c0 = cellCol(Math.min(x1[i], x2[i]) - eps), c1 = cellCol(Math.max(x1[i], x2[i]) + eps);
+            int r0 = cellRow(Math.min(y1[i], y2[i]) - eps), r1 = cellRow(Math.max(y1[i], y2[i]) + eps);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    int cell = r * cols + c;
+                    cellWalls[cellStart[cell] + fill[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    private int cellCol(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) Math.floor((x - minX) / cellSize)));
+    }
+
+    private int cellRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellSize)));
+    }
+
+    /**
+     * Walk the cells crossed by the horizontal ray (x, y) + t * (dx, dy), 0 <= t <= maxT, in order
+     * and hand every wall of each crossed cell to the visitor.
+     * A wall spanning several cells may be visited more than once.
+     * @param maxT Stop before cells entered beyond this ray parameter (+Infinity = whole grid)
+     * @return true if the visitor stopped the traversal
+     */
+    boolean traverse(double x, double y, double dx, double dy, double maxT, WallVisitor visitor) {
+        if (cols == 0) {
+            return false;
+        }
+
+        double maxX = minX + cols * cellSize;
+        double maxY = minY + rows * cellSize;
+
+        // Clip the ray against the grid bounds (slab test)
+        double tEnter = 0;
+        double tExit = maxT;
+        if (Math.abs(dx) < 1e-12) {
+            if (x < minX || x > maxX) return false;
+        } else {
+            double ta = (minX - x) / dx;
+            double tb = (maxX - x) / dx;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        }
+        if (Math.abs(dy) < 1e-12) {
+            if (y < minY || y > maxY) return false;
+        } else {
+            double ta = (minY - y) / dy;
+            double tb = (maxY - y) / dy;
+            tEnter = Math.max(tEnter, Math.min(ta, tb));
+            tExit = Math.min(tExit, Math.max(ta, tb));
+        }
+        if (tEnter > tExit) {
+            return false;
+        }
+
+        // Starting cell
+        int col = cellCol(x + tEnter * dx);
+        int row = cellRow(y + tEnter * dy);
+
+        int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+
+        // Ray parameter at the next vertical / horizontal cell border, and per-cell increments
+        double tMaxX = Double.POSITIVE_INFINITY, tDeltaX = Double.POSITIVE_INFINITY;
+        if (stepX != 0) {
+            double border = minX + (col + (stepX > 0 ? 1 : 0)) * cellSize;
+            tMaxX = (border - x) / dx;
+            tDeltaX = cellSize / Math.abs(dx);
+        }
+        double tMaxY = Double.POSITIVE_INFINITY, tDeltaY = Double.POSITIVE_INFINITY;
+        if (stepY != 0) {
+            double border = minY + (row + (stepY > 0 ? 1 : 0)) * cellSize;
+            tMaxY = (border - y) / dy;
+            tDeltaY = cellSize / Math.abs(dy);
+        }
+
+        while (col >= 0 && col < cols && row >= 0 && row < rows) {
+            int cell = row * cols + col;
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                if (visitor.visit(cellWalls[k])) {
+                    return true;
+                }
+            }
+
+            if (stepX == 0 && stepY == 0) {
+                break; // Vertical ray: only the starting cell matters
+            }
+            if (Math.min(tMaxX, tMaxY) > maxT) {
+                break; // Next cell starts beyond the reach of the ray
+            }
+            if (tMaxX < tMaxY) {
+                col += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isBlocked(double ux, double uy, double uz, SatelliteRay ray, double maxT) {
+        return traverse(ux, uy, ray.dx, ray.dy, maxT, wall -> model.blockingDistance(wall, ux, uy, uz, ray) >= 0);
+    }
+
+    @Override
+    public String describe() {
+        return String.format("LOS wall grid: %d walls, %dx%d cells of %.1f m", wallCount, cols, rows, cellSize);
+    }
+
+    int getWallCount() {
+        return wallCount;
+    }
+
+    double getCellSize() {
+        return cellSize;
+    }
+
+    int getColumns() {
+        return cols;
+    }
+
+    int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,19 @@
+package com.gps.particlefilter.los;
+
+/**
+ * Spatial index over the walls of a CityModel for exact satellite ray queries.
+ * Every implementation answers exactly as testing all walls with CityModel.blockingDistance.
+ */
+interface WallIndex {
+
+    /**
+     * True if some wall blocks the ray from (ux, uy, uz) at a ray parameter t <= maxT
+     * @param maxT Walls beyond this ray parameter are not searched (+Infinity = all)
+     */
+    boolean isBlocked(double ux, double uy, double uz, SatelliteRay ray, double maxT);
+
+    /**
+     * One-line description for the log
+     */
+    String describe();
+}
@@ -0,0 +1,60 @@
+package com.gps.particlefilter.los;
+
+/**
+ * Ray-versus-wall test over a contiguous range of compiled walls.
+ * A wall blocks the ray when CityModel.blockingDistance accepts it; every implementation
+ * gives exactly the scalar answer.
+ */
+interface WallKernel {
+
+    /**
+     * First wall in [from, to) that blocks the ray from (ux, uy, uz), or -1
+     */
+    int firstBlockingWall(CityModel model, int from, int to, double ux, double uy, double uz, SatelliteRay ray);
+
+    /**
+     * Largest deltaH (wall height minus ray height at the wall) over the walls in [from, to)
+     * that block the ray, or Double.NEGATIVE_INFINITY if none does
+     */
+    double maxBlockingDeltaH(CityModel model, int from, int to, double ux, double uy, double uz, SatelliteRay ray);
+
+    /**
+     * Name for logs and benchmarks, e.g. "SCALAR" or "VECTOR(4 lanes)"
+     */
+    String getName();
+
+    /**
+     * Walls tested per step (1 for the scalar kernel)
+     */
+    int getLaneCount();
+
+    /**
+     * Lanes below which AUTO keeps the scalar kernel (e.g. SSE only)
+     */
+    int MIN_AUTO_LANES = 4;
+
+    /**
+     * Kernel for the requested mode. VECTOR uses the Vector API kernel when the
+     * jdk.incubator.vector module is present (java --add-modules jdk.incubator.vector),
+     * AUTO only if a vector also holds at least MIN_AUTO_LANES doubles; otherwise both
+     * fall back to the scalar kernel.
+     */
+    static WallKernel create(LosCalculator.WallKernelMode mode) {
+        if (mode == LosCalculator.WallKernelMode.SCALAR) {
+            return ScalarWallKernel.INSTANCE;
+        }
+        try {
+            // Loaded by name so that this class links without the incubator module
+            WallKernel vector = (WallKernel) Class.forName("com.gps.particlefilter.los.VectorWallKernel")
+                .getDeclaredConstructor().newInstance();
+            if (mode == LosCalculator.WallKernelMode.VECTOR || vector.getLaneCount() >= MIN_AUTO_LANES) {
+                return vector;
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            if (mode == LosCalculator.WallKernelMode.VECTOR) {
+                System.out.println("Vector wall kernel unavailable (" + e + "), using the scalar kernel");
+            }
+        }
+        return ScalarWallKernel.INSTANCE;
+    }
+}
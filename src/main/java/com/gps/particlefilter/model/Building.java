@@ -6,9 +6,32 @@ public class Building {
     private List<Point3D> vertices;  // Building vertices in 3D space
     private double height;
 
+    // Axis-aligned bounding box, computed once from the vertices; z spans the lowest vertex to the roof
+    private final double minX, minY, minZ;
+    private final double maxX, maxY, maxZ;
+
     public Building(List<Point3D> vertices, double height) {
         this.vertices = vertices;
         this.height = height;
+
+        double loX = Double.POSITIVE_INFINITY, loY = Double.POSITIVE_INFINITY, loZ = Double.POSITIVE_INFINITY;
+        double hiX = Double.NEGATIVE_INFINITY, hiY = Double.NEGATIVE_INFINITY, hiZ = height;
+        if (vertices != null) {
+            for (Point3D vertex : vertices) {
+                loX = Math.min(loX, vertex.getX());
+                loY = Math.min(loY, vertex.getY());
+                loZ = Math.min(loZ, vertex.getZ());
+                hiX = Math.max(hiX, vertex.getX());
+                hiY = Math.max(hiY, vertex.getY());
+                hiZ = Math.max(hiZ, vertex.getZ());
+            }
+        }
+        this.minX = loX;
+        this.minY = loY;
+        this.minZ = Math.min(loZ, hiZ);
+        this.maxX = hiX;
+        this.maxY = hiY;
+        this.maxZ = hiZ;
     }
 
     public List<Point3D> getVertices() {
@@ -19,44 +42,42 @@ public class Building {
         return height;
     }
 
-    public boolean intersectsLine(Point3D start, Point3D end) {
-        // Check if line segment intersects with building
-        // This is a simplified implementation - you'll need to implement proper 3D line-building intersection
-        
-        // 1. Check if line intersects with any of the building's faces
-        // 2. Check if intersection point is within building height
-        
-        // For now, using a simple bounding box check
-        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
-        double maxX = Double.MIN_VALUE, maxY = Double.MIN_VALUE;
-        
-        for (Point3D vertex : vertices) {
-            minX = Math.min(minX, vertex.getX());
-            minY = Math.min(minY, vertex.getY());
-            maxX = Math.max(maxX, vertex.getX());
-            maxY = Math.max(maxY, vertex.getY());
-        }
+    public double getMinX() { return minX; }
+    public double getMinY() { return minY; }
+    public double getMinZ() { return minZ; }
+    public double getMaxX() { return maxX; }
+    public double getMaxY() { return maxY; }
+    public double getMaxZ() { return maxZ; }
 
-        // Check if line segment intersects with bounding box
-        return lineIntersectsBox(start, end, 
-            new Point3D(minX, minY, 0), 
-            new Point3D(maxX, maxY, height));
+    /**
+     * Whether the line segment from start to end passes through the building's bounding box.
+     * A cheap conservative test: false means the segment cannot touch the building.
+     */
+    public boolean intersectsLine(Point3D start, Point3D end) {
+        return lineIntersectsBox(
+            new double[] {start.getX(), start.getY(), start.getZ()},
+            new double[] {end.getX(), end.getY(), end.getZ()},
+            new double[] {minX, minY, minZ},
+            new double[] {maxX, maxY, maxZ});
     }
 
-    private boolean lineIntersectsBox(Point3D start, Point3D end, Point3D min, Point3D max) {
-        // Simplified check - you should implement a proper algorithm
-        double tmin = Double.NEGATIVE_INFINITY;
-        double tmax = Double.POSITIVE_INFINITY;
+    /**
+     * Slab test of the segment start + t * (end - start), 0 <= t <= 1, against the box, one axis at a time
+     */
+    private static boolean lineIntersectsBox(double[] start, double[] end, double[] min, double[] max) {
+        double tmin = 0.0;
+        double tmax = 1.0;
 
-        for (int i = 0; i < 3; i++) {
-            double d = end.getX() - start.getX();
-            if (Math.abs(d) < 1e-7) {
-                if (start.getX() < min.getX() || start.getX() > max.getX()) {
+        for (int axis = 0; axis < 3; axis++) {
+            double d = end[axis] - start[axis];
+            if (Math.abs(d) < 1e-12) {
+                // Parallel to this slab: inside it or never
+                if (start[axis] < min[axis] || start[axis] > max[axis]) {
                     return false;
                 }
             } else {
-                double t1 = (min.getX() - start.getX()) / d;
-                double t2 = (max.getX() - start.getX()) / d;
+                double t1 = (min[axis] - start[axis]) / d;
+                double t2 = (max[axis] - start[axis]) / d;
                 if (t1 > t2) {
                     double temp = t1;
                     t1 = t2;
@@ -0,0 +1,119 @@
+package com.gps.particlefilter.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable LOS/NLOS state of all satellites as a bit mask.
+ * Bit i is set when satellite i of the {@link SatelliteRegistry} is LOS.
+ * Matching two vectors is an XOR plus a popcount per 64 satellites.
+ */
+public final class LosVector {
+    private final SatelliteRegistry registry;
+    private final long[] words;
+
+    /**
+     * @param registry Satellite index mapping
+     * @param words LOS bits, registry.wordCount() words (not copied, must not be modified afterwards)
+     */
+    public LosVector(SatelliteRegistry registry, long[] words) {
+        this.registry = registry;
+        this.words = words;
+    }
+
+    /**
+     * Number of 64-bit words needed for the given satellite count
+     */
+    public static int wordCount(int satelliteCount) {
+        return Math.max(1, (satelliteCount + 63) >>> 6);
+    }
+
+    /**
+     * Mask of the bits in word w that belong to a satellite
+     */
+    public static long validMask(int satelliteCount, int w) {
+        int remaining = satelliteCount - (w << 6);
+        if (remaining >= 64) return -1L;
+        if (remaining <= 0) return 0L;
+        return (1L << remaining) - 1;
+    }
+
+    /**
+     * Number of satellites with the same LOS state in two masks of the same registry
+     */
+    public static int matchingCount(long[] a, int aOffset, long[] b, int bOffset, int wordCount, int satelliteCount) {
+        int count = 0;
+        for (int w = 0; w < wordCount; w++) {
+            count += Long.bitCount(~(a[aOffset + w] ^ b[bOffset + w]) & validMask(satelliteCount, w));
+        }
+        return count;
+    }
+
+    public SatelliteRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Number of satellites in this vector
+     */
+    public int size() {
+        return registry.size();
+    }
+
+    public boolean isLos(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public long getWord(int w) {
+        return words[w];
+    }
+
+    /**
+     * Copy the mask words into dst starting at offset
+     */
+    public void copyTo(long[] dst, int offset) {
+        System.arraycopy(words, 0, dst, offset, words.length);
+    }
+
+    public int getLosCount() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public int getNlosCount() {
+        return size() - getLosCount();
+    }
+
+    /**
+     * Number of satellites whose LOS state matches the other vector
+     */
+    public int matchingCount(LosVector other) {
+        if (registry == other.registry || registry.equals(other.registry)) {
+            return matchingCount(words, 0, other.words, 0, words.length, registry.size());
+        }
+
+        // Different satellite sets: match by name
+        int count = 0;
+        for (int i = 0; i < other.size(); i++) {
+            int index = registry.indexOf(other.registry.getName(i));
+            if (index >= 0 && isLos(index) == other.isLos(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Name-keyed view, in registry order
+     */
+    public Map<String, Boolean> toMap() {
+        Map<String, Boolean> map = new LinkedHashMap<>();
+        for (int i = 0; i < size(); i++) {
+            map.put(registry.getName(i), isLos(i));
+        }
+        return map;
+    }
+}
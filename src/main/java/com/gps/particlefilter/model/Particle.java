@@ -1,6 +1,6 @@
 package com.gps.particlefilter.model;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Random;
 
@@ -8,13 +8,12 @@ public class Particle {
     private Point3D position;
     private double weight;
     private double previousWeight; // For Bayesian weight function
-    private Map<String, Boolean> losStatus;
+    private LosVector losVector; // LOS bits per satellite, shared between resampled copies (immutable)
 
     public Particle(Point3D position) {
         this.position = position;
         this.weight = 1.0;
         this.previousWeight = 0.0; // Initialize previous weight
-        this.losStatus = new HashMap<>();
     }
 
     public Point3D getPosition() {
@@ -42,30 +41,43 @@ public class Particle {
     }
     
 
+    /**
+     * LOS status keyed by satellite name (built from the LOS vector, for reporting)
+     */
     public Map<String, Boolean> getLosStatus() {
-        return losStatus;
+        return losVector != null ? losVector.toMap() : Collections.emptyMap();
+    }
+
+    public LosVector getLosVector() {
+        return losVector;
+    }
+
+    public void setLosVector(LosVector losVector) {
+        this.losVector = losVector;
     }
 
-    public void setLosStatus(Map<String, Boolean> losStatus) {
-        this.losStatus = losStatus;
+    /**
+     * Number of satellites whose LOS state matches the reference (XOR + popcount)
+     */
+    public int matchingLosCount(LosVector reference) {
+        if (losVector == null) return 0;
+        return losVector.matchingCount(reference);
     }
 
     public int matchingLosCount(Map<String, Boolean> referenceStatus) {
+        if (losVector == null) return 0;
+        SatelliteRegistry registry = losVector.getRegistry();
         int count = 0;
-        int totalSatellites = 0;
         
         for (Map.Entry<String, Boolean> entry : referenceStatus.entrySet()) {
-            String satelliteId = entry.getKey();
-            totalSatellites++;
+            int index = registry.indexOf(entry.getKey());
             
             // Check if satellite's LOS state matches between particle and real state
-            if (losStatus.containsKey(satelliteId) && 
-                losStatus.get(satelliteId).equals(entry.getValue())) {
+            if (index >= 0 && losVector.isLos(index) == entry.getValue()) {
                 count++;
             }
         }
         
-        // Return match percentage
         return count;
     }
 
@@ -81,20 +93,9 @@ public class Particle {
      * Returns the count of satellites that are LOS and NLOS
      */
     public String getLosNlosCount() {
-        if (losStatus == null) return "No LOS status";
-        
-        int losCount = 0;
-        int nlosCount = 0;
-        
-        for (Boolean isLos : losStatus.values()) {
-            if (isLos) {
-                losCount++;
-            } else {
-                nlosCount++;
-            }
-        }
+        if (losVector == null) return "No LOS status";
         
-        return String.format("LOS: %d, NLOS: %d", losCount, nlosCount);
+        return String.format("LOS: %d, NLOS: %d", losVector.getLosCount(), losVector.getNlosCount());
     }
 
     /**
@@ -122,6 +123,6 @@ public class Particle {
         double newZ = position.getZ(); // Height remains constant
         
         // Update particle position
-        this.position = new Point3D(newX, newY, newZ);
+        setPosition(new Point3D(newX, newY, newZ));
     }
 }
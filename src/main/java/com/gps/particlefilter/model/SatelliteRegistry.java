@@ -0,0 +1,70 @@
+package com.gps.particlefilter.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps satellite names (e.g. "G07", "E29", "Satellite 1") to dense indices 0..N-1.
+ * The index is the bit position of the satellite in a {@link LosVector}.
+ * Satellites sharing a name share an index, like the keys of the old LOS map.
+ */
+public final class SatelliteRegistry {
+    private final String[] names;
+    private final Map<String, Integer> indices;
+    private final int hash;
+
+    public SatelliteRegistry(List<Satellite> satellites) {
+        List<String> uniqueNames = new ArrayList<>();
+        Map<String, Integer> map = new HashMap<>();
+        for (Satellite satellite : satellites) {
+            String name = satellite.getName();
+            if (!map.containsKey(name)) {
+                map.put(name, uniqueNames.size());
+                uniqueNames.add(name);
+            }
+        }
+        this.names = uniqueNames.toArray(new String[0]);
+        this.indices = Collections.unmodifiableMap(map);
+        this.hash = Arrays.hashCode(names);
+    }
+
+    /**
+     * @return dense index of the satellite, or -1 if unknown
+     */
+    public int indexOf(String name) {
+        Integer index = indices.get(name);
+        return index != null ? index : -1;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Number of 64-bit words needed for one LOS mask over this registry
+     */
+    public int wordCount() {
+        return LosVector.wordCount(names.length);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof SatelliteRegistry)) return false;
+        SatelliteRegistry that = (SatelliteRegistry) other;
+        return hash == that.hash && Arrays.equals(names, that.names);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
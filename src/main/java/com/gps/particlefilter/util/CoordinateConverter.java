@@ -1,25 +1,25 @@
 package com.gps.particlefilter.util;
 
 import com.gps.particlefilter.model.Point3D;
-import org.geotools.referencing.CRS;
-import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
-import org.geotools.api.referencing.operation.MathTransform;
-import org.geotools.api.referencing.operation.TransformException;
-import org.geotools.api.referencing.FactoryException;
 
 /**
  * Professional coordinate conversion utility using GeoTools library
  * Supports conversion between Geographic (WGS84) and UTM coordinate systems
+ * The projection is done by GeoTools or by a closed-form Krüger series (see ProjectionEngine)
  */
 public class CoordinateConverter {
     
-    // Coordinate Reference Systems
-    private CoordinateReferenceSystem wgs84;
-    private CoordinateReferenceSystem utmCrs;
+    /**
+     * Projection implementation
+     */
+    public enum ProjectionEngine {
+        GEOTOOLS,   // GeoTools EPSG transforms (loads the EPSG database on first use)
+        KRUGER      // Closed-form Krüger series, no GeoTools
+    }
     
-    // Math transforms for conversion
-    private MathTransform toUTM;
-    private MathTransform toWGS84;
+    // Projection for the current zone
+    private final ProjectionEngine engine;
+    private UtmProjection projection;
     
     // Default UTM zone and hemisphere (Israel: UTM Zone 36N)
     private int utmZone = 36;
@@ -29,11 +29,8 @@ public class CoordinateConverter {
      * Constructor initializes GeoTools coordinate reference systems
      */
     public CoordinateConverter() {
-        try {
-            initializeCoordinateSystems();
-        } catch (FactoryException e) {
-            throw new RuntimeException("Failed to initialize coordinate systems: " + e.getMessage(), e);
-        }
+        this.engine = ProjectionEngine.GEOTOOLS;
+        initializeCoordinateSystems();
     }
     
     /**
@@ -42,61 +39,54 @@ public class CoordinateConverter {
      * @param isNorthern true for northern hemisphere, false for southern
      */
     public CoordinateConverter(int utmZone, boolean isNorthern) {
+        this(utmZone, isNorthern, ProjectionEngine.GEOTOOLS);
+    }
+    
+    /**
+     * Constructor with custom UTM zone and projection engine
+     * @param utmZone UTM zone (1-60)
+     * @param isNorthern true for northern hemisphere, false for southern
+     * @param engine Projection implementation
+     */
+    public CoordinateConverter(int utmZone, boolean isNorthern, ProjectionEngine engine) {
         this.utmZone = utmZone;
         this.isNorthern = isNorthern;
-        try {
-            initializeCoordinateSystems();
-        } catch (FactoryException e) {
-            throw new RuntimeException("Failed to initialize coordinate systems: " + e.getMessage(), e);
-        }
+        this.engine = engine;
+        initializeCoordinateSystems();
     }
     
     /**
-     * Initialize coordinate reference systems and transformations using GeoTools
+     * Create the projection for the current zone and hemisphere
      */
-    private void initializeCoordinateSystems() throws FactoryException {
-        // WGS84 Geographic coordinate system (EPSG:4326)
-        wgs84 = CRS.decode("EPSG:4326");
-        
-        // UTM coordinate system (EPSG:326XX for northern, 327XX for southern hemisphere)
-        String utmEpsg;
-        if (isNorthern) {
-            utmEpsg = String.format("EPSG:326%02d", utmZone);
+    private void initializeCoordinateSystems() {
+        if (engine == ProjectionEngine.KRUGER) {
+            projection = new KrugerUtmProjection(utmZone, isNorthern);
         } else {
-            utmEpsg = String.format("EPSG:327%02d", utmZone);
+            // UTM coordinate system (EPSG:326XX for northern, 327XX for southern hemisphere)
+            projection = GeoToolsUtmProjection.create(getUtmEpsgCode());
         }
-        utmCrs = CRS.decode(utmEpsg);
-        
-        // Create transformation objects
-        toUTM = CRS.findMathTransform(wgs84, utmCrs, false);
-        toWGS84 = CRS.findMathTransform(utmCrs, wgs84, false);
     }
     
     /**
-     * Convert latitude/longitude to UTM coordinates using GeoTools
+     * Convert latitude/longitude to UTM coordinates with the configured projection engine
      * @param lat Latitude in decimal degrees
      * @param lon Longitude in decimal degrees  
      * @param alt Altitude in meters
      * @return Point3D with UTM easting (x), northing (y), and altitude (z) in meters
      */
     public Point3D latLonToUtm(double lat, double lon, double alt) {
-        try {
-            // Create coordinate array (note: GeoTools uses lon,lat order for geographic coordinates)
-            double[] geoCoord = new double[] {lon, lat};
-            double[] utmCoord = new double[2];
-            
-            // Transform coordinate
-            toUTM.transform(geoCoord, 0, utmCoord, 0, 1);
-            
-            return new Point3D(utmCoord[0], utmCoord[1], alt);
-            
-        } catch (TransformException e) {
-            throw new RuntimeException("Failed to convert lat/lon to UTM: " + e.getMessage(), e);
-        }
+        // Create coordinate array (note: GeoTools uses lon,lat order for geographic coordinates)
+        double[] geoCoord = new double[] {lon, lat};
+        double[] utmCoord = new double[2];
+        
+        // Transform coordinate
+        projection.toUtm(geoCoord, 0, utmCoord, 0, 1);
+        
+        return new Point3D(utmCoord[0], utmCoord[1], alt);
     }
     
     /**
-     * Convert UTM coordinates to latitude/longitude using GeoTools
+     * Convert UTM coordinates to latitude/longitude with the configured projection engine
      * @param easting Easting in meters (x)
      * @param northing Northing in meters (y) 
      * @param zone UTM zone (1-60)
@@ -105,27 +95,18 @@ public class CoordinateConverter {
      * @return Point3D with longitude (x), latitude (y), and altitude (z)
      */
     public Point3D utmToLatLon(double easting, double northing, int zone, boolean isNorthern, double alt) {
-        try {
-            // If zone or hemisphere differs from current, reinitialize
-            if (zone != this.utmZone || isNorthern != this.isNorthern) {
-                this.utmZone = zone;
-                this.isNorthern = isNorthern;
-                initializeCoordinateSystems();
-            }
-            
-            // Create UTM coordinate array
-            double[] utmCoord = new double[] {easting, northing};
-            double[] geoCoord = new double[2];
-            
-            // Transform coordinate
-            toWGS84.transform(utmCoord, 0, geoCoord, 0, 1);
-            
-            // Return as Point3D with longitude (x), latitude (y), altitude (z)
-            return new Point3D(geoCoord[0], geoCoord[1], alt);
-            
-        } catch (TransformException | FactoryException e) {
-            throw new RuntimeException("Failed to convert UTM to lat/lon: " + e.getMessage(), e);
-        }
+        // If zone or hemisphere differs from current, reinitialize
+        setUtmZone(zone, isNorthern);
+        
+        // Create UTM coordinate array
+        double[] utmCoord = new double[] {easting, northing};
+        double[] geoCoord = new double[2];
+        
+        // Transform coordinate
+        projection.toGeographic(utmCoord, 0, geoCoord, 0, 1);
+        
+        // Return as Point3D with longitude (x), latitude (y), altitude (z)
+        return new Point3D(geoCoord[0], geoCoord[1], alt);
     }
     
     /**
@@ -139,6 +120,41 @@ public class CoordinateConverter {
         return utmToLatLon(easting, northing, utmZone, isNorthern, alt);
     }
     
+    /**
+     * Convert a block of geographic coordinates to UTM in one call to the configured UtmProjection engine
+     * @param src n points as interleaved latitude, longitude pairs (EPSG:4326 axis order)
+     * @param dst Receives n interleaved easting (x), northing (y) pairs; may be the same array as src
+     * @param n Number of points
+     */
+    public void latLonToUtm(double[] src, double[] dst, int n) {
+        projection.toUtm(src, 0, dst, 0, n);
+    }
+    
+    /**
+     * Convert a block of UTM coordinates to lat/lon in one call to the configured UtmProjection engine
+     * @param src n points as interleaved easting (x), northing (y) pairs
+     * @param dst Receives n interleaved latitude, longitude pairs; may be the same array as src
+     * @param n Number of points
+     * @param zone UTM zone (1-60)
+     * @param isNorthern true if in northern hemisphere, false for southern
+     */
+    public void utmToLatLon(double[] src, double[] dst, int n, int zone, boolean isNorthern) {
+        // If zone or hemisphere differs from current, reinitialize
+        setUtmZone(zone, isNorthern);
+        
+        projection.toGeographic(src, 0, dst, 0, n);
+    }
+    
+    /**
+     * Convert a block of UTM coordinates to lat/lon using current zone/hemisphere
+     * @param src n points as interleaved easting (x), northing (y) pairs
+     * @param dst Receives n interleaved latitude, longitude pairs; may be the same array as src
+     * @param n Number of points
+     */
+    public void utmToLatLon(double[] src, double[] dst, int n) {
+        utmToLatLon(src, dst, n, utmZone, isNorthern);
+    }
+    
     /**
      * Convert a Point3D from lat/lon to UTM
      * @param geoPoint Point3D with longitude (x), latitude (y), and altitude (z)
@@ -193,14 +209,18 @@ public class CoordinateConverter {
         if (zone != this.utmZone || isNorthern != this.isNorthern) {
             this.utmZone = zone;
             this.isNorthern = isNorthern;
-            try {
-                initializeCoordinateSystems();
-            } catch (FactoryException e) {
-                throw new RuntimeException("Failed to update UTM zone: " + e.getMessage(), e);
-            }
+            initializeCoordinateSystems();
         }
     }
     
+    /**
+     * Get the projection implementation in use
+     * @return Projection engine
+     */
+    public ProjectionEngine getProjectionEngine() {
+        return engine;
+    }
+    
     /**
      * Get the EPSG code for the current UTM coordinate system
      * @return EPSG code as string (e.g., "EPSG:32636" for UTM 36N)
@@ -218,9 +238,10 @@ public class CoordinateConverter {
      * @return String description of coordinate systems
      */
     public String getCoordinateSystemInfo() {
-        return String.format("WGS84 (EPSG:4326) ↔ UTM Zone %d%s (%s)", 
+        return String.format("WGS84 (EPSG:4326) ↔ UTM Zone %d%s (%s, %s)", 
                            utmZone, 
                            isNorthern ? "N" : "S", 
-                           getUtmEpsgCode());
+                           getUtmEpsgCode(),
+                           engine);
     }
 }
\ No newline at end of file
@@ -23,8 +23,14 @@ public class CoordinateSystemManager {
         defaultUtmZone = parseUtmZoneFromEpsg(config.getCoordinatesTargetEpsg());
         isNorthernHemisphere = parseHemisphereFromEpsg(config.getCoordinatesTargetEpsg());
         
-        // Initialize converter with configured UTM zone
-        converter = new CoordinateConverter(defaultUtmZone, isNorthernHemisphere);
+        // Initialize converter with configured UTM zone and projection engine
+        CoordinateConverter.ProjectionEngine engine;
+        try {
+            engine = CoordinateConverter.ProjectionEngine.valueOf(config.getCoordinatesProjectionEngine().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            engine = CoordinateConverter.ProjectionEngine.GEOTOOLS;
+        }
+        converter = new CoordinateConverter(defaultUtmZone, isNorthernHemisphere, engine);
         
         System.out.println("Coordinate System initialized: " + converter.getCoordinateSystemInfo());
     }
@@ -140,6 +146,44 @@ public class CoordinateSystemManager {
         return converter.convertToUtm(point);
     }
     
+    /**
+     * Convert a block of geographic coordinates to the current coordinate system.
+     * Altitudes are not affected by the conversion and are kept by the caller.
+     * 
+     * Pairs are in CoordinateConverter's order: the first value of each pair is read as latitude and the
+     * second as longitude (EPSG:4326 axis order); without UTM they are copied unchanged.
+     * 
+     * @param src n points as interleaved latitude, longitude pairs
+     * @param dst Receives n interleaved x, y pairs in the current coordinate system; may be src
+     * @param n Number of points
+     */
+    public void convertFromGeographic(double[] src, double[] dst, int n) {
+        if (useUtm) {
+            converter.latLonToUtm(src, dst, n);
+        } else if (src != dst) {
+            System.arraycopy(src, 0, dst, 0, 2 * n);
+        }
+    }
+    
+    /**
+     * Convert a block of points from the current coordinate system to geographic coordinates.
+     * Altitudes are not affected by the conversion and are kept by the caller.
+     * 
+     * Pairs are in CoordinateConverter's order: the first value of each result pair is the latitude and
+     * the second the longitude (EPSG:4326 axis order); without UTM they are copied unchanged.
+     * 
+     * @param src n points as interleaved x, y pairs in the current coordinate system
+     * @param dst Receives n interleaved latitude, longitude pairs; may be src
+     * @param n Number of points
+     */
+    public void convertToGeographic(double[] src, double[] dst, int n) {
+        if (useUtm) {
+            converter.utmToLatLon(src, dst, n, defaultUtmZone, isNorthernHemisphere);
+        } else if (src != dst) {
+            System.arraycopy(src, 0, dst, 0, 2 * n);
+        }
+    }
+    
     /**
      * Get the underlying coordinate converter
      * 
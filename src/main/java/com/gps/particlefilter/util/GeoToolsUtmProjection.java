@@ -0,0 +1,52 @@
+package com.gps.particlefilter.util;
+
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.referencing.CRS;
+
+/**
+ * UTM projection through GeoTools EPSG:4326 and EPSG:326XX/327XX transforms.
+ * The only class that touches GeoTools, so the library is loaded only when this engine is used.
+ */
+class GeoToolsUtmProjection implements UtmProjection {
+    private final MathTransform toUTM;
+    private final MathTransform toWGS84;
+
+    private GeoToolsUtmProjection(String utmEpsg) throws FactoryException {
+        // WGS84 Geographic coordinate system (EPSG:4326)
+        CoordinateReferenceSystem wgs84 = CRS.decode("EPSG:4326");
+        CoordinateReferenceSystem utmCrs = CRS.decode(utmEpsg);
+
+        // Create transformation objects
+        toUTM = CRS.findMathTransform(wgs84, utmCrs, false);
+        toWGS84 = CRS.findMathTransform(utmCrs, wgs84, false);
+    }
+
+    static GeoToolsUtmProjection create(String utmEpsg) {
+        try {
+            return new GeoToolsUtmProjection(utmEpsg);
+        } catch (FactoryException e) {
+            throw new RuntimeException("Failed to initialize coordinate systems: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void toUtm(double[] src, int srcOffset, double[] dst, int dstOffset, int n) {
+        try {
+            toUTM.transform(src, srcOffset, dst, dstOffset, n);
+        } catch (TransformException e) {
+            throw new RuntimeException("Failed to convert lat/lon to UTM: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void toGeographic(double[] src, int srcOffset, double[] dst, int dstOffset, int n) {
+        try {
+            toWGS84.transform(src, srcOffset, dst, dstOffset, n);
+        } catch (TransformException e) {
+            throw new RuntimeException("Failed to convert UTM to lat/lon: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.gps.particlefilter.util;
+
+/**
+ * Closed-form UTM projection on the WGS84 ellipsoid using the Krüger series to sixth order
+ * in the third flattening, as given by Karney (2011), "Transverse Mercator with an accuracy
+ * of a few nanometers". Accurate to well below a millimeter within a UTM zone.
+ * Needs no EPSG database and allocates nothing per point.
+ */
+final class KrugerUtmProjection implements UtmProjection {
+    private static final double A = 6378137.0;              // WGS84 semi-major axis
+    private static final double F = 1.0 / 298.257223563;    // WGS84 flattening
+    private static final double K0 = 0.9996;                // UTM central scale factor
+    private static final double FALSE_EASTING = 500000.0;
+    private static final double FALSE_NORTHING_SOUTH = 10000000.0;
+    private static final int MAX_NEWTON_ITERATIONS = 5;
+    // Newton converges quadratically: one more step after this would be below double precision
+    private static final double NEWTON_TOLERANCE = 0.1 * Math.sqrt(Math.ulp(1.0));
+
+    private static final double E = Math.sqrt(F * (2 - F));  // Eccentricity
+    private static final double E2M = 1 - E * E;
+    private static final double RECTIFYING_SCALE;           // k0 * rectifying radius
+    private static final double[] ALPHA = new double[7];     // Forward series, 1-based
+    private static final double[] BETA = new double[7];      // Inverse series, 1-based
+
+    static {
+        double n = F / (2 - F);
+        double n2 = n * n, n3 = n2 * n, n4 = n3 * n, n5 = n4 * n, n6 = n5 * n;
+        RECTIFYING_SCALE = K0 * A / (1 + n) * (1 + n2 / 4 + n4 / 64 + n6 / 256);
+
+        ALPHA[1] = n / 2 - 2 * n2 / 3 + 5 * n3 / 16 + 41 * n4 / 180 - 127 * n5 / 288 + 7891 * n6 / 37800;
+        ALPHA[2] = 13 * n2 / 48 - 3 * n3 / 5 + 557 * n4 / 1440 + 281 * n5 / 630 - 1983433 * n6 / 1935360;
+        ALPHA[3] = 61 * n3 / 240 - 103 * n4 / 140 + 15061 * n5 / 26880 + 167603 * n6 / 181440;
+        ALPHA[4] = 49561 * n4 / 161280 - 179 * n5 / 168 + 6601661 * n6 / 7257600;
+        ALPHA[5] = 34729 * n5 / 80640 - 3418889 * n6 / 1995840;
+        ALPHA[6] = 212378941 * n6 / 319334400;
+
+        BETA[1] = n / 2 - 2 * n2 / 3 + 37 * n3 / 96 - n4 / 360 - 81 * n5 / 512 + 96199 * n6 / 604800;
+        BETA[2] = n2 / 48 + n3 / 15 - 437 * n4 / 1440 + 46 * n5 / 105 - 1118711 * n6 / 3870720;
+        BETA[3] = 17 * n3 / 480 - 37 * n4 / 840 - 209 * n5 / 4480 + 5569 * n6 / 90720;
+        BETA[4] = 4397 * n4 / 161280 - 11 * n5 / 504 - 830251 * n6 / 7257600;
+        BETA[5] = 4583 * n5 / 161280 - 108847 * n6 / 3991680;
+        BETA[6] = 20648693 * n6 / 638668800;
+    }
+
+    private final double centralMeridian; // Radians
+    private final double falseNorthing;
+
+    KrugerUtmProjection(int zone, boolean isNorthern) {
+        this.centralMeridian = Math.toRadians(6.0 * zone - 183.0);
+        this.falseNorthing = isNorthern ? 0.0 : FALSE_NORTHING_SOUTH;
+    }
+
+    @Override
+    public void toUtm(double[] src, int srcOffset, double[] dst, int dstOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            double phi = Math.toRadians(src[srcOffset + 2 * i]);
+            double lambda = Math.toRadians(src[srcOffset + 2 * i + 1]) - centralMeridian;
+
+            // Conformal latitude as tau' = tan(chi), from tau = tan(phi)
+            double sinPhi = Math.sin(phi), cosPhi = Math.cos(phi);
+            double taup = conformalTau(sinPhi / cosPhi, sinPhi, 1.0 / Math.abs(cosPhi));
+
+            // Gauss-Schreiber coordinates xi', eta'; the double angles come from
+            // sin(xi') = tau'/r, cos(xi') = cos(lambda)/r and sinh(eta') = sin(lambda)/r
+            double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+            double r2 = taup * taup + cosLambda * cosLambda;
+            double sinhEtap = sinLambda / Math.sqrt(r2);
+            double coshEtap = Math.sqrt(1 + sinhEtap * sinhEtap);
+            double xip = cosLambda > 0 ? Math.atan(taup / cosLambda) : Math.atan2(taup, cosLambda);
+            double etap = asinh(sinhEtap);
+            double s1 = 2 * taup * cosLambda / r2;
+            double c1 = (cosLambda * cosLambda - taup * taup) / r2;
+            double sh1 = 2 * sinhEtap * coshEtap;
+            double ch1 = 1 + 2 * sinhEtap * sinhEtap;
+
+            // xi + i*eta = xi' + i*eta' + sum alpha_j sin(2j (xi' + i*eta'))
+            double s = s1, c = c1, sh = sh1, ch = ch1;
+            double xi = xip, eta = etap;
+            for (int j = 1; j <= 6; j++) {
+                xi += ALPHA[j] * s * ch;
+                eta += ALPHA[j] * c * sh;
+                double nextS = s * c1 + c * s1;
+                c = c * c1 - s * s1;
+                s = nextS;
+                double nextSh = sh * ch1 + ch * sh1;
+                ch = ch * ch1 + sh * sh1;
+                sh = nextSh;
+            }
+
+            dst[dstOffset + 2 * i] = FALSE_EASTING + RECTIFYING_SCALE * eta;
+            dst[dstOffset + 2 * i + 1] = falseNorthing + RECTIFYING_SCALE * xi;
+        }
+    }
+
+    @Override
+    public void toGeographic(double[] src, int srcOffset, double[] dst, int dstOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            double eta = (src[srcOffset + 2 * i] - FALSE_EASTING) / RECTIFYING_SCALE;
+            double xi = (src[srcOffset + 2 * i + 1] - falseNorthing) / RECTIFYING_SCALE;
+
+            // xi' + i*eta' = xi + i*eta - sum beta_j sin(2j (xi + i*eta))
+            double s1 = Math.sin(2 * xi), c1 = Math.cos(2 * xi);
+            double exp2Eta = Math.exp(2 * eta);
+            double sh1 = 0.5 * (exp2Eta - 1 / exp2Eta), ch1 = 0.5 * (exp2Eta + 1 / exp2Eta);
+            double s = s1, c = c1, sh = sh1, ch = ch1;
+            double xip = xi, etap = eta;
+            for (int j = 1; j <= 6; j++) {
+                xip -= BETA[j] * s * ch;
+                etap -= BETA[j] * c * sh;
+                double nextS = s * c1 + c * s1;
+                c = c * c1 - s * s1;
+                s = nextS;
+                double nextSh = sh * ch1 + ch * sh1;
+                ch = ch * ch1 + sh * sh1;
+                sh = nextSh;
+            }
+
+            double expEtap = Math.exp(etap);
+            double sinhEtap = 0.5 * (expEtap - 1 / expEtap);
+            double sinXip = Math.sin(xip), cosXip = Math.cos(xip);
+            double taup = sinXip / Math.sqrt(sinhEtap * sinhEtap + cosXip * cosXip);
+            double lambda = cosXip > 0 ? Math.atan(sinhEtap / cosXip) : Math.atan2(sinhEtap, cosXip);
+
+            dst[dstOffset + 2 * i] = Math.toDegrees(Math.atan(geodeticTau(taup)));
+            dst[dstOffset + 2 * i + 1] = Math.toDegrees(centralMeridian + lambda);
+        }
+    }
+
+    /**
+     * tan of the conformal latitude
+     * @param tau tan of the geodetic latitude
+     * @param sinPhi tau / sqrt(1 + tau^2)
+     * @param secPhi sqrt(1 + tau^2)
+     */
+    private static double conformalTau(double tau, double sinPhi, double secPhi) {
+        double eSinPhi = E * sinPhi;
+        // sigma = sinh(e * atanh(e * sin(phi))) with q = exp(e * atanh(e * sin(phi)))
+        double q = Math.exp(0.5 * E * Math.log((1 + eSinPhi) / (1 - eSinPhi)));
+        double sigma = 0.5 * (q - 1 / q);
+        return 0.5 * (q + 1 / q) * tau - sigma * secPhi;
+    }
+
+    /**
+     * Inverse of conformalTau by Newton's method
+     */
+    private static double geodeticTau(double taup) {
+        double tau = taup / E2M;
+        for (int k = 0; k < MAX_NEWTON_ITERATIONS; k++) {
+            double secPhi = Math.sqrt(1 + tau * tau);
+            double taupa = conformalTau(tau, tau / secPhi, secPhi);
+            double dtau = (taup - taupa) * (1 + E2M * tau * tau)
+                / (E2M * secPhi * Math.sqrt(1 + taupa * taupa));
+            tau += dtau;
+            if (Math.abs(dtau) < NEWTON_TOLERANCE * Math.max(1.0, Math.abs(tau))) {
+                break;
+            }
+        }
+        return tau;
+    }
+
+    private static double asinh(double x) {
+        double y = Math.abs(x);
+        y = Math.log(y + Math.sqrt(1 + y * y));
+        return x < 0 ? -y : y;
+    }
+}
@@ -0,0 +1,144 @@
+package com.gps.particlefilter.util;
+
+import com.gps.particlefilter.config.Configuration;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs per-particle work on a dedicated ForkJoinPool.
+ * Work is split into fixed-size chunks of consecutive indices; chunk boundaries do not depend
+ * on the number of threads, and sums are reduced per chunk in chunk order, so results are
+ * identical with parallel processing on, off, or at any pool size.
+ */
+public class ParallelExecutor {
+    private static ParallelExecutor instance;
+
+    // Particles per chunk: large enough to amortize task overhead, small enough to balance load
+    public static final int CHUNK_SIZE = 64;
+
+    private final boolean enabled;
+    private final int parallelism;
+    private ForkJoinPool pool; // Created on first parallel use
+
+    /**
+     * Work on the index range [from, to)
+     */
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * Work on the index range [from, to) returning a partial sum
+     */
+    public interface RangeSum {
+        double sum(int from, int to);
+    }
+
+    private ParallelExecutor() {
+        Configuration config = Configuration.getInstance();
+        int configuredSize = config.getThreadPoolSize();
+        this.parallelism = configuredSize > 0 ? configuredSize : Runtime.getRuntime().availableProcessors();
+        this.enabled = config.isParallelProcessingEnabled() && parallelism > 1;
+
+        System.out.println("Parallel particle processing: " +
+            (enabled ? "enabled (" + parallelism + " threads)" : "disabled"));
+    }
+
+    /**
+     * Get the singleton instance of the parallel executor
+     *
+     * @return The parallel executor instance
+     */
+    public static synchronized ParallelExecutor getInstance() {
+        if (instance == null) {
+            instance = new ParallelExecutor();
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getParallelism() {
+        return enabled ? parallelism : 1;
+    }
+
+    /**
+     * Number of chunks for n items
+     */
+    public static int chunkCount(int n) {
+        return (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * Run the task over [0, n) in chunks, in parallel when enabled
+     */
+    public void forEach(int n, RangeTask task) {
+        int chunks = chunkCount(n);
+        if (!enabled || chunks <= 1) {
+            for (int c = 0; c < chunks; c++) {
+                task.run(c * CHUNK_SIZE, Math.min(n, (c + 1) * CHUNK_SIZE));
+            }
+            return;
+        }
+        getPool().invoke(new ChunkTask(0, chunks, n, task));
+    }
+
+    /**
+     * Run the task over [0, n) in chunks and return the sum of the partial results.
+     * Partial sums are added in chunk order, independent of scheduling.
+     */
+    public double sum(int n, RangeSum task) {
+        double[] partial = new double[chunkCount(n)];
+        forEach(n, (from, to) -> partial[from / CHUNK_SIZE] = task.sum(from, to));
+
+        double total = 0;
+        for (double value : partial) {
+            total += value;
+        }
+        return total;
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("particle-worker-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * Splits a range of chunk indices in halves until a single chunk remains
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstChunk;
+        private final int lastChunk; // Exclusive
+        private final int n;
+        private final RangeTask task;
+
+        ChunkTask(int firstChunk, int lastChunk, int n, RangeTask task) {
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.n = n;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk == 1) {
+                task.run(firstChunk * CHUNK_SIZE, Math.min(n, lastChunk * CHUNK_SIZE));
+                return;
+            }
+            int middle = (firstChunk + lastChunk) >>> 1;
+            invokeAll(new ChunkTask(firstChunk, middle, n, task), new ChunkTask(middle, lastChunk, n, task));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.gps.particlefilter.util;
+
+/**
+ * Projection between WGS84 geographic coordinates and one UTM zone, used by CoordinateConverter.
+ * Geographic pairs use the EPSG:4326 axis order as GeoTools decodes it (first value = latitude),
+ * so every engine interprets the converter's arrays the same way.
+ * Arrays hold interleaved pairs; src and dst may be the same array.
+ */
+interface UtmProjection {
+    /**
+     * Geographic pairs in degrees to easting, northing in meters
+     */
+    void toUtm(double[] src, int srcOffset, double[] dst, int dstOffset, int n);
+
+    /**
+     * Easting, northing pairs in meters to geographic pairs in degrees
+     */
+    void toGeographic(double[] src, int srcOffset, double[] dst, int dstOffset, int n);
+}
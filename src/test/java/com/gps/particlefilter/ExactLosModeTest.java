@@ -0,0 +1,373 @@
+package com.gps.particlefilter;
+
+import com.gps.particlefilter.model.*;
+import com.gps.particlefilter.los.LosCalculator;
+import com.gps.particlefilter.los.LosCalculator.GeometricMode;
+import com.gps.particlefilter.los.LosCalculator.SpatialIndex;
+import com.gps.particlefilter.los.LosCalculator.WallKernelMode;
+import com.gps.particlefilter.los.RegionClassification;
+import com.gps.particlefilter.io.BuildingKMLReader;
+import com.gps.particlefilter.util.CoordinateSystemManager;
+import com.gps.particlefilter.config.Configuration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks on the configured building model that
+ * <ul>
+ * <li>EXACT_ACCELERATED with horizon culling, on the wall grid, the wall BVH and the projected
+ * wall index, returns exactly the unculled BRUTE_FORCE answer, also through the satellite-major
+ * calculateLosMasks</li>
+ * <li>region pruning and wall culling over small particle clouds do not change any mask</li>
+ * <li>moving less than the shadow clearance never changes a position's mask</li>
+ * <li>SHADOW_RASTER returns exactly the BRUTE_FORCE answer</li>
+ * <li>the VECTOR wall kernel with horizon culling and bounding box rejection matches the plain
+ * SCALAR one (run with --add-modules jdk.incubator.vector to exercise it)</li>
+ * <li>the LOS cache returns the answer of the cell center on misses and hits</li>
+ * <li>SKYLINE answers do not change when a small memory budget forces cells to be evicted</li>
+ * </ul>
+ * and reports how often the legacy Ray-Shooting heuristic (DIAGNOSTIC mode) and the approximate
+ * SKYLINE mode disagree with the exact answer
+ */
+public class ExactLosModeTest {
+    private static final int POSITION_COUNT = 2000;
+    private static final int SATELLITE_COUNT = 40;
+    private static final double CACHE_CELL_SIZE = 0.25;
+    private static final int REGION_COUNT = 300;
+    private static final int CLEARANCE_COUNT = 5000;
+
+    public static void main(String[] args) {
+        Configuration config = Configuration.getInstance();
+        CoordinateSystemManager coordManager = CoordinateSystemManager.getInstance();
+        coordManager.setDefaultUtmZone(36, true);
+        coordManager.setUseUtm(true);
+
+        List<Building> buildings = new BuildingKMLReader().readBuildings(config.getInputBuildingsKml());
+        if (buildings.isEmpty()) {
+            System.out.println("FAILED: no buildings read from " + config.getInputBuildingsKml());
+            System.exit(1);
+        }
+
+        // Fixed seed so failures can be reproduced
+        Random random = new Random(42);
+        List<Satellite> satellites = new ArrayList<>();
+        for (int i = 0; i < SATELLITE_COUNT; i++) {
+            double azimuth = random.nextDouble() * 360.0 - 180.0;
+            double elevation = 1.0 + random.nextDouble() * 88.0;
+            satellites.add(new Satellite("S" + i, null, azimuth, elevation, 45.0));
+        }
+
+        // Sample positions over the building area plus a margin
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (Building building : buildings) {
+            for (Point3D vertex : building.getVertices()) {
+                minX = Math.min(minX, vertex.getX());
+                maxX = Math.max(maxX, vertex.getX());
+                minY = Math.min(minY, vertex.getY());
+                maxY = Math.max(maxY, vertex.getY());
+            }
+        }
+        double margin = 50.0;
+
+        LosCalculator bruteForce = createCalculator(buildings, satellites, GeometricMode.BRUTE_FORCE);
+        bruteForce.setWallKernelMode(WallKernelMode.SCALAR);
+        bruteForce.setHorizonCullingEnabled(false);
+        bruteForce.setBoxRejectionEnabled(false);
+        LosCalculator vectorBruteForce = createCalculator(buildings, satellites, GeometricMode.BRUTE_FORCE);
+        vectorBruteForce.setWallKernelMode(WallKernelMode.VECTOR);
+        vectorBruteForce.setHorizonCullingEnabled(true);
+        vectorBruteForce.setBoxRejectionEnabled(true);
+        LosCalculator accelerated = createCalculator(buildings, satellites, GeometricMode.EXACT_ACCELERATED);
+        accelerated.setHorizonCullingEnabled(true);
+        accelerated.setSpatialIndex(SpatialIndex.GRID);
+        LosCalculator acceleratedBvh = createCalculator(buildings, satellites, GeometricMode.EXACT_ACCELERATED);
+        acceleratedBvh.setHorizonCullingEnabled(true);
+        acceleratedBvh.setSpatialIndex(SpatialIndex.BVH);
+        LosCalculator acceleratedProjected = createCalculator(buildings, satellites, GeometricMode.EXACT_ACCELERATED);
+        acceleratedProjected.setHorizonCullingEnabled(true);
+        acceleratedProjected.setSpatialIndex(SpatialIndex.PROJECTED);
+        LosCalculator raster = createCalculator(buildings, satellites, GeometricMode.SHADOW_RASTER);
+        LosCalculator skyline = createCalculator(buildings, satellites, GeometricMode.SKYLINE);
+        LosCalculator diagnostic = createCalculator(buildings, satellites, GeometricMode.DIAGNOSTIC);
+        LosCalculator cached = createCalculator(buildings, satellites, GeometricMode.EXACT_ACCELERATED);
+        cached.setLosCache(CACHE_CELL_SIZE, 1);
+
+        int mismatches = 0;
+        int bvhMismatches = 0;
+        int projectedMismatches = 0;
+        int rasterMismatches = 0;
+        int kernelMismatches = 0;
+        int skylineDisagreements = 0;
+        int cacheMismatches = 0;
+        int nlosCount = 0;
+        int total = 0;
+        double[] xs = new double[POSITION_COUNT], ys = new double[POSITION_COUNT], zs = new double[POSITION_COUNT];
+        long[][] expectedMasks = new long[POSITION_COUNT][];
+        for (int i = 0; i < POSITION_COUNT; i++) {
+            double x = minX - margin + random.nextDouble() * (maxX - minX + 2 * margin);
+            double y = minY - margin + random.nextDouble() * (maxY - minY + 2 * margin);
+            double z = random.nextDouble() < 0.8 ? 1.8 : random.nextDouble() * 100.0;
+            Point3D position = new Point3D(x, y, z);
+
+            Map<String, Boolean> expected = bruteForce.calculateLOS(position);
+            Map<String, Boolean> actual = accelerated.calculateLOS(position);
+            Map<String, Boolean> bvhResult = acceleratedBvh.calculateLOS(position);
+            Map<String, Boolean> projectedResult = acceleratedProjected.calculateLOS(position);
+            xs[i] = x;
+            ys[i] = y;
+            zs[i] = z;
+            expectedMasks[i] = new long[bruteForce.getSatelliteRegistry().wordCount()];
+            bruteForce.calculateLosMask(x, y, z, expectedMasks[i], 0);
+            Map<String, Boolean> rasterResult = raster.calculateLOS(position);
+            Map<String, Boolean> vectorResult = vectorBruteForce.calculateLOS(position);
+            Map<String, Boolean> skylineResult = skyline.calculateLOS(position);
+            diagnostic.calculateLOS(position);
+
+            // Miss, then hit: both must be the answer at the center of the position's cell
+            Point3D cellCenter = new Point3D((Math.floor(x / CACHE_CELL_SIZE) + 0.5) * CACHE_CELL_SIZE,
+                (Math.floor(y / CACHE_CELL_SIZE) + 0.5) * CACHE_CELL_SIZE, z);
+            Map<String, Boolean> cellExpected = bruteForce.calculateLOS(cellCenter);
+            if (!cellExpected.equals(cached.calculateLOS(position)) || !cellExpected.equals(cached.calculateLOS(position))) {
+                cacheMismatches++;
+            }
+
+            if (!expected.equals(vectorResult)) {
+                kernelMismatches++;
+            }
+            for (Satellite satellite : satellites) {
+                double scalarDeltaH = bruteForce.computeMaxBlockingDeltaH(position, satellite);
+                double vectorDeltaH = vectorBruteForce.computeMaxBlockingDeltaH(position, satellite);
+                if (Double.doubleToLongBits(scalarDeltaH) != Double.doubleToLongBits(vectorDeltaH)) {
+                    kernelMismatches++;
+                    if (kernelMismatches <= 10) {
+                        System.out.println("Max deltaH mismatch at " + position + " for " + satellite.getName() +
+                            ": scalar=" + scalarDeltaH + ", " + vectorBruteForce.getWallKernelName() + "=" + vectorDeltaH);
+                    }
+                }
+            }
+
+            for (Map.Entry<String, Boolean> entry : expected.entrySet()) {
+                total++;
+                if (!entry.getValue()) {
+                    nlosCount++;
+                }
+                if (!entry.getValue().equals(bvhResult.get(entry.getKey()))) {
+                    bvhMismatches++;
+                    if (bvhMismatches <= 10) {
+                        System.out.println("BVH mismatch at " + position + " for " + entry.getKey() +
+                            ": brute force=" + entry.getValue() + ", BVH=" + bvhResult.get(entry.getKey()));
+                    }
+                }
+                if (!entry.getValue().equals(projectedResult.get(entry.getKey()))) {
+                    projectedMismatches++;
+                    if (projectedMismatches <= 10) {
+                        System.out.println("Projected index mismatch at " + position + " for " + entry.getKey() +
+                            ": brute force=" + entry.getValue() + ", projected=" + projectedResult.get(entry.getKey()));
+                    }
+                }
+                if (!entry.getValue().equals(rasterResult.get(entry.getKey()))) {
+                    rasterMismatches++;
+                    if (rasterMismatches <= 10) {
+                        System.out.println("Shadow raster mismatch at " + position + " for " + entry.getKey() +
+                            ": brute force=" + entry.getValue() + ", raster=" + rasterResult.get(entry.getKey()));
+                    }
+                }
+                if (!entry.getValue().equals(skylineResult.get(entry.getKey()))) {
+                    skylineDisagreements++;
+                }
+                if (!entry.getValue().equals(actual.get(entry.getKey()))) {
+                    mismatches++;
+                    if (mismatches <= 10) {
+                        System.out.println("Mismatch at " + position + " for " + entry.getKey() +
+                            ": brute force=" + entry.getValue() + ", accelerated=" + actual.get(entry.getKey()));
+                    }
+                }
+            }
+        }
+
+        // Satellite-major batch over every other position must match the per-position masks
+        int words = acceleratedProjected.getSatelliteRegistry().wordCount();
+        int[] indices = new int[POSITION_COUNT / 2];
+        for (int k = 0; k < indices.length; k++) {
+            indices[k] = 2 * k + 1;
+        }
+        long[] batch = new long[POSITION_COUNT * words];
+        acceleratedProjected.calculateLosMasks(xs, ys, zs, indices, indices.length, batch);
+        int batchMismatches = 0;
+        for (int i : indices) {
+            for (int w = 0; w < words; w++) {
+                if (batch[i * words + w] != expectedMasks[i][w]) {
+                    batchMismatches++;
+                }
+            }
+        }
+
+        // Region pruning and wall culling: small particle clouds, classified as a whole, must give the
+        // per-position masks (projected index with both, shadow raster with both, wall culling alone)
+        LosCalculator cullingOnly = createCalculator(buildings, satellites, GeometricMode.EXACT_ACCELERATED);
+        cullingOnly.setRegionPruningEnabled(false);
+        cullingOnly.setRegionWallCullingEnabled(true);
+        LosCalculator[] regionCalculators = {acceleratedProjected, raster, cullingOnly};
+        int regionMismatches = 0;
+        int allLosSatellites = 0;
+        int allNlosSatellites = 0;
+        int regionSatellites = 0;
+        long activeWalls = 0;
+        int activeLists = 0;
+        int cloudSize = 50;
+        double[] cx = new double[cloudSize], cy = new double[cloudSize], cz = new double[cloudSize];
+        int[] cloudIndices = new int[cloudSize];
+        long[] cloudMasks = new long[cloudSize * words];
+        long[] expectedMask = new long[words];
+        for (int cloud = 0; cloud < REGION_COUNT; cloud++) {
+            double centerX = minX - margin + random.nextDouble() * (maxX - minX + 2 * margin);
+            double centerY = minY - margin + random.nextDouble() * (maxY - minY + 2 * margin);
+            double extent = cloud % 3 == 0 ? 1.0 : cloud % 3 == 1 ? 5.0 : 20.0;
+            double cMinX = Double.MAX_VALUE, cMinY = Double.MAX_VALUE, cMinZ = Double.MAX_VALUE;
+            double cMaxX = -Double.MAX_VALUE, cMaxY = -Double.MAX_VALUE, cMaxZ = -Double.MAX_VALUE;
+            for (int k = 0; k < cloudSize; k++) {
+                cx[k] = centerX + (random.nextDouble() - 0.5) * extent;
+                cy[k] = centerY + (random.nextDouble() - 0.5) * extent;
+                cz[k] = cloud % 2 == 0 ? 1.8 : 1.8 + random.nextDouble() * 5.0;
+                cloudIndices[k] = k;
+                cMinX = Math.min(cMinX, cx[k]);
+                cMaxX = Math.max(cMaxX, cx[k]);
+                cMinY = Math.min(cMinY, cy[k]);
+                cMaxY = Math.max(cMaxY, cy[k]);
+                cMinZ = Math.min(cMinZ, cz[k]);
+                cMaxZ = Math.max(cMaxZ, cz[k]);
+            }
+            RegionClassification region = acceleratedProjected.classifySatellites(cMinX, cMinY, cMinZ, cMaxX, cMaxY, cMaxZ);
+            for (int s = 0; s < region.getSatelliteCount(); s++) {
+                regionSatellites++;
+                if (region.get(s) == LosCalculator.RegionLos.ALL_LOS) {
+                    allLosSatellites++;
+                } else if (region.get(s) == LosCalculator.RegionLos.ALL_NLOS) {
+                    allNlosSatellites++;
+                } else if (region.getActiveWallCount(s) >= 0) {
+                    activeWalls += region.getActiveWallCount(s);
+                    activeLists++;
+                }
+            }
+            for (LosCalculator calculator : regionCalculators) {
+                RegionClassification classification = calculator == acceleratedProjected ? region
+                    : calculator.classifySatellites(cMinX, cMinY, cMinZ, cMaxX, cMaxY, cMaxZ);
+                calculator.calculateLosMasks(cx, cy, cz, cloudIndices, cloudSize, cloudMasks, classification);
+                for (int k = 0; k < cloudSize; k++) {
+                    bruteForce.calculateLosMask(cx[k], cy[k], cz[k], expectedMask, 0);
+                    for (int w = 0; w < words; w++) {
+                        if (cloudMasks[k * words + w] != expectedMask[w]) {
+                            regionMismatches++;
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println("\n=== EXACT LOS MODE TEST ===");
+        System.out.println("Buildings: " + buildings.size() + ", satellites: " + SATELLITE_COUNT + ", positions: " + POSITION_COUNT);
+        System.out.println("Queries: " + total + " (" + nlosCount + " NLOS)");
+        System.out.println("EXACT_ACCELERATED mismatches: " + mismatches);
+        System.out.println("EXACT_ACCELERATED (BVH) mismatches: " + bvhMismatches);
+        System.out.println("EXACT_ACCELERATED (PROJECTED) mismatches: " + projectedMismatches);
+        System.out.println("calculateLosMasks (satellite-major) mismatches: " + batchMismatches);
+        System.out.printf("Region pruning/wall culling mismatches: %d (of %d satellite classifications: %d all LOS, " +
+            "%d all NLOS, %.1f active walls of %d on average for the rest)%n", regionMismatches, regionSatellites,
+            allLosSatellites, allNlosSatellites, activeLists > 0 ? (double) activeWalls / activeLists : 0.0,
+            acceleratedProjected.getWallCount());
+        boolean skylineBudgetPassed = checkSkylineBudget(buildings, satellites, xs, ys, zs);
+        boolean clearancePassed = checkShadowClearance(acceleratedProjected, bruteForce, random,
+            minX - margin, minY - margin, maxX + margin, maxY + margin, config.getLosRasterHeight());
+        System.out.println("SHADOW_RASTER mismatches: " + rasterMismatches);
+        System.out.println(vectorBruteForce.getWallKernelName() + " vs SCALAR kernel mismatches: " + kernelMismatches);
+        System.out.println("LOS cache vs cell center mismatches: " + cacheMismatches + " (" + cached.getLosCacheSummary() + ")");
+        System.out.println(diagnostic.getDiagnosticSummary());
+        System.out.printf("SKYLINE disagreements (approximate mode): %d (%.3f%%), %d skyline cells%n",
+            skylineDisagreements, total > 0 ? 100.0 * skylineDisagreements / total : 0.0, skyline.getSkylineCellCount());
+        boolean passed = mismatches == 0 && bvhMismatches == 0 && projectedMismatches == 0 && batchMismatches == 0
+            && regionMismatches == 0 && clearancePassed && skylineBudgetPassed && rasterMismatches == 0 && kernelMismatches == 0 && cacheMismatches == 0;
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.out.println("=== END TEST ===\n");
+
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Moving less than the shadow clearance from a position at the field height keeps its mask
+     * @param calculator Calculator whose shadow clearance is checked
+     * @param reference Exact unculled calculator giving the masks
+     */
+    private static boolean checkShadowClearance(LosCalculator calculator, LosCalculator reference, Random random,
+                                                double minX, double minY, double maxX, double maxY, double fieldHeight) {
+        int words = reference.getSatelliteRegistry().wordCount();
+        int clearanceMismatches = 0;
+        int clearPositions = 0;
+        double clearanceSum = 0;
+        long[] expectedMask = new long[words];
+        long[] movedMask = new long[words];
+        for (int i = 0; i < CLEARANCE_COUNT; i++) {
+            double x = minX + random.nextDouble() * (maxX - minX);
+            double y = minY + random.nextDouble() * (maxY - minY);
+            double clearance = calculator.getShadowClearance(x, y, fieldHeight);
+            if (clearance <= 0) {
+                continue;
+            }
+            clearPositions++;
+            clearanceSum += clearance;
+            reference.calculateLosMask(x, y, fieldHeight, expectedMask, 0);
+            for (int move = 0; move < 4; move++) {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double distance = move == 0 ? Math.nextDown(clearance) : random.nextDouble() * clearance;
+                reference.calculateLosMask(x + distance * Math.sin(angle), y + distance * Math.cos(angle),
+                    fieldHeight, movedMask, 0);
+                for (int w = 0; w < words; w++) {
+                    if (movedMask[w] != expectedMask[w]) {
+                        clearanceMismatches++;
+                    }
+                }
+            }
+        }
+        System.out.printf("Shadow clearance mismatches: %d (%d of %d positions clear, %.2f m on average)%n",
+            clearanceMismatches, clearPositions, CLEARANCE_COUNT, clearPositions > 0 ? clearanceSum / clearPositions : 0.0);
+        return clearanceMismatches == 0;
+    }
+
+    /**
+     * SKYLINE with a budget of a few hundred cells must answer exactly as with the default budget
+     */
+    private static boolean checkSkylineBudget(List<Building> buildings, List<Satellite> satellites,
+                                              double[] xs, double[] ys, double[] zs) {
+        LosCalculator unbounded = createCalculator(buildings, satellites, GeometricMode.SKYLINE);
+        LosCalculator bounded = createCalculator(buildings, satellites, GeometricMode.SKYLINE);
+        bounded.setSkylineMemoryMb(1);
+        int words = unbounded.getSatelliteRegistry().wordCount();
+        long[] expected = new long[words];
+        long[] actual = new long[words];
+        int mismatches = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < xs.length; i++) {
+                unbounded.calculateLosMask(xs[i], ys[i], zs[i], expected, 0);
+                bounded.calculateLosMask(xs[i], ys[i], zs[i], actual, 0);
+                for (int w = 0; w < words; w++) {
+                    if (actual[w] != expected[w]) {
+                        mismatches++;
+                    }
+                }
+            }
+        }
+        System.out.println("SKYLINE with a 1 MB cell budget mismatches: " + mismatches + " (" + bounded.getSkylineSummary() + ")");
+        return mismatches == 0;
+    }
+
+    private static LosCalculator createCalculator(List<Building> buildings, List<Satellite> satellites, GeometricMode mode) {
+        LosCalculator calculator = new LosCalculator(buildings, satellites);
+        calculator.setClassificationMode(LosCalculator.ClassificationMode.GEOMETRIC_ONLY);
+        calculator.setGeometricMode(mode);
+        return calculator;
+    }
+}
@@ -0,0 +1,83 @@
+package com.gps.particlefilter;
+
+import com.gps.particlefilter.util.CoordinateConverter;
+import com.gps.particlefilter.util.CoordinateConverter.ProjectionEngine;
+
+/**
+ * Checks the closed-form KRUGER projection engine against GeoTools:
+ * forward and inverse results must agree, and KRUGER must round-trip,
+ * to well under a millimeter over a UTM zone
+ */
+public class UtmProjectionTest {
+    private static final double TOLERANCE = 1e-4; // 0.1 mm
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    public static void main(String[] args) {
+        boolean passed = checkZone(36, true) & checkZone(36, false) & checkZone(11, true);
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean checkZone(int zone, boolean isNorthern) {
+        CoordinateConverter geoTools = new CoordinateConverter(zone, isNorthern, ProjectionEngine.GEOTOOLS);
+        CoordinateConverter kruger = new CoordinateConverter(zone, isNorthern, ProjectionEngine.KRUGER);
+
+        // Pairs are in the converter's array order; GeoTools takes the first value as latitude
+        double centralMeridian = 6.0 * zone - 183.0;
+        double minLatitude = isNorthern ? 0.0 : -80.0;
+        double maxLatitude = isNorthern ? 84.0 : 0.0;
+        int latitudeSteps = 169, longitudeSteps = 61;
+        int n = latitudeSteps * longitudeSteps;
+        double[] geographic = new double[2 * n];
+        int k = 0;
+        for (int i = 0; i < latitudeSteps; i++) {
+            for (int j = 0; j < longitudeSteps; j++) {
+                geographic[k++] = minLatitude + (maxLatitude - minLatitude) * i / (latitudeSteps - 1);
+                geographic[k++] = centralMeridian - 3.0 + 6.0 * j / (longitudeSteps - 1);
+            }
+        }
+
+        // Forward: meters
+        double[] utmGeoTools = new double[2 * n];
+        double[] utmKruger = new double[2 * n];
+        geoTools.latLonToUtm(geographic, utmGeoTools, n);
+        kruger.latLonToUtm(geographic, utmKruger, n);
+        double forwardError = maxDistance(utmGeoTools, utmKruger, n, 1.0, null);
+
+        // Inverse of the GeoTools grid: degrees, compared in meters on the ground
+        double[] backGeoTools = new double[2 * n];
+        double[] backKruger = new double[2 * n];
+        geoTools.utmToLatLon(utmGeoTools, backGeoTools, n);
+        kruger.utmToLatLon(utmGeoTools, backKruger, n);
+        double inverseError = maxDistance(backGeoTools, backKruger, n, METERS_PER_DEGREE, backGeoTools);
+
+        // KRUGER round trip geographic -> UTM -> geographic
+        double[] roundTrip = new double[2 * n];
+        kruger.utmToLatLon(utmKruger, roundTrip, n);
+        double roundTripError = maxDistance(geographic, roundTrip, n, METERS_PER_DEGREE, geographic);
+
+        boolean passed = forwardError < TOLERANCE && inverseError < TOLERANCE && roundTripError < TOLERANCE;
+        System.out.printf("Zone %d%s (%d points): forward %.3e m, inverse %.3e m, round trip %.3e m - %s%n",
+            zone, isNorthern ? "N" : "S", n, forwardError, inverseError, roundTripError, passed ? "OK" : "TOO LARGE");
+        return passed;
+    }
+
+    /**
+     * Largest distance between corresponding pairs; for geographic pairs (latitude first)
+     * the second value is scaled by cos(latitude)
+     */
+    private static double maxDistance(double[] a, double[] b, int n, double scale, double[] latitudes) {
+        double max = 0;
+        for (int i = 0; i < n; i++) {
+            double d0 = (a[2 * i] - b[2 * i]) * scale;
+            double d1 = (a[2 * i + 1] - b[2 * i + 1]) * scale;
+            if (latitudes != null) {
+                d1 *= Math.cos(Math.toRadians(latitudes[2 * i]));
+            }
+            max = Math.max(max, Math.sqrt(d0 * d0 + d1 * d1));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,128 @@
+package com.gps.particlefilter.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Minimal JMH-style measurement harness for the console benchmarks.
+ * Each benchmark runs timed warmup iterations, then timed measurement iterations,
+ * and reports the mean time per operation with its standard deviation.
+ * Program output printed during a run is suppressed so it does not distort timings.
+ *
+ * System properties:
+ *   bench.warmup      warmup iterations (default 3)
+ *   bench.iterations  measurement iterations (default 5)
+ *   bench.time        milliseconds per iteration (default 1000)
+ */
+final class Bench {
+    static final PrintStream OUT = System.out;
+    private static final PrintStream NULL = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private static final int WARMUP = Integer.getInteger("bench.warmup", 3);
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+    private static final long ITERATION_NANOS = Long.getLong("bench.time", 1000L) * 1_000_000L;
+
+    // Consumes results so the JIT cannot drop the measured work
+    private static volatile long blackhole;
+
+    /**
+     * One benchmark operation; the returned value is consumed
+     */
+    interface Operation {
+        long run();
+    }
+
+    private Bench() {
+    }
+
+    static void header(String title) {
+        OUT.println();
+        OUT.println("=== " + title + " ===");
+        OUT.printf(Locale.ROOT, "%-56s %-24s %14s %12s %14s%n", "Benchmark", "Params", "ns/op", "+- (sd)", "ops/s");
+    }
+
+    /**
+     * Measure an operation and print one result line
+     * @return Mean nanoseconds per operation
+     */
+    static double measure(String name, String params, Operation operation) {
+        System.setOut(NULL);
+        double[] nanosPerOp = new double[ITERATIONS];
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                iteration(operation);
+            }
+            for (int i = 0; i < ITERATIONS; i++) {
+                nanosPerOp[i] = iteration(operation);
+            }
+        } finally {
+            System.setOut(OUT);
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value;
+        }
+        mean /= ITERATIONS;
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean);
+        }
+        double sd = ITERATIONS > 1 ? Math.sqrt(variance / (ITERATIONS - 1)) : 0;
+
+        OUT.printf(Locale.ROOT, "%-56s %-24s %14.1f %12.1f %14.1f%n", name, params, mean, sd, 1e9 / mean);
+        return mean;
+    }
+
+    /**
+     * Run the operation until the iteration time is used up
+     * @return Nanoseconds per operation
+     */
+    private static double iteration(Operation operation) {
+        long ops = 0;
+        long accumulator = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            accumulator += operation.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        blackhole += accumulator;
+        return (double) elapsed / ops;
+    }
+
+    /**
+     * Run setup code with its console output suppressed
+     */
+    static <T> T quietly(Supplier<T> setup) {
+        System.setOut(NULL);
+        try {
+            return setup.get();
+        } finally {
+            System.setOut(OUT);
+        }
+    }
+
+    /**
+     * Comma separated integer list from a system property
+     */
+    static int[] intList(String property, String defaultValue) {
+        String[] parts = System.getProperty(property, defaultValue).split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,88 @@
+package com.gps.particlefilter.benchmark;
+
+import com.gps.particlefilter.io.BuildingKMLReader;
+import com.gps.particlefilter.io.SatelliteKMLReader;
+import com.gps.particlefilter.model.Building;
+import com.gps.particlefilter.model.Point3D;
+import com.gps.particlefilter.model.Satellite;
+import com.gps.particlefilter.util.CoordinateSystemManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Building and satellite sets for the benchmarks, read once from the data files.
+ *
+ * System properties:
+ *   bench.buildings.file   building KML (default data/building3d.kml)
+ *   bench.satellites.file  satellite KML (default data/satellites.kml)
+ */
+final class BenchmarkData {
+    final List<Building> buildings;
+    final List<Satellite> satellites;
+    final double minX, minY, maxX, maxY; // Building area
+
+    BenchmarkData() {
+        CoordinateSystemManager coordManager = Bench.quietly(CoordinateSystemManager::getInstance);
+        coordManager.setDefaultUtmZone(36, true);
+        coordManager.setUseUtm(true);
+
+        String buildingsFile = System.getProperty("bench.buildings.file", "data/building3d.kml");
+        String satellitesFile = System.getProperty("bench.satellites.file", "data/satellites.kml");
+        buildings = Bench.quietly(() -> new BuildingKMLReader().readBuildings(buildingsFile));
+        satellites = Bench.quietly(() -> new SatelliteKMLReader().readSatellites(satellitesFile));
+        if (buildings.isEmpty() || satellites.isEmpty()) {
+            throw new IllegalStateException("No buildings or satellites read from " + buildingsFile + " / " + satellitesFile);
+        }
+
+        double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+        for (Building building : buildings) {
+            for (Point3D vertex : building.getVertices()) {
+                x0 = Math.min(x0, vertex.getX());
+                y0 = Math.min(y0, vertex.getY());
+                x1 = Math.max(x1, vertex.getX());
+                y1 = Math.max(y1, vertex.getY());
+            }
+        }
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+
+        Bench.OUT.printf("Benchmark data: %d buildings from %s, %d satellites from %s%n",
+            buildings.size(), buildingsFile, satellites.size(), satellitesFile);
+    }
+
+    /**
+     * First count buildings (0 or more than available = all)
+     */
+    List<Building> buildings(int count) {
+        return new ArrayList<>(buildings.subList(0, count <= 0 ? buildings.size() : Math.min(count, buildings.size())));
+    }
+
+    /**
+     * First count satellites (0 or more than available = all)
+     */
+    List<Satellite> satellites(int count) {
+        return new ArrayList<>(satellites.subList(0, count <= 0 ? satellites.size() : Math.min(count, satellites.size())));
+    }
+
+    /**
+     * Receiver positions 1.8 m above ground over the building area plus a margin (fixed seed)
+     */
+    Point3D[] positions(int count, long seed) {
+        Random random = new Random(seed);
+        double margin = 30.0;
+        Point3D[] positions = new Point3D[count];
+        for (int i = 0; i < count; i++) {
+            double x = minX - margin + random.nextDouble() * (maxX - minX + 2 * margin);
+            double y = minY - margin + random.nextDouble() * (maxY - minY + 2 * margin);
+            positions[i] = new Point3D(x, y, 1.8);
+        }
+        return positions;
+    }
+
+    Point3D center() {
+        return new Point3D((minX + maxX) / 2, (minY + maxY) / 2, 1.8);
+    }
+}
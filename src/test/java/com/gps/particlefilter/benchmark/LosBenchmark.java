@@ -0,0 +1,209 @@
+package com.gps.particlefilter.benchmark;
+
+import com.gps.particlefilter.los.LosCalculator;
+import com.gps.particlefilter.los.LosCalculator.ClassificationMode;
+import com.gps.particlefilter.los.LosCalculator.GeometricMode;
+import com.gps.particlefilter.los.LosCalculator.SpatialIndex;
+import com.gps.particlefilter.los.LosCalculator.WallKernelMode;
+import com.gps.particlefilter.model.Building;
+import com.gps.particlefilter.model.LosVector;
+import com.gps.particlefilter.model.Particle;
+import com.gps.particlefilter.model.Point3D;
+import com.gps.particlefilter.model.Satellite;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Benchmarks of the LOS kernels:
+ * calculateLOS in every classification mode with ray shooting off (BRUTE_FORCE) and on
+ * (EXACT_ACCELERATED, RAY_SHOOTING_HEURISTIC), with shadow rasters (SHADOW_RASTER, built before
+ * measuring) and skylines (SKYLINE, cells around the positions computed before measuring), computeLosDetailedWithIntersection per wall,
+ * the SCALAR and VECTOR wall kernels, horizon culling and bounding box rejection on and off,
+ * the GRID and BVH spatial indexes, and Particle.matchingLosCount on name maps and on LOS vectors.
+ * The VECTOR kernel needs java --add-modules jdk.incubator.vector; without it both rows are scalar.
+ *
+ * System properties (besides those of Bench and BenchmarkData):
+ *   bench.buildings   building counts, first N of the file (default 0 = all)
+ *   bench.satellites  satellite counts, first N of the file (default 10,30)
+ */
+public class LosBenchmark {
+    private static final int POSITIONS = 4096;
+    private static final GeometricMode[] GEOMETRIC_MODES = {
+        GeometricMode.BRUTE_FORCE, GeometricMode.EXACT_ACCELERATED, GeometricMode.RAY_SHOOTING_HEURISTIC,
+        GeometricMode.SHADOW_RASTER, GeometricMode.SKYLINE
+    };
+
+    public static void main(String[] args) {
+        BenchmarkData data = new BenchmarkData();
+        Point3D[] positions = data.positions(POSITIONS, 42);
+
+        for (int buildingCount : Bench.intList("bench.buildings", "0")) {
+            for (int satelliteCount : Bench.intList("bench.satellites", "10,30")) {
+                List<Building> buildings = data.buildings(buildingCount);
+                List<Satellite> satellites = data.satellites(satelliteCount);
+                String params = String.format(Locale.ROOT, "B=%d S=%d", buildings.size(), satellites.size());
+
+                benchmarkCalculateLos(buildings, satellites, positions, params);
+                benchmarkWallIntersection(buildings, satellites, positions, params);
+                benchmarkWallKernels(buildings, satellites, positions, params);
+                benchmarkBuildingRejection(buildings, satellites, positions, params);
+                benchmarkSpatialIndex(buildings, satellites, positions, params);
+                benchmarkMatching(buildings, satellites, positions, params);
+            }
+        }
+    }
+
+    private static void benchmarkCalculateLos(List<Building> buildings, List<Satellite> satellites,
+                                              Point3D[] positions, String params) {
+        Bench.header("LosCalculator.calculateLOS");
+        for (ClassificationMode classification : ClassificationMode.values()) {
+            for (GeometricMode geometric : GEOMETRIC_MODES) {
+                LosCalculator calculator = createCalculator(buildings, satellites, classification, geometric);
+                precomputeSkyline(calculator, geometric, positions);
+                int[] next = {0};
+                Bench.measure("calculateLOS " + classification + "/" + geometric, params, () -> {
+                    Map<String, Boolean> status = calculator.calculateLOS(positions[next[0]++ & (POSITIONS - 1)]);
+                    return status.size();
+                });
+            }
+        }
+
+        Bench.header("LosCalculator.calculateLosVector (GEOMETRIC_ONLY)");
+        for (GeometricMode geometric : GEOMETRIC_MODES) {
+            LosCalculator calculator = createCalculator(buildings, satellites, ClassificationMode.GEOMETRIC_ONLY, geometric);
+            precomputeSkyline(calculator, geometric, positions);
+            int[] next = {0};
+            Bench.measure("calculateLosVector " + geometric, params, () ->
+                calculator.calculateLosVector(positions[next[0]++ & (POSITIONS - 1)]).getLosCount());
+        }
+    }
+
+    private static void benchmarkWallIntersection(List<Building> buildings, List<Satellite> satellites,
+                                                  Point3D[] positions, String params) {
+        Bench.header("LosCalculator.computeLosDetailedWithIntersection");
+        LosCalculator calculator = createCalculator(buildings, satellites, ClassificationMode.GEOMETRIC_ONLY,
+            GeometricMode.BRUTE_FORCE);
+
+        // One call tests every wall of one building; report the cost per wall as well
+        int walls = 0;
+        for (Building building : buildings) {
+            walls += building.getVertices().size() - 1;
+        }
+        double wallsPerBuilding = (double) walls / buildings.size();
+
+        int[] next = {0};
+        double nanosPerCall = Bench.measure("computeLosDetailedWithIntersection", params, () -> {
+            int i = next[0]++;
+            Building building = buildings.get(i % buildings.size());
+            Satellite satellite = satellites.get((i / buildings.size()) % satellites.size());
+            return calculator.computeLosDetailedWithIntersection(positions[i & (POSITIONS - 1)], building, satellite)
+                .isLos() ? 1 : 0;
+        });
+        Bench.OUT.printf(Locale.ROOT, "%-56s %-24s %14.1f%n", "  per wall", params, nanosPerCall / wallsPerBuilding);
+    }
+
+    private static void benchmarkWallKernels(List<Building> buildings, List<Satellite> satellites,
+                                             Point3D[] positions, String params) {
+        Bench.header("Wall kernels (BRUTE_FORCE scan over all walls)");
+        for (WallKernelMode mode : new WallKernelMode[] {WallKernelMode.SCALAR, WallKernelMode.VECTOR}) {
+            LosCalculator calculator = createCalculator(buildings, satellites, ClassificationMode.GEOMETRIC_ONLY,
+                GeometricMode.BRUTE_FORCE);
+            Bench.quietly(() -> {
+                calculator.setWallKernelMode(mode);
+                return null;
+            });
+            String kernel = calculator.getWallKernelName();
+
+            int[] next = {0};
+            Bench.measure("calculateLosVector " + kernel, params, () ->
+                calculator.calculateLosVector(positions[next[0]++ & (POSITIONS - 1)]).getLosCount());
+            Bench.measure("computeMaxBlockingDeltaH " + kernel, params, () -> {
+                int i = next[0]++;
+                return Double.doubleToRawLongBits(calculator.computeMaxBlockingDeltaH(positions[i & (POSITIONS - 1)],
+                    satellites.get(i % satellites.size())));
+            });
+        }
+    }
+
+    private static void benchmarkBuildingRejection(List<Building> buildings, List<Satellite> satellites,
+                                                Point3D[] positions, String params) {
+        Bench.header("Building rejection (calculateLosVector, GEOMETRIC_ONLY)");
+        String[] variants = {"none", "box", "horizon", "horizon+box"};
+        for (GeometricMode geometric : GEOMETRIC_MODES) {
+            for (int variant = 0; variant < variants.length; variant++) {
+                LosCalculator calculator = createCalculator(buildings, satellites, ClassificationMode.GEOMETRIC_ONLY,
+                    geometric);
+                calculator.setBoxRejectionEnabled((variant & 1) != 0);
+                calculator.setHorizonCullingEnabled((variant & 2) != 0);
+                int[] next = {0};
+                Bench.measure("calculateLosVector " + geometric + " " + variants[variant], params, () ->
+                    calculator.calculateLosVector(positions[next[0]++ & (POSITIONS - 1)]).getLosCount());
+            }
+        }
+    }
+
+    private static void benchmarkSpatialIndex(List<Building> buildings, List<Satellite> satellites,
+                                              Point3D[] positions, String params) {
+        Bench.header("Spatial index (calculateLosVector, EXACT_ACCELERATED)");
+        for (SpatialIndex index : SpatialIndex.values()) {
+            for (boolean culling : new boolean[] {false, true}) {
+                LosCalculator calculator = createCalculator(buildings, satellites, ClassificationMode.GEOMETRIC_ONLY,
+                    GeometricMode.EXACT_ACCELERATED);
+                Bench.quietly(() -> {
+                    calculator.setSpatialIndex(index);
+                    return null;
+                });
+                calculator.setHorizonCullingEnabled(culling);
+                int[] next = {0};
+                Bench.measure("calculateLosVector " + index + (culling ? " horizon" : " none"), params, () ->
+                    calculator.calculateLosVector(positions[next[0]++ & (POSITIONS - 1)]).getLosCount());
+            }
+        }
+    }
+
+    private static void benchmarkMatching(List<Building> buildings, List<Satellite> satellites,
+                                          Point3D[] positions, String params) {
+        Bench.header("Particle.matchingLosCount");
+        LosCalculator calculator = createCalculator(buildings, satellites, ClassificationMode.GEOMETRIC_ONLY,
+            GeometricMode.EXACT_ACCELERATED);
+
+        int count = 1024;
+        Particle[] particles = new Particle[count];
+        for (int i = 0; i < count; i++) {
+            particles[i] = new Particle(positions[i]);
+            particles[i].setLosVector(calculator.calculateLosVector(positions[i]));
+        }
+        LosVector referenceVector = calculator.calculateLosVector(positions[count]);
+        Map<String, Boolean> referenceMap = referenceVector.toMap();
+
+        int[] next = {0};
+        Bench.measure("matchingLosCount(LosVector)", params, () ->
+            particles[next[0]++ & (count - 1)].matchingLosCount(referenceVector));
+        Bench.measure("matchingLosCount(Map)", params, () ->
+            particles[next[0]++ & (count - 1)].matchingLosCount(referenceMap));
+    }
+
+    private static void precomputeSkyline(LosCalculator calculator, GeometricMode geometric, Point3D[] positions) {
+        if (geometric == GeometricMode.SKYLINE) {
+            Bench.quietly(() -> {
+                calculator.precomputeSkyline(Arrays.asList(positions), 0);
+                return calculator;
+            });
+        }
+    }
+
+    static LosCalculator createCalculator(List<Building> buildings, List<Satellite> satellites,
+                                          ClassificationMode classification, GeometricMode geometric) {
+        return Bench.quietly(() -> {
+            LosCalculator calculator = new LosCalculator(buildings, satellites);
+            calculator.setClassificationMode(classification);
+            calculator.setGeometricMode(geometric);
+            if (geometric == GeometricMode.SHADOW_RASTER) {
+                calculator.calculateLOS(new Point3D(0, 0, 0)); // Rasterize now, not while measuring
+            }
+            return calculator;
+        });
+    }
+}
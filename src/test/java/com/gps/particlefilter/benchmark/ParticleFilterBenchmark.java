@@ -0,0 +1,126 @@
+package com.gps.particlefilter.benchmark;
+
+import com.gps.particlefilter.ParticleFilter;
+import com.gps.particlefilter.los.LosCalculator;
+import com.gps.particlefilter.los.LosCalculator.ClassificationMode;
+import com.gps.particlefilter.los.LosCalculator.GeometricMode;
+import com.gps.particlefilter.los.LosCalculator.SpatialIndex;
+import com.gps.particlefilter.model.Building;
+import com.gps.particlefilter.model.Point3D;
+import com.gps.particlefilter.model.Satellite;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmarks of the particle filter steps updateWeights, resample and move
+ * at several particle counts (GEOMETRIC_ONLY, EXACT_ACCELERATED).
+ * updateWeights starts a new LOS epoch for every operation so the LOS of every
+ * particle is recalculated (with the GRID and the PROJECTED spatial index, and
+ * PROJECTED again without the cloud's active wall lists, then also without
+ * classifying satellites for the whole cloud first);
+ * "updateWeights (LOS current)" measures the weighting alone, "move + updateWeights"
+ * a filter step without resampling, with and without reusing geometric masks within the
+ * shadow clearance.
+ *
+ * System properties (besides those of Bench and BenchmarkData):
+ *   bench.particles   particle counts (default 100,1000,10000,100000)
+ *   bench.buildings   building counts, first N of the file (default 0 = all)
+ *   bench.satellites  satellite counts, first N of the file (default 10,30)
+ */
+public class ParticleFilterBenchmark {
+
+    public static void main(String[] args) {
+        BenchmarkData data = new BenchmarkData();
+        Point3D center = data.center();
+
+        for (int buildingCount : Bench.intList("bench.buildings", "0")) {
+            for (int satelliteCount : Bench.intList("bench.satellites", "10,30")) {
+                List<Building> buildings = data.buildings(buildingCount);
+                List<Satellite> satellites = data.satellites(satelliteCount);
+                Bench.header(String.format(Locale.ROOT, "ParticleFilter (B=%d S=%d)", buildings.size(), satellites.size()));
+
+                for (int particleCount : Bench.intList("bench.particles", "100,1000,10000,100000")) {
+                    benchmarkFilter(buildings, satellites, center, particleCount,
+                        String.format(Locale.ROOT, "N=%d B=%d S=%d", particleCount, buildings.size(), satellites.size()));
+                }
+            }
+        }
+    }
+
+    private static void benchmarkFilter(List<Building> buildings, List<Satellite> satellites, Point3D center,
+                                        int particleCount, String params) {
+        LosCalculator calculator = LosBenchmark.createCalculator(buildings, satellites,
+            ClassificationMode.GEOMETRIC_ONLY, GeometricMode.EXACT_ACCELERATED);
+        ParticleFilter filter = Bench.quietly(() -> {
+            ParticleFilter particleFilter = new ParticleFilter(calculator, 25.0, 10.0);
+            particleFilter.initializeParticles(center, particleCount);
+            return particleFilter;
+        });
+        int actualCount = filter.getParticles().size();
+
+        long[] epoch = {0};
+        for (SpatialIndex index : new SpatialIndex[] {SpatialIndex.GRID, SpatialIndex.PROJECTED}) {
+            Bench.quietly(() -> {
+                calculator.setSpatialIndex(index);
+                return null;
+            });
+            Bench.measure("updateWeights " + index, params, () -> {
+                calculator.beginEpoch(++epoch[0]);
+                filter.updateWeights(center);
+                return actualCount;
+            });
+        }
+        calculator.setRegionWallCullingEnabled(false);
+        Bench.measure("updateWeights PROJECTED (no wall culling)", params, () -> {
+            calculator.beginEpoch(++epoch[0]);
+            filter.updateWeights(center);
+            return actualCount;
+        });
+        calculator.setRegionPruningEnabled(false);
+        Bench.measure("updateWeights PROJECTED (no region pruning/culling)", params, () -> {
+            calculator.beginEpoch(++epoch[0]);
+            filter.updateWeights(center);
+            return actualCount;
+        });
+        calculator.setRegionPruningEnabled(true);
+        calculator.setRegionWallCullingEnabled(true);
+        Bench.measure("updateWeights (LOS current)", params, () -> {
+            filter.updateWeights(center);
+            return actualCount;
+        });
+        Bench.measure("resample", params, () -> {
+            filter.resample();
+            return actualCount;
+        });
+
+        // Walk back and forth 1 m so the cloud stays over the building area
+        Point3D east = new Point3D(center.getX() + 1.0, center.getY(), center.getZ());
+        boolean[] forward = {true};
+        Bench.measure("move", params, () -> {
+            if (forward[0]) {
+                filter.move(center, east);
+            } else {
+                filter.move(east, center);
+            }
+            forward[0] = !forward[0];
+            return actualCount;
+        });
+
+        // One filter step without resampling; with the shadow clearance, particles that moved less
+        // than it keep their geometric masks
+        for (boolean clearance : new boolean[] {false, true}) {
+            calculator.setShadowClearanceEnabled(clearance);
+            Bench.measure("move + updateWeights" + (clearance ? " (shadow clearance)" : ""), params, () -> {
+                calculator.beginEpoch(++epoch[0]);
+                if (forward[0]) {
+                    filter.move(center, east);
+                } else {
+                    filter.move(east, center);
+                }
+                forward[0] = !forward[0];
+                filter.updateWeights(center);
+                return actualCount;
+            });
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.gps.particlefilter.benchmark;
+
+import com.gps.particlefilter.model.Point3D;
+import com.gps.particlefilter.util.CoordinateConverter;
+import com.gps.particlefilter.util.CoordinateConverter.ProjectionEngine;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks of the UTM projection engines (GEOTOOLS and KRUGER):
+ * per-point cost of the single-point and batch conversions, and JVM startup
+ * (process start to the first converted point, measured in a fresh JVM per engine).
+ */
+public class ProjectionBenchmark {
+    private static final int BATCH = 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("startup")) {
+            startupChild(ProjectionEngine.valueOf(args[1]));
+            return;
+        }
+
+        Bench.OUT.println();
+        Bench.OUT.println("=== JVM startup to first converted point ===");
+        for (ProjectionEngine engine : ProjectionEngine.values()) {
+            startup(engine);
+        }
+
+        // Points around the data area, in the converter's pair order
+        Random random = new Random(42);
+        double[] geographic = new double[2 * BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            geographic[2 * i] = 34.78 + random.nextDouble() * 0.05;
+            geographic[2 * i + 1] = 32.06 + random.nextDouble() * 0.05;
+        }
+
+        for (ProjectionEngine engine : ProjectionEngine.values()) {
+            CoordinateConverter converter = Bench.quietly(() -> new CoordinateConverter(36, true, engine));
+            double[] utm = new double[2 * BATCH];
+            double[] back = new double[2 * BATCH];
+            converter.latLonToUtm(geographic, utm, BATCH);
+            String params = engine.name();
+
+            Bench.header("CoordinateConverter (" + engine + ")");
+            int[] next = {0};
+            Bench.measure("latLonToUtm (per point)", params, () -> {
+                int i = next[0]++ & (BATCH - 1);
+                Point3D point = converter.latLonToUtm(geographic[2 * i + 1], geographic[2 * i], 0.0);
+                return (long) point.getX();
+            });
+            Bench.measure("utmToLatLon (per point)", params, () -> {
+                int i = next[0]++ & (BATCH - 1);
+                Point3D point = converter.utmToLatLon(utm[2 * i], utm[2 * i + 1], 0.0);
+                return (long) point.getY();
+            });
+            double forward = Bench.measure("latLonToUtm batch of " + BATCH, params, () -> {
+                converter.latLonToUtm(geographic, back, BATCH);
+                return (long) back[0];
+            });
+            Bench.OUT.printf(Locale.ROOT, "%-56s %-24s %14.1f%n", "  per point", params, forward / BATCH);
+            double inverse = Bench.measure("utmToLatLon batch of " + BATCH, params, () -> {
+                converter.utmToLatLon(utm, back, BATCH);
+                return (long) back[0];
+            });
+            Bench.OUT.printf(Locale.ROOT, "%-56s %-24s %14.1f%n", "  per point", params, inverse / BATCH);
+        }
+    }
+
+    /**
+     * Run a fresh JVM for the engine and report its timings
+     */
+    private static void startup(ProjectionEngine engine) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            ProjectionBenchmark.class.getName(), "startup", engine.name());
+        builder.redirectErrorStream(true);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        String result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("startup ")) {
+                    result = line.substring("startup ".length());
+                }
+            }
+        }
+        process.waitFor();
+        double processMillis = (System.nanoTime() - start) / 1e6;
+
+        Bench.OUT.printf(Locale.ROOT, "%-9s %s, whole process %.0f ms%n", engine, result, processMillis);
+    }
+
+    /**
+     * Child JVM: convert one point and print the timings
+     */
+    private static void startupChild(ProjectionEngine engine) {
+        long before = System.nanoTime();
+        CoordinateConverter converter = new CoordinateConverter(36, true, engine);
+        Point3D point = converter.latLonToUtm(32.08, 34.80, 0.0);
+        double converterMillis = (System.nanoTime() - before) / 1e6;
+
+        long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        int loadedClasses = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        System.out.printf(Locale.ROOT, "startup first point after %d ms (converter setup %.1f ms, %d classes loaded, x=%.3f)%n",
+            sinceJvmStart, converterMillis, loadedClasses, point.getX());
+    }
+}
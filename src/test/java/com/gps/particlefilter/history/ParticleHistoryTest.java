@@ -0,0 +1,218 @@
+package com.gps.particlefilter.history;
+
+import com.gps.particlefilter.ParticleFilter;
+import com.gps.particlefilter.config.Configuration;
+import com.gps.particlefilter.los.LosCalculator;
+import com.gps.particlefilter.model.*;
+import com.gps.particlefilter.util.CoordinateSystemManager;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that resampled copies are stored as runs: a resampled cloud encodes to fewer runs
+ * than particles while a cloud with per-particle noise does not, that the filter records
+ * its history after resampling, that geographic positions keep the configured resolution
+ * in meters, and that closed sinks report no epochs
+ */
+public class ParticleHistoryTest {
+    private static final int PARTICLE_COUNT = 500;
+    private static final int SATELLITE_COUNT = 12;
+
+    public static void main(String[] args) {
+        CoordinateSystemManager coordManager = CoordinateSystemManager.getInstance();
+        coordManager.setDefaultUtmZone(36, true);
+        coordManager.setUseUtm(true);
+
+        // Fixed seed so failures can be reproduced
+        Random random = new Random(42);
+        List<Satellite> satellites = new ArrayList<>();
+        for (int i = 0; i < SATELLITE_COUNT; i++) {
+            satellites.add(new Satellite("S" + i, null, random.nextDouble() * 360.0 - 180.0,
+                10.0 + random.nextDouble() * 70.0, 45.0));
+        }
+        SatelliteRegistry registry = new SatelliteRegistry(satellites);
+
+        boolean passed = checkCodecRuns(registry, random)
+            & checkFilterRuns(satellites)
+            & checkGeographicResolution(registry, random)
+            & checkClosedSink(registry);
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Encode a noisy cloud, then its systematic resampling (sorted source indices, as ParticleFilter.resample)
+     */
+    private static boolean checkCodecRuns(SatelliteRegistry registry, Random random) {
+        int n = PARTICLE_COUNT;
+        int words = registry.wordCount();
+        double[] x = new double[n], y = new double[n], z = new double[n], weight = new double[n];
+        long[] los = new long[n * words];
+        boolean[] losValid = new boolean[n];
+        double totalWeight = 0;
+        for (int i = 0; i < n; i++) {
+            x[i] = 670000 + random.nextGaussian() * 5.0;
+            y[i] = 3550000 + random.nextGaussian() * 5.0;
+            z[i] = 1.8;
+            weight[i] = Math.pow(random.nextDouble(), 4);
+            totalWeight += weight[i];
+            los[i * words] = random.nextLong();
+            losValid[i] = true;
+        }
+        for (int i = 0; i < n; i++) {
+            weight[i] /= totalWeight;
+        }
+
+        FrameCodec codec = new FrameCodec(registry, 0.01, 0.01, 0);
+        int noisyRuns = runs(codec.decode(codec.encode(0, n, x, y, z, weight, los, losValid)));
+
+        double[] rx = new double[n], ry = new double[n], rz = new double[n], rWeight = new double[n];
+        long[] rLos = new long[n * words];
+        boolean[] rLosValid = new boolean[n];
+        double cumulative = weight[0];
+        double u = random.nextDouble() / n;
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            while (j < n - 1 && u > cumulative) {
+                cumulative += weight[++j];
+            }
+            rx[i] = x[j];
+            ry[i] = y[j];
+            rz[i] = z[j];
+            rWeight[i] = weight[j];
+            System.arraycopy(los, j * words, rLos, i * words, words);
+            rLosValid[i] = true;
+            u += 1.0 / n;
+        }
+        ByteBuffer frame = codec.encode(1, n, rx, ry, rz, rWeight, rLos, rLosValid);
+        List<Particle> decoded = codec.decode(frame);
+        int resampledRuns = runs(decoded);
+
+        boolean passed = noisyRuns == n && resampledRuns < n && decoded.size() == n
+            && resampledRuns == frame.getInt(12);
+        System.out.printf("Codec: %d particles, noisy cloud %d runs, resampled cloud %d runs - %s%n",
+            n, noisyRuns, resampledRuns, passed ? "OK" : "MISMATCH");
+        return passed;
+    }
+
+    /**
+     * Every epoch recorded by update() holds the resampled cloud, so it has fewer runs than particles.
+     * A tall block inside the initial cloud shadows some particles, so the weights are not uniform.
+     */
+    private static boolean checkFilterRuns(List<Satellite> satellites) {
+        List<Point3D> block = new ArrayList<>();
+        block.add(new Point3D(670005, 3549990, 0));
+        block.add(new Point3D(670015, 3549990, 0));
+        block.add(new Point3D(670015, 3550010, 0));
+        block.add(new Point3D(670005, 3550010, 0));
+        block.add(new Point3D(670005, 3549990, 0));
+        List<Building> buildings = new ArrayList<>();
+        buildings.add(new Building(block, 40.0));
+
+        ParticleFilter filter = new ParticleFilter(new LosCalculator(buildings, satellites), 20.0, 1.0);
+        Point3D point = new Point3D(670000, 3550000, 1.8);
+        filter.initializeParticles(point, PARTICLE_COUNT);
+        int particleCount = filter.getParticles().size();
+        filter.recordHistory(0);
+        for (int epoch = 1; epoch <= 5; epoch++) {
+            point = new Point3D(point.getX() + 1.5, point.getY() + 0.5, point.getZ());
+            filter.update(point, epoch * 1000L);
+        }
+
+        ParticleHistorySink history = filter.getParticleHistory();
+        boolean passed = history.size() == 6;
+        StringBuilder counts = new StringBuilder();
+        for (int epoch = 1; epoch < history.size(); epoch++) {
+            List<Particle> particles = history.getParticles(epoch);
+            int epochRuns = runs(particles);
+            counts.append(' ').append(epochRuns);
+            passed &= particles.size() == particleCount && epochRuns < particleCount;
+        }
+        filter.close();
+        System.out.printf("Filter: %d particles, runs per updated epoch:%s - %s%n",
+            particleCount, counts, passed ? "OK" : "MISMATCH");
+        return passed;
+    }
+
+    /**
+     * With UTM off the sink quantizes degrees with the resolution converted from meters,
+     * so positions come back within half a step (in meters) and heights in meters
+     */
+    private static boolean checkGeographicResolution(SatelliteRegistry registry, Random random) {
+        Configuration config = Configuration.getInstance();
+        CoordinateSystemManager coordManager = CoordinateSystemManager.getInstance();
+        coordManager.setUseUtm(false);
+        ParticleHistorySink sink = ParticleHistorySink.fromConfiguration(registry);
+        coordManager.setUseUtm(true);
+
+        int n = 100;
+        double[] x = new double[n], y = new double[n], z = new double[n], weight = new double[n];
+        long[] los = new long[n * registry.wordCount()];
+        boolean[] losValid = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = 35.217 + random.nextDouble() * 1e-3;
+            y[i] = 31.771 + random.nextDouble() * 1e-3;
+            z[i] = 1.8 + random.nextDouble() * 300.0;
+            weight[i] = 1.0 / n;
+        }
+        sink.append(0, n, x, y, z, weight, los, losValid);
+        List<Particle> particles = sink.getParticles(0);
+        sink.close();
+
+        double metersPerDegree = config.getMetersPerDegree();
+        double maxHorizontal = 0, maxHeight = 0;
+        for (int i = 0; i < n; i++) {
+            Point3D position = particles.get(i).getPosition();
+            maxHorizontal = Math.max(maxHorizontal, Math.abs(position.getX() - x[i]) * metersPerDegree);
+            maxHorizontal = Math.max(maxHorizontal, Math.abs(position.getY() - y[i]) * metersPerDegree);
+            maxHeight = Math.max(maxHeight, Math.abs(position.getZ() - z[i]));
+        }
+        double halfStep = config.getHistoryPositionResolution() / 2 + 1e-9;
+        boolean passed = maxHorizontal <= halfStep && maxHeight <= halfStep;
+        System.out.printf("Geographic: max horizontal error %.4f m, max height error %.4f m - %s%n",
+            maxHorizontal, maxHeight, passed ? "OK" : "MISMATCH");
+        return passed;
+    }
+
+    private static boolean checkClosedSink(SatelliteRegistry registry) {
+        double[] x = {1, 2}, y = {1, 2}, z = {0, 0}, weight = {0.5, 0.5};
+        long[] los = new long[2 * registry.wordCount()];
+        boolean[] losValid = new boolean[2];
+        MemoryHistorySink sink = new MemoryHistorySink(new FrameCodec(registry, 0.01, 0.01, 0), 0);
+        sink.append(0, 2, x, y, z, weight, los, losValid);
+        sink.close();
+
+        boolean threw = false;
+        try {
+            sink.getParticles(0);
+        } catch (IndexOutOfBoundsException e) {
+            threw = true;
+        }
+        boolean passed = sink.size() == 0 && !sink.isAvailable(0) && threw;
+        System.out.println("Closed sink: size " + sink.size() + ", epoch 0 available " + sink.isAvailable(0)
+            + " - " + (passed ? "OK" : "MISMATCH"));
+        return passed;
+    }
+
+    /**
+     * Number of runs of identical consecutive particles (decoded runs are expanded into copies)
+     */
+    private static int runs(List<Particle> particles) {
+        int runs = 0;
+        Particle prev = null;
+        for (Particle particle : particles) {
+            Point3D position = particle.getPosition();
+            if (prev == null || prev.getPosition().getX() != position.getX()
+                    || prev.getPosition().getY() != position.getY() || prev.getPosition().getZ() != position.getZ()
+                    || prev.getWeight() != particle.getWeight()) {
+                runs++;
+            }
+            prev = particle;
+        }
+        return runs;
+    }
+}